@@ -0,0 +1,57 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.estimate;
+
+import com.vmware.upgrade.Task;
+
+/**
+ * A record of how long {@link Task}s took to complete during previous executions, keyed by a
+ * string which identifies each {@link Task} across executions.
+ *
+ * @see ProgressEstimator
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public interface DurationHistory {
+    /**
+     * Predict how long the identified {@link Task} will take to complete.
+     *
+     * @param key
+     *          identifies the {@link Task}
+     * @return the predicted duration in milliseconds, or {@code -1} if the {@link Task} has not
+     *          completed before
+     */
+    long getDuration(String key);
+
+    /**
+     * Record how long the identified {@link Task} took to complete.
+     *
+     * @param key
+     *          identifies the {@link Task}
+     * @param millis
+     *          the duration in milliseconds
+     */
+    void recordDuration(String key, long millis);
+}
@@ -0,0 +1,351 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.estimate;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EventListener;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.upgrade.Task;
+import com.vmware.upgrade.UpgradeDefinition;
+import com.vmware.upgrade.progress.ExecutionState;
+import com.vmware.upgrade.progress.ProgressReport;
+import com.vmware.upgrade.progress.ProgressReporter.ProgressListener;
+import com.vmware.upgrade.progress.Weighted;
+import com.vmware.upgrade.task.Composite;
+
+/**
+ * Estimates the time remaining for a sequence of {@link Task}s, such as those of an
+ * {@link UpgradeDefinition}, and the rate at which the leaves of the tree of {@link Task}s beneath
+ * them (e.g. individual SQL statements) complete.
+ * <p>
+ * The estimator listens to each {@link Task} and, as they begin executing, to those
+ * {@link Composite#getChildren() beneath} them, recording when each begins and ends. The duration
+ * of each {@link Task} which completes is recorded in a {@link DurationHistory}, keyed by its
+ * position within the tree: the name of a {@link Task} in the sequence, and for a {@link Task}
+ * beneath it, the key of its parent followed by {@code /}, its index among the children of its
+ * parent, {@code :} and its name (e.g. {@code Upgrade to 1.0.1/0:Steps/1:Insert}). {@link Task}s
+ * which share a name, such as generated wrappers, are therefore recorded separately.
+ * <p>
+ * Recording a duration does not persist it; a {@link DurationHistory} such as
+ * {@link PropertiesDurationHistory} must be {@link PropertiesDurationHistory#save() saved} once the
+ * {@link Task}s have finished executing, whether or not they succeeded.
+ * <p>
+ * The time remaining for each {@link Task} in the sequence is predicted, in order of preference,
+ * from:
+ * <ol>
+ * <li>its duration during previous executions, recorded in the {@link DurationHistory};
+ * <li>its progress, if it is executing and has reported progress;
+ * <li>the time taken per unit of {@link Weighted weight} by the {@link Task}s in the sequence which
+ *     have completed.
+ * </ol>
+ * The progress of {@link Task}s whose total amount of work is unknown is not meaningful, so the
+ * {@link DurationHistory} is preferred.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public final class ProgressEstimator {
+    /**
+     * Implementations of {@link EstimateListener} can be registered to receive a callback whenever
+     * the estimate is revised.
+     */
+    public interface EstimateListener extends EventListener {
+        /**
+         * A method which is called when the estimate is revised.
+         *
+         * @param remainingMillis
+         *          the estimated time remaining in milliseconds, or {@code -1} if unknown
+         * @param leavesPerSecond
+         *          the rate at which leaf {@link Task}s have completed
+         */
+        void reportEstimate(long remainingMillis, double leavesPerSecond);
+    }
+
+    /**
+     * Tracks the execution of a single {@link Task}.
+     */
+    private final class Tracker implements ProgressListener {
+        private final Task task;
+        private final String key;
+        private final boolean root;
+        private ExecutionState state = ExecutionState.PENDING;
+        private int progress;
+        private long start = -1;
+        private long end = -1;
+        private boolean expanded;
+
+        Tracker(final Task task, final String key, final boolean root) {
+            this.task = task;
+            this.key = key;
+            this.root = root;
+        }
+
+        @Override
+        public void reportProgress(final ProgressReport report) {
+            update(this, report);
+        }
+    }
+
+    private final DurationHistory history;
+
+    private final Clock clock;
+
+    private final List<Tracker> roots;
+
+    /**
+     * The {@link Tracker}s of the {@link Task}s beneath the roots which have not yet finished.
+     */
+    private final Map<Task, Tracker> descendants = new IdentityHashMap<Task, Tracker>();
+
+    private final Set<EstimateListener> listeners = new CopyOnWriteArraySet<EstimateListener>();
+
+    private long firstStart = -1;
+
+    private long completedLeaves;
+
+    /**
+     * Constructs an estimator for the supplied sequence of {@link Task}s, which are expected to
+     * execute in order.
+     *
+     * @param tasks
+     *          the {@link Task}s, e.g. those of an {@link UpgradeDefinition}
+     * @param history
+     *          the {@link DurationHistory} from which to predict durations and in which to record
+     *          them
+     * @throws IllegalArgumentException
+     *          if {@code tasks} or {@code history} is {@code null}
+     */
+    public ProgressEstimator(final List<? extends Task> tasks, final DurationHistory history) {
+        this(tasks, history, Clock.systemUTC());
+    }
+
+    ProgressEstimator(final List<? extends Task> tasks, final DurationHistory history, final Clock clock) {
+        if (tasks == null) {
+            throw new IllegalArgumentException("tasks");
+        }
+        if (history == null) {
+            throw new IllegalArgumentException("history");
+        }
+
+        this.history = history;
+        this.clock = clock;
+
+        final List<Tracker> roots = new ArrayList<Tracker>(tasks.size());
+        for (final Task task : tasks) {
+            roots.add(new Tracker(task, task.getName(), true));
+        }
+        this.roots = Collections.unmodifiableList(roots);
+
+        for (final Tracker root : roots) {
+            listen(root);
+        }
+    }
+
+    /**
+     * Add a listener which will receive a callback when the estimate is revised.
+     *
+     * @param listener
+     *          the listener to register
+     * @return {@code true} if the listener was added
+     */
+    public boolean addListener(final EstimateListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener");
+        }
+
+        return listeners.add(listener);
+    }
+
+    /**
+     * Remove a listener previously added.
+     *
+     * @param listener
+     *          the listener to remove
+     * @return {@code true} if the listener was removed
+     */
+    public boolean removeListener(final EstimateListener listener) {
+        if (listener == null) {
+            throw new NullPointerException("listener");
+        }
+
+        return listeners.remove(listener);
+    }
+
+    /**
+     * Estimate the time remaining until every {@link Task} has finished.
+     *
+     * @param unit
+     *          the unit in which to express the estimate
+     * @return the estimated time remaining, or {@code -1} if no estimate can yet be made
+     */
+    public synchronized long getEstimatedRemaining(final TimeUnit unit) {
+        final long now = clock.millis();
+
+        long completedMillis = 0;
+        long completedWeight = 0;
+        for (final Tracker root : roots) {
+            if (root.state == ExecutionState.COMPLETED && root.start >= 0) {
+                completedMillis += root.end - root.start;
+                completedWeight += weightOf(root.task);
+            }
+        }
+        final double millisPerWeight = (completedWeight > 0) ? (double) completedMillis / completedWeight : -1;
+
+        long remaining = 0;
+        for (final Tracker root : roots) {
+            final long estimate = estimateRemaining(root, now, millisPerWeight);
+            if (estimate < 0) {
+                return -1;
+            }
+            remaining += estimate;
+        }
+
+        return unit.convert(remaining, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The rate at which leaf {@link Task}s (those which are not {@link Composite}) have completed
+     * since the first {@link Task} began executing. For SQL upgrades, this is the number of
+     * statements executed per second.
+     *
+     * @return the number of leaf {@link Task}s completed per second
+     */
+    public synchronized double getLeafThroughput() {
+        if (firstStart < 0) {
+            return 0;
+        }
+
+        final long elapsed = clock.millis() - firstStart;
+        return (elapsed > 0) ? completedLeaves * 1000.0 / elapsed : 0;
+    }
+
+    private long estimateRemaining(final Tracker tracker, final long now, final double millisPerWeight) {
+        if (tracker.state.isTerminal()) {
+            return 0;
+        }
+
+        final long predicted = history.getDuration(tracker.key);
+        final long expected = (predicted >= 0) ? predicted : (millisPerWeight >= 0) ? Math.round(weightOf(tracker.task) * millisPerWeight) : -1;
+
+        if (tracker.start < 0) {
+            return expected;
+        }
+
+        final long elapsed = now - tracker.start;
+        if (predicted >= 0 && predicted > elapsed) {
+            return predicted - elapsed;
+        }
+        if (tracker.progress > 0) {
+            return elapsed * (100 - tracker.progress) / tracker.progress;
+        }
+        return (expected < 0) ? -1 : Math.max(expected - elapsed, 0);
+    }
+
+    private static long weightOf(final Task task) {
+        return (task instanceof Weighted) ? ((Weighted) task).getWeight() : 1;
+    }
+
+    private void listen(final Tracker tracker) {
+        tracker.task.addListener(tracker);
+        tracker.task.requestProgressReport();
+    }
+
+    private void update(final Tracker tracker, final ProgressReport report) {
+        List<Task> children = null;
+        boolean finished = false;
+
+        synchronized (this) {
+            if (tracker.end >= 0) {
+                return;
+            }
+
+            final long now = clock.millis();
+            tracker.state = report.getState();
+            tracker.progress = report.getProgress();
+
+            if (tracker.start < 0 && tracker.state != ExecutionState.PENDING) {
+                tracker.start = now;
+                if (firstStart < 0) {
+                    firstStart = now;
+                }
+            }
+
+            if (tracker.state == ExecutionState.RUNNING && !tracker.expanded && tracker.task instanceof Composite) {
+                tracker.expanded = true;
+                children = ((Composite) tracker.task).getChildren();
+            }
+
+            if (tracker.state.isTerminal()) {
+                tracker.end = now;
+                finished = true;
+
+                if (tracker.state == ExecutionState.COMPLETED && tracker.start >= 0) {
+                    history.recordDuration(tracker.key, tracker.end - tracker.start);
+                    if (!(tracker.task instanceof Composite)) {
+                        completedLeaves++;
+                    }
+                }
+                if (!tracker.root) {
+                    descendants.remove(tracker.task);
+                }
+            }
+        }
+
+        if (children != null) {
+            for (int i = 0; i < children.size(); i++) {
+                final Task child = children.get(i);
+                final Tracker childTracker;
+                synchronized (this) {
+                    if (descendants.containsKey(child)) {
+                        continue;
+                    }
+                    childTracker = new Tracker(child, tracker.key + "/" + i + ":" + child.getName(), false);
+                    descendants.put(child, childTracker);
+                }
+                listen(childTracker);
+            }
+        }
+
+        if (finished && !tracker.root) {
+            // Release the task, which may otherwise be retained only by this estimator
+            tracker.task.removeListener(tracker);
+        }
+
+        if (!listeners.isEmpty()) {
+            final long remaining = getEstimatedRemaining(TimeUnit.MILLISECONDS);
+            final double throughput = getLeafThroughput();
+            for (final EstimateListener listener : listeners) {
+                listener.reportEstimate(remaining, throughput);
+            }
+        }
+    }
+}
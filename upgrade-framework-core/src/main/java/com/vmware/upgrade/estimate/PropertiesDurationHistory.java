@@ -0,0 +1,127 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.estimate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * A {@link DurationHistory} stored in a local {@link Properties} file.
+ * <p>
+ * The predicted duration of a task is an exponentially weighted moving average of its recorded
+ * durations, in which each newly recorded duration carries half of the weight. Recorded durations
+ * are held in memory until {@link #save() saved}; nothing saves them automatically, so the caller
+ * should save the history once the upgrade has finished, e.g. in a {@code finally} block.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public final class PropertiesDurationHistory implements DurationHistory {
+    private final Path path;
+
+    private final Properties durations = new Properties();
+
+    /**
+     * Constructs a history stored in the specified file, loading the durations previously saved
+     * in it, if any.
+     *
+     * @param file
+     *          the file in which to store the history
+     * @throws IllegalArgumentException
+     *          if {@code file} is {@code null}
+     * @throws IOException
+     *          if the file exists but cannot be read
+     */
+    public PropertiesDurationHistory(final File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file");
+        }
+
+        this.path = file.toPath();
+
+        try (InputStream in = Files.newInputStream(path)) {
+            durations.load(in);
+        } catch (NoSuchFileException e) {
+            // Nothing has been saved yet
+        }
+    }
+
+    @Override
+    public synchronized long getDuration(final String key) {
+        final String value = durations.getProperty(key);
+        if (value == null) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    @Override
+    public synchronized void recordDuration(final String key, final long millis) {
+        if (key == null) {
+            throw new IllegalArgumentException("key");
+        }
+        if (millis < 0) {
+            throw new IllegalArgumentException("millis");
+        }
+
+        final long previous = getDuration(key);
+        final long average = (previous < 0) ? millis : (previous + millis) / 2;
+        durations.setProperty(key, Long.toString(average));
+    }
+
+    /**
+     * Write the recorded durations to the file, replacing its contents.
+     *
+     * @throws IOException
+     *          if the file cannot be written
+     */
+    public synchronized void save() throws IOException {
+        final Path temporary = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary)) {
+                durations.store(out, "Task durations in milliseconds");
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PropertiesDurationHistory [" + path + "]";
+    }
+}
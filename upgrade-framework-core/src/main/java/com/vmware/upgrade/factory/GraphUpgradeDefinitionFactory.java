@@ -22,25 +22,66 @@
 
 package com.vmware.upgrade.factory;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.vmware.upgrade.Task;
 import com.vmware.upgrade.UpgradeContext;
 import com.vmware.upgrade.UpgradeDefinition;
+import com.vmware.upgrade.journal.ExecutionJournal;
+import com.vmware.upgrade.logging.LogContext;
+import com.vmware.upgrade.logging.UpgradeLogger;
 import com.vmware.upgrade.progress.ExecutionState;
+import com.vmware.upgrade.progress.Weighted;
 import com.vmware.upgrade.sequencing.Graph;
 import com.vmware.upgrade.sequencing.Graph.Edge;
 import com.vmware.upgrade.sequencing.GraphHelper;
 import com.vmware.upgrade.sequencing.Version;
 import com.vmware.upgrade.task.AbstractDelegatingTask;
 import com.vmware.upgrade.task.AbstractSimpleTask;
+import com.vmware.upgrade.task.Checkpoints;
+import com.vmware.upgrade.task.DeferredTask;
 import com.vmware.upgrade.task.SerialAggregateTask;
 
 /**
  * A factory which will create {@link UpgradeDefinition}s from a supplied {@link Graph} for
  * a specified {@link UpgradeContext}.
+ * <p>
+ * The {@link Task} for each {@link Edge} on the upgrade path is {@link Edge#createTask created}
+ * only as the upgrade to its target {@link Version} begins and is released once it finishes, so
+ * that the cost of creating the {@link Task}s is spread across the upgrade and only the
+ * {@link Task}s for a single {@link Edge} need be held in memory at once.
+ * <p>
+ * Optionally, the {@link Task}s for a bounded number of subsequent {@link Edge}s can be created
+ * on a background thread while the upgrade to the current target {@link Version} executes,
+ * removing the cost of creating them from the critical path. This requires that
+ * {@link Edge#createTask(UpgradeContext)} can safely be invoked concurrently with the execution
+ * of the {@link Task}s of preceding {@link Edge}s.
+ * <p>
+ * As the {@link Task}s are not created in advance, the share of the overall progress of each
+ * upgrade is determined by the {@link Weighted weight} of its {@link Edge}, if it is
+ * {@link Weighted}, rather than by the {@link Task}s it creates.
+ * <p>
+ * If an {@link ExecutionJournal} is supplied, the completion of each task within an upgrade from
+ * one {@link Version} to the next is recorded in it. Should execution be interrupted, leaving the
+ * {@link UpgradeContext} at the {@link Version#getTransition(Version) transition} version, the
+ * {@link UpgradeDefinition} subsequently created resumes that upgrade, skipping the tasks recorded
+ * as completed.
+ *
+ * @see Checkpoints
  *
  * @author Zach Shepherd shepherdz@vmware.com
  * @version 1.0
@@ -53,7 +94,26 @@ public final class GraphUpgradeDefinitionFactory implements UpgradeDefinitionFac
      */
     private static final class UpgradeTask extends AbstractDelegatingTask {
         private final Version source;
+        private final Version destination;
         private final UpgradeContext context;
+        private final ExecutionJournal journal;
+
+        /**
+         * The checkpoints recorded by an interrupted execution which this task resumes, or
+         * {@code null} if this task does not resume an interrupted execution.
+         */
+        private final Set<String> completed;
+
+        /**
+         * The {@link Prefetcher} creating the {@link Task}s of the upgrade path of which this
+         * task is a part.
+         */
+        private final Prefetcher prefetcher;
+
+        /**
+         * Whether this task is the final task of its upgrade path.
+         */
+        private final boolean isLast;
 
         /**
          * A {@link VersionUpdatingTask} is a concrete {@link Task} which handles updating the
@@ -69,6 +129,16 @@ public final class GraphUpgradeDefinitionFactory implements UpgradeDefinitionFac
                 this.destination = destination;
             }
 
+            /**
+             * Recording the version is negligible compared to the upgrade itself.
+             *
+             * @return zero
+             */
+            @Override
+            public long getWeight() {
+                return 0;
+            }
+
             /**
              * {@link UpgradeContext#setVersion(Version) Set} the {@link Version}.
              *
@@ -89,10 +159,15 @@ public final class GraphUpgradeDefinitionFactory implements UpgradeDefinitionFac
             }
         }
 
-        private UpgradeTask(final Version source, final Version destination, final Task task, final UpgradeContext context) {
+        private UpgradeTask(final Version source, final Version destination, final Task task, final UpgradeContext context, final ExecutionJournal journal, final Set<String> completed, final Prefetcher prefetcher, final boolean isLast) {
             super("Upgrade to " + destination, task);
             this.source = source;
+            this.destination = destination;
             this.context = context;
+            this.journal = journal;
+            this.completed = completed;
+            this.prefetcher = prefetcher;
+            this.isLast = isLast;
         }
 
         /**
@@ -103,9 +178,15 @@ public final class GraphUpgradeDefinitionFactory implements UpgradeDefinitionFac
          * @param destination The destination {@link Version} to be set at the end of the
          *              upgrade.
          * @param context The context within which the upgrade should be executed.
+         * @param journal The {@link ExecutionJournal} in which to record progress, or {@code null}.
+         * @param completed The checkpoints recorded by the interrupted execution to be resumed, or
+         *              {@code null} if an interrupted execution is not being resumed.
+         * @param prefetcher The {@link Prefetcher} creating the {@link Task}s of the upgrade path,
+         *              to be closed once this upgrade fails or, if it is the last, completes.
+         * @param isLast Whether this is the final upgrade of the upgrade path.
          * @return An {@link UpgradeTask}.
          */
-        public static UpgradeTask from(final Task delegate, final Version source, final Version destination, final UpgradeContext context) {
+        public static UpgradeTask from(final Task delegate, final Version source, final Version destination, final UpgradeContext context, final ExecutionJournal journal, final Set<String> completed, final Prefetcher prefetcher, final boolean isLast) {
             final String stepsName = "Steps to upgrade to " + destination;
 
             final List<Task> steps = new ArrayList<Task>(3);
@@ -115,21 +196,165 @@ public final class GraphUpgradeDefinitionFactory implements UpgradeDefinitionFac
 
             final Task aggregateTask = new SerialAggregateTask(context, stepsName, steps);
 
-            return new UpgradeTask(source, destination, aggregateTask, context);
+            return new UpgradeTask(source, destination, aggregateTask, context, journal, completed, prefetcher, isLast);
         }
 
+        /**
+         * Execute the upgrade within a {@link LogContext} identifying its {@link Version}s.
+         * <p>
+         * No further {@link Task}s are created in the background once the upgrade fails, as the
+         * {@link UpgradeContext} they would be created for is no longer valid, or once the final
+         * upgrade completes.
+         */
         @Override
         protected void doCall() throws Exception {
-            if (!context.getVersion().equals(source)) {
-                throw new IllegalStateException("Schema version " + context.getVersion() + " does not match expected version of " + source + ".");
+            boolean succeeded = false;
+            try {
+                LogContext.call(getName(), source, destination, new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        upgrade();
+                        return null;
+                    }
+                });
+                succeeded = true;
+            } finally {
+                if (!succeeded || isLast) {
+                    prefetcher.close();
+                }
+            }
+        }
+
+        private void upgrade() throws Exception {
+            final Version expected = (completed == null) ? source : source.getTransition(destination);
+            if (!context.getVersion().equals(expected)) {
+                throw new IllegalStateException("Schema version " + context.getVersion() + " does not match expected version of " + expected + ".");
+            }
+
+            if (journal == null) {
+                super.doCall();
+                return;
+            }
+
+            if (completed == null) {
+                journal.begin(source, destination);
+            }
+            Checkpoints.call(context, journal, (completed == null) ? Collections.<String>emptySet() : completed, new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    UpgradeTask.super.doCall();
+                    return null;
+                }
+            });
+            journal.end();
+        }
+    }
+
+    /**
+     * Creates the {@link Task}s for the {@link Edge}s of an upgrade path in order, creating those
+     * for up to {@code depth} subsequent {@link Edge}s in the background.
+     */
+    private static final class Prefetcher {
+        private final List<Edge> path;
+        private final UpgradeContext context;
+        private final UpgradeLogger logger;
+        private final int depth;
+        private final ThreadPoolExecutor executor;
+
+        /**
+         * The {@link Task}s being created in the background, by index within {@link #path}.
+         */
+        private final Map<Integer, Future<Task>> prefetched = new HashMap<Integer, Future<Task>>();
+
+        /**
+         * The index of the last {@link Edge} whose {@link Task} has been requested or prefetched.
+         */
+        private int last = -1;
+
+        /**
+         * Whether {@link #close()} has been called.
+         */
+        private boolean closed;
+
+        Prefetcher(final List<Edge> path, final UpgradeContext context, final int depth) {
+            this.path = path;
+            this.context = context;
+            this.logger = context.getLogger(GraphUpgradeDefinitionFactory.class);
+            this.depth = depth;
+            this.executor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    final Thread thread = new Thread(r, "upgrade-prefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+
+        /**
+         * Create the {@link Task} for the {@link Edge} at the specified index, using the result of
+         * prefetching it if available, and begin prefetching the {@link Task}s which follow it.
+         */
+        Task take(final int index) throws InterruptedException {
+            final Future<Task> future;
+            synchronized (this) {
+                future = prefetched.remove(index);
+                if (!closed) {
+                    for (int i = Math.max(last, index) + 1; i <= Math.min(index + depth, path.size() - 1); i++) {
+                        prefetched.put(i, executor.submit(creator(path.get(i))));
+                    }
+                    last = Math.max(last, Math.min(index + depth, path.size() - 1));
+                }
             }
 
-            super.doCall();
+            if (future != null) {
+                try {
+                    return future.get();
+                } catch (ExecutionException e) {
+                    // Create the task again on the calling thread so that any failure is reported
+                    // exactly as it would have been had the task not been prefetched
+                    logger.warn(e.getCause(), "Creating the tasks to upgrade to {0} in the background failed; retrying", path.get(index).getTarget());
+                } catch (CancellationException e) {
+                    // Closed concurrently
+                }
+            }
+            return path.get(index).createTask(context);
+        }
+
+        /**
+         * Stop creating {@link Task}s in the background, cancelling those being created, and
+         * release the background thread.
+         */
+        synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            for (final Future<Task> future : prefetched.values()) {
+                future.cancel(true);
+            }
+            prefetched.clear();
+            executor.shutdownNow();
+        }
+
+        private Callable<Task> creator(final Edge edge) {
+            return new Callable<Task>() {
+                @Override
+                public Task call() {
+                    return edge.createTask(context);
+                }
+            };
         }
     }
 
     private final Graph graph;
 
+    private final ExecutionJournal journal;
+
+    private final int prefetchDepth;
+
     /**
      * An {@link UpgradeDefinition} containing no {@link Task}s.
      */
@@ -141,21 +366,76 @@ public final class GraphUpgradeDefinitionFactory implements UpgradeDefinitionFac
     };
 
     public GraphUpgradeDefinitionFactory(final Graph graph) {
+        this(graph, null);
+    }
+
+    /**
+     * Constructs a factory whose upgrades record their progress in the supplied
+     * {@link ExecutionJournal}, allowing interrupted upgrades to be resumed.
+     *
+     * @param graph the {@link Graph} of upgrades
+     * @param journal the {@link ExecutionJournal} in which to record progress, or {@code null}
+     */
+    public GraphUpgradeDefinitionFactory(final Graph graph, final ExecutionJournal journal) {
+        this(graph, journal, 0);
+    }
+
+    /**
+     * Constructs a factory whose upgrades create the {@link Task}s for up to
+     * {@code prefetchDepth} subsequent {@link Edge}s in the background while the upgrade to the
+     * current target {@link Version} executes.
+     *
+     * @param graph the {@link Graph} of upgrades
+     * @param journal the {@link ExecutionJournal} in which to record progress, or {@code null}
+     * @param prefetchDepth the maximum number of {@link Edge}s for which {@link Task}s are created
+     *          ahead of execution; {@code 0} to create each only as its upgrade begins
+     * @throws IllegalArgumentException if {@code prefetchDepth} is negative
+     */
+    public GraphUpgradeDefinitionFactory(final Graph graph, final ExecutionJournal journal, final int prefetchDepth) {
+        if (prefetchDepth < 0) {
+            throw new IllegalArgumentException("prefetchDepth");
+        }
+
         this.graph = graph;
+        this.journal = journal;
+        this.prefetchDepth = prefetchDepth;
     }
 
     @Override
-    public boolean isUpgradeSupported(UpgradeContext context) {
+    public boolean isUpgradeSupported(UpgradeContext context) throws IOException {
         final Version sourceVersion = context.getVersion();
 
         final boolean upgradePathExists = graph.containsNode(sourceVersion);
         final boolean noOpUpgrade = sourceVersion.equals(getTargetVersion());
 
-        return upgradePathExists || noOpUpgrade;
+        return upgradePathExists || noOpUpgrade || findInterrupted(sourceVersion) != null;
+    }
+
+    /**
+     * Find the interrupted upgrade, if any, which left the schema at the supplied version.
+     *
+     * @return the {@link ExecutionJournal.Record} of the interrupted upgrade, or {@code null}
+     */
+    private ExecutionJournal.Record findInterrupted(final Version current) throws IOException {
+        if (journal == null || !current.isTransition()) {
+            return null;
+        }
+
+        final ExecutionJournal.Record record = journal.read();
+        if (record == null || !record.getSource().getTransition(record.getTarget()).equals(current)) {
+            return null;
+        }
+
+        final Edge edge = graph.getEdge(record.getSource());
+        if (edge == null || !edge.getTarget().equals(record.getTarget())) {
+            return null;
+        }
+
+        return record;
     }
 
     @Override
-    public UpgradeDefinition create(final UpgradeContext context) {
+    public UpgradeDefinition create(final UpgradeContext context) throws IOException {
         final Version current = context.getVersion();
         final Version required = getTargetVersion();
 
@@ -163,12 +443,31 @@ public final class GraphUpgradeDefinitionFactory implements UpgradeDefinitionFac
             return NOOP;
         }
 
-        final List<Edge> path = GraphHelper.extractPath(graph, current);
+        final ExecutionJournal.Record interrupted = findInterrupted(current);
+
+        final List<Edge> path;
+        if (interrupted == null) {
+            path = GraphHelper.extractPath(graph, current);
+        } else {
+            path = new ArrayList<Edge>();
+            path.add(graph.getEdge(interrupted.getSource()));
+            path.addAll(GraphHelper.extractPath(graph, interrupted.getTarget()));
+        }
+
+        final Prefetcher prefetcher = new Prefetcher(path, context, prefetchDepth);
 
         final List<Task> upgradeTasks = new ArrayList<Task>(path.size());
         for (final Edge edge : path) {
-            final Task rawTask = edge.createTask(context);
-            final Task upgradeTask = UpgradeTask.from(rawTask, edge.getSource(), edge.getTarget(), context);
+            final int index = upgradeTasks.size();
+            final long weight = (edge instanceof Weighted) ? ((Weighted) edge).getWeight() : 1;
+            final Task rawTask = new DeferredTask("Tasks to upgrade to " + edge.getTarget(), new Callable<Task>() {
+                @Override
+                public Task call() throws InterruptedException {
+                    return prefetcher.take(index);
+                }
+            }, weight);
+            final Set<String> completed = (interrupted != null && upgradeTasks.isEmpty()) ? interrupted.getCompleted() : null;
+            final Task upgradeTask = UpgradeTask.from(rawTask, edge.getSource(), edge.getTarget(), context, journal, completed, prefetcher, index == path.size() - 1);
             upgradeTasks.add(upgradeTask);
         }
 
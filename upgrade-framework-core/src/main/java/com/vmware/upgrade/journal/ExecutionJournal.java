@@ -0,0 +1,98 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.journal;
+
+import java.io.IOException;
+import java.util.Set;
+
+import com.vmware.upgrade.sequencing.Version;
+
+/**
+ * A durable record of the progress made executing the upgrade from one {@link Version} to another,
+ * allowing an interrupted upgrade to resume without repeating the work it had completed.
+ * <p>
+ * A journal tracks at most one upgrade at a time. The upgrade is identified by its source and
+ * target {@link Version}s and its progress by a set of opaque checkpoint identifiers, each
+ * identifying a completed task.
+ * <p>
+ * Implementations must be safe for use by multiple threads.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public interface ExecutionJournal {
+    /**
+     * The contents of an {@link ExecutionJournal} tracking an upgrade which has begun but not
+     * ended.
+     */
+    interface Record {
+        /**
+         * @return the {@link Version} from which the upgrade began
+         */
+        Version getSource();
+
+        /**
+         * @return the {@link Version} to which the upgrade is being performed
+         */
+        Version getTarget();
+
+        /**
+         * @return the checkpoints recorded since the upgrade began
+         */
+        Set<String> getCompleted();
+    }
+
+    /**
+     * Read the journal.
+     *
+     * @return the {@link Record} of the upgrade in progress, or {@code null} if no upgrade has
+     *          begun without subsequently ending
+     * @throws IOException if the journal cannot be read
+     */
+    Record read() throws IOException;
+
+    /**
+     * Begin tracking an upgrade, discarding anything previously recorded.
+     *
+     * @param source the {@link Version} from which the upgrade begins
+     * @param target the {@link Version} to which the upgrade is being performed
+     * @throws IOException if the journal cannot be written
+     */
+    void begin(Version source, Version target) throws IOException;
+
+    /**
+     * Durably record a checkpoint for the upgrade in progress.
+     *
+     * @param checkpoint the identifier of a completed task
+     * @throws IOException if the journal cannot be written
+     */
+    void recordCompleted(String checkpoint) throws IOException;
+
+    /**
+     * Stop tracking the upgrade in progress, discarding everything recorded for it.
+     *
+     * @throws IOException if the journal cannot be written
+     */
+    void end() throws IOException;
+}
@@ -0,0 +1,167 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import com.vmware.upgrade.sequencing.Version;
+
+/**
+ * An {@link ExecutionJournal} stored in a local, append-only file.
+ * <p>
+ * Each entry is a single line, written and synchronized to the storage device before the call
+ * which recorded it returns. A line left incomplete by a crash is ignored. The file is truncated
+ * whenever an upgrade begins or ends, so it never grows beyond the entries for one upgrade.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public final class FileExecutionJournal implements ExecutionJournal {
+    private static final String BEGIN = "begin";
+    private static final String COMPLETED = "completed";
+    private static final String SEPARATOR = "\t";
+    private static final String NEWLINE = "\n";
+
+    private static final class ImmutableRecord implements Record {
+        private final Version source;
+        private final Version target;
+        private final Set<String> completed;
+
+        ImmutableRecord(final Version source, final Version target, final Set<String> completed) {
+            this.source = source;
+            this.target = target;
+            this.completed = Collections.unmodifiableSet(completed);
+        }
+
+        @Override
+        public Version getSource() {
+            return source;
+        }
+
+        @Override
+        public Version getTarget() {
+            return target;
+        }
+
+        @Override
+        public Set<String> getCompleted() {
+            return completed;
+        }
+    }
+
+    private final Path path;
+
+    /**
+     * Constructs a journal stored in the specified file, which need not exist.
+     *
+     * @param file
+     *          the file in which to store the journal
+     * @throws IllegalArgumentException
+     *          if {@code file} is {@code null}
+     */
+    public FileExecutionJournal(final File file) {
+        if (file == null) {
+            throw new IllegalArgumentException("file");
+        }
+
+        this.path = file.toPath();
+    }
+
+    @Override
+    public synchronized Record read() throws IOException {
+        final String contents;
+        try {
+            contents = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        Version source = null;
+        Version target = null;
+        final Set<String> completed = new LinkedHashSet<String>();
+
+        // Only complete lines are considered; anything after the last newline was torn by a crash
+        final String[] lines = contents.substring(0, contents.lastIndexOf(NEWLINE) + 1).split(NEWLINE);
+        for (final String line : lines) {
+            final String[] fields = line.split(SEPARATOR);
+            if (fields.length == 3 && fields[0].equals(BEGIN)) {
+                source = Version.lookup(fields[1]);
+                target = Version.lookup(fields[2]);
+                completed.clear();
+            } else if (fields.length == 2 && fields[0].equals(COMPLETED) && source != null) {
+                completed.add(fields[1]);
+            }
+        }
+
+        if (source == null || target == null) {
+            return null;
+        }
+
+        return new ImmutableRecord(source, target, completed);
+    }
+
+    @Override
+    public synchronized void begin(final Version source, final Version target) throws IOException {
+        if (source == null) {
+            throw new IllegalArgumentException("source");
+        }
+        if (target == null) {
+            throw new IllegalArgumentException("target");
+        }
+
+        write(BEGIN + SEPARATOR + source + SEPARATOR + target + NEWLINE, StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    @Override
+    public synchronized void recordCompleted(final String checkpoint) throws IOException {
+        if (checkpoint == null || checkpoint.contains(SEPARATOR) || checkpoint.contains(NEWLINE)) {
+            throw new IllegalArgumentException("checkpoint");
+        }
+
+        write(COMPLETED + SEPARATOR + checkpoint + NEWLINE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    public synchronized void end() throws IOException {
+        write("", StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private void write(final String entry, final StandardOpenOption mode) throws IOException {
+        Files.write(path, entry.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode, StandardOpenOption.SYNC);
+    }
+
+    @Override
+    public String toString() {
+        return "FileExecutionJournal [" + path + "]";
+    }
+}
@@ -0,0 +1,457 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.logging;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes log events to log4j on a single background thread, so that the threads executing an
+ * upgrade do not wait for slow appenders.
+ * <p>
+ * Events logged through the {@link UpgradeLogger}s obtained from
+ * {@link #asUpgradeLogger(org.apache.log4j.Logger)} are held in a bounded buffer until the
+ * background thread writes them, in the order in which they were logged. The message of each
+ * event is rendered by the logging thread; any further arguments are rendered by the background
+ * thread and so must not be modified once logged. The {@link LogContext} in which each event was
+ * logged is restored while it is written, but location information recorded by log4j refers to
+ * the background thread.
+ * <p>
+ * What happens when an event is logged while the buffer is full is determined by the
+ * {@link OverflowPolicy}. Events are written by the time {@link #flush()} returns.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public final class AsyncLogger implements Closeable {
+    /**
+     * The behavior when an event is logged while the buffer is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Wait until there is space for the event.
+         */
+        BLOCK,
+        /**
+         * Discard {@link LogLevel#INFO INFO}, {@link LogLevel#DEBUG DEBUG} and
+         * {@link LogLevel#TRACE TRACE} events; wait until there is space for more severe events,
+         * including {@link LogLevel#SECURITY SECURITY} events.
+         */
+        DISCARD_BELOW_WARN;
+
+        private boolean isDiscarded(final LogLevel level) {
+            return this == DISCARD_BELOW_WARN && level.compareTo(LogLevel.SECURITY) > 0;
+        }
+    }
+
+    /**
+     * A buffered event, or a marker which the background thread acknowledges once the events
+     * which precede it have been written.
+     */
+    private static final class Event implements Runnable {
+        private final Logger logger;
+        private final LogLevel level;
+        private final Throwable error;
+        private final String text;
+        private final Object[] args;
+        private final LogContext context;
+        private final CountDownLatch written;
+
+        Event(final Logger logger, final LogLevel level, final Throwable error, final String text, final Object[] args) {
+            this.logger = logger;
+            this.level = level;
+            this.error = error;
+            this.text = text;
+            this.args = args;
+            this.context = LogContext.snapshot();
+            this.written = null;
+        }
+
+        Event(final CountDownLatch written) {
+            this.logger = null;
+            this.level = null;
+            this.error = null;
+            this.text = null;
+            this.args = null;
+            this.context = null;
+            this.written = written;
+        }
+
+        void write() {
+            if (written != null) {
+                written.countDown();
+            } else {
+                LogContext.run(context, this);
+            }
+        }
+
+        @Override
+        public void run() {
+            logger.log(level, error, text, args);
+        }
+    }
+
+    /**
+     * A {@link Logger} which buffers events for a delegate.
+     */
+    private final class BufferingLogger implements Logger {
+        private final Logger delegate;
+
+        BufferingLogger(final Logger delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void fatal(final String text, final Object... args) {
+            log(LogLevel.FATAL, null, text, args);
+        }
+
+        @Override
+        public void fatal(final Throwable error, final String text, final Object... args) {
+            log(LogLevel.FATAL, error, text, args);
+        }
+
+        @Override
+        public boolean isFatalEnabled() {
+            return delegate.isFatalEnabled();
+        }
+
+        @Override
+        public void error(final String text, final Object... args) {
+            log(LogLevel.ERROR, null, text, args);
+        }
+
+        @Override
+        public void error(final Throwable error, final String text, final Object... args) {
+            log(LogLevel.ERROR, error, text, args);
+        }
+
+        @Override
+        public boolean isErrorEnabled() {
+            return delegate.isErrorEnabled();
+        }
+
+        @Override
+        public void info(final String text, final Object... args) {
+            log(LogLevel.INFO, null, text, args);
+        }
+
+        @Override
+        public void info(final Throwable error, final String text, final Object... args) {
+            log(LogLevel.INFO, error, text, args);
+        }
+
+        @Override
+        public boolean isInfoEnabled() {
+            return delegate.isInfoEnabled();
+        }
+
+        @Override
+        public void debug(final String text, final Object... args) {
+            log(LogLevel.DEBUG, null, text, args);
+        }
+
+        @Override
+        public void debug(final Throwable error, final String text, final Object... args) {
+            log(LogLevel.DEBUG, error, text, args);
+        }
+
+        @Override
+        public boolean isDebugEnabled() {
+            return delegate.isDebugEnabled();
+        }
+
+        @Override
+        public void warn(final String text, final Object... args) {
+            log(LogLevel.WARN, null, text, args);
+        }
+
+        @Override
+        public void warn(final Throwable error, final String text, final Object... args) {
+            log(LogLevel.WARN, error, text, args);
+        }
+
+        @Override
+        public boolean isWarnEnabled() {
+            return delegate.isWarnEnabled();
+        }
+
+        @Override
+        public void security(final String text, final Object... args) {
+            log(LogLevel.SECURITY, null, text, args);
+        }
+
+        @Override
+        public void security(final Throwable error, final String text, final Object... args) {
+            log(LogLevel.SECURITY, error, text, args);
+        }
+
+        @Override
+        public boolean isSecurityEnabled() {
+            return delegate.isSecurityEnabled();
+        }
+
+        @Override
+        public void trace(final String text, final Object... args) {
+            log(LogLevel.TRACE, null, text, args);
+        }
+
+        @Override
+        public void trace(final Throwable error, final String text, final Object... args) {
+            log(LogLevel.TRACE, error, text, args);
+        }
+
+        @Override
+        public boolean isTraceEnabled() {
+            return delegate.isTraceEnabled();
+        }
+
+        @Override
+        public void log(final LogLevel level, final String text, final Object... args) {
+            log(level, null, text, args);
+        }
+
+        @Override
+        public void log(final LogLevel level, final Throwable error, final String text, final Object... args) {
+            if (delegate.isLogLevelEnabled(level)) {
+                enqueue(new Event(delegate, level, error, text, args));
+            }
+        }
+
+        @Override
+        public boolean isLogLevelEnabled(final LogLevel level) {
+            return delegate.isLogLevelEnabled(level);
+        }
+    }
+
+    /**
+     * How often a flush checks whether the background thread has stopped.
+     */
+    private static final long FLUSH_POLL_MILLIS = 100;
+
+    /**
+     * The final event buffered by {@link #close()}; the background thread stops once it has
+     * written every event which precedes it.
+     */
+    private static final Event STOP = new Event(new CountDownLatch(0));
+
+    private final BlockingQueue<Event> buffer;
+
+    private final OverflowPolicy policy;
+
+    private final Thread writer;
+
+    private final AtomicLong discarded = new AtomicLong();
+
+    private volatile boolean closed;
+
+    /**
+     * Constructs an instance and starts its background thread.
+     *
+     * @param capacity
+     *          the maximum number of events to buffer
+     * @param policy
+     *          the behavior when an event is logged while the buffer is full
+     * @throws IllegalArgumentException
+     *          if {@code capacity} is not positive or {@code policy} is {@code null}
+     */
+    public AsyncLogger(final int capacity, final OverflowPolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity");
+        }
+        if (policy == null) {
+            throw new IllegalArgumentException("policy");
+        }
+
+        this.buffer = new ArrayBlockingQueue<Event>(capacity);
+        this.policy = policy;
+        this.writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "upgrade-log");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Return an {@link UpgradeLogger} which logs to the supplied {@link org.apache.log4j.Logger}
+     * via this instance.
+     *
+     * @param delegateLogger the {@linkplain org.apache.log4j.Logger Logger} to wrap
+     * @return the wrapped {@linkplain org.apache.log4j.Logger Logger}
+     * @throws IllegalArgumentException if {@code delegateLogger} is {@code null}
+     */
+    public UpgradeLogger asUpgradeLogger(final org.apache.log4j.Logger delegateLogger) {
+        if (delegateLogger == null) {
+            throw new IllegalArgumentException("delegateLogger");
+        }
+
+        return new UpgradeLoggerImpl(new BufferingLogger(new Log4jLoggerImpl(delegateLogger)));
+    }
+
+    /**
+     * Wait until every event logged before this method was called has been written.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void flush() throws InterruptedException {
+        if (closed) {
+            return;
+        }
+
+        final CountDownLatch written = new CountDownLatch(1);
+        if (!put(new Event(written))) {
+            // Closed concurrently; the events have been written
+            return;
+        }
+        while (!written.await(FLUSH_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (!writer.isAlive()) {
+                // Closed concurrently; the events have been written
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the number of events discarded because the buffer was full
+     */
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    /**
+     * Write every buffered event and stop the background thread. Events subsequently logged are
+     * written by the logging thread.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        closed = true;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (put(STOP)) {
+                    writer.join();
+                }
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        // Events buffered by threads which had not yet observed the close
+        writeBuffered();
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void enqueue(final Event event) {
+        if (closed) {
+            event.write();
+            return;
+        }
+
+        if (!buffer.offer(event)) {
+            if (policy.isDiscarded(event.level)) {
+                discarded.incrementAndGet();
+                return;
+            }
+
+            try {
+                if (!put(event)) {
+                    event.write();
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // Rather than lose the event, write it out of order
+                event.write();
+                return;
+            }
+        }
+
+        if (closed && !writer.isAlive()) {
+            // Closed concurrently, after the background thread had written its final event
+            writeBuffered();
+        }
+    }
+
+    /**
+     * Buffer an event, waiting for space only while the background thread is running.
+     *
+     * @return {@code true} if the event was buffered, or {@code false} if the background thread
+     *          stopped first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private boolean put(final Event event) throws InterruptedException {
+        while (!buffer.offer(event, FLUSH_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (!writer.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeBuffered() {
+        Event event;
+        while ((event = buffer.poll()) != null) {
+            write(event);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            final Event event;
+            try {
+                event = buffer.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+
+            if (event == STOP) {
+                return;
+            }
+            write(event);
+        }
+    }
+
+    private static void write(final Event event) {
+        try {
+            event.write();
+        } catch (RuntimeException e) {
+            // An appender failed; there is nowhere to report it, so continue with the next event
+        }
+    }
+}
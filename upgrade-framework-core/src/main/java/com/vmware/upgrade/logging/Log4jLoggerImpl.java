@@ -22,8 +22,6 @@
 
 package com.vmware.upgrade.logging;
 
-import java.text.MessageFormat;
-
 import org.apache.log4j.Level;
 
 /**
@@ -177,14 +175,16 @@ class Log4jLoggerImpl implements Logger {
         Level log4jLevel = convertsLogLevel(level);
 
         if (logger.isEnabledFor(log4jLevel)) {
-
+            final Object[] previousMdc = LogContext.applyToMdc();
             try {
-                String messageToLog = MessageFormat.format(text, args);
+                String messageToLog = MessageFormats.format(text, args);
                 logger.log(FQCN, log4jLevel, messageToLog, error);
             } catch (IllegalArgumentException e){
-                String messageToLog = MessageFormat.format("Cannot format message: {0}", text);
+                String messageToLog = MessageFormats.format("Cannot format message: {0}", text);
                 logger.log(FQCN, Level.ERROR, messageToLog, e);
                 logger.log(FQCN, log4jLevel, text, error);
+            } finally {
+                LogContext.restoreMdc(previousMdc);
             }
         }
     }
@@ -0,0 +1,315 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.logging;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.upgrade.Task;
+import com.vmware.upgrade.sequencing.Version;
+
+import org.apache.log4j.MDC;
+
+/**
+ * Identifies the {@link Task} on whose behalf the calling thread is logging.
+ * <p>
+ * A context is established for the duration of the execution of each {@link Task} executed by the
+ * aggregating and delegating tasks of the framework, including those executed on other threads,
+ * and of each upgrade from one {@link Version} to the next. It records the path of {@link Task}
+ * names from the outermost {@link Task}, the source and target {@link Version}s of the upgrade and
+ * when the innermost {@link Task} began executing.
+ * <p>
+ * When an event is logged through an {@link UpgradeLogger} obtained from
+ * {@link UpgradeLoggerHelper} or {@link AsyncLogger}, the context in which it was logged is made
+ * available to log4j layouts as the {@link MDC} values {@value #TASK_PATH_KEY},
+ * {@value #SOURCE_KEY}, {@value #TARGET_KEY} and {@value #ELAPSED_KEY} (in milliseconds), e.g.
+ * {@code %X{upgrade.task}}. The {@link MDC} is only modified while an event is being logged and
+ * the path of {@link Task} names is only built when it is first needed, so establishing a context
+ * costs no more than allocating a small object and updating a thread-local variable.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public final class LogContext {
+    /**
+     * The {@link MDC} key for the path of {@link Task} names.
+     */
+    public static final String TASK_PATH_KEY = "upgrade.task";
+
+    /**
+     * The {@link MDC} key for the source {@link Version} of the upgrade.
+     */
+    public static final String SOURCE_KEY = "upgrade.source";
+
+    /**
+     * The {@link MDC} key for the target {@link Version} of the upgrade.
+     */
+    public static final String TARGET_KEY = "upgrade.target";
+
+    /**
+     * The {@link MDC} key for the time, in milliseconds, since the innermost {@link Task} began
+     * executing.
+     */
+    public static final String ELAPSED_KEY = "upgrade.elapsed";
+
+    private static final String[] KEYS = { TASK_PATH_KEY, SOURCE_KEY, TARGET_KEY, ELAPSED_KEY };
+
+    private static final String SEPARATOR = " / ";
+
+    private static final ThreadLocal<LogContext> CURRENT = new ThreadLocal<LogContext>();
+
+    /**
+     * The enclosing context, or {@code null} if this is the outermost.
+     */
+    private final LogContext parent;
+
+    private final String taskName;
+
+    /**
+     * The path of {@link Task} names, built when first needed.
+     */
+    private volatile String taskPath;
+
+    private final Version source;
+
+    private final Version target;
+
+    private final long start;
+
+    /**
+     * The time elapsed when this snapshot was taken, or {@code -1} if this is not a snapshot.
+     */
+    private final long elapsed;
+
+    private LogContext(final LogContext parent, final String taskName, final Version source, final Version target, final long start, final long elapsed) {
+        this.parent = parent;
+        this.taskName = taskName;
+        this.source = source;
+        this.target = target;
+        this.start = start;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * @return the context of the calling thread, or {@code null} if there is none
+     */
+    public static LogContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Execute a {@link Callable} on the calling thread within a new context nested within that of
+     * the calling thread, if any.
+     *
+     * @param taskName
+     *          the name of the {@link Task} being executed
+     * @param source
+     *          the source {@link Version} of the upgrade being executed, or {@code null} to
+     *          inherit that of the enclosing context
+     * @param target
+     *          the target {@link Version} of the upgrade being executed, or {@code null} to
+     *          inherit that of the enclosing context
+     * @param callable
+     *          the {@link Callable} to execute
+     * @return the result of {@code callable}
+     * @throws Exception
+     *          if {@code callable} throws an exception
+     */
+    public static <V> V call(final String taskName, final Version source, final Version target, final Callable<V> callable) throws Exception {
+        return call(CURRENT.get(), taskName, source, target, callable);
+    }
+
+    /**
+     * Wrap a {@link Callable} so that it executes within a new context nested within that of the
+     * calling thread, if any, regardless of the thread on which it is executed.
+     *
+     * @param taskName
+     *          the name of the {@link Task} to be executed
+     * @param callable
+     *          the {@link Callable} to execute
+     * @return the wrapped {@link Callable}
+     */
+    public static <V> Callable<V> bind(final String taskName, final Callable<V> callable) {
+        final LogContext parent = CURRENT.get();
+        return new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                return LogContext.call(parent, taskName, null, null, callable);
+            }
+        };
+    }
+
+    private static <V> V call(final LogContext parent, final String taskName, final Version source, final Version target, final Callable<V> callable) throws Exception {
+        final LogContext context;
+        if (parent == null) {
+            context = new LogContext(null, taskName, source, target, System.nanoTime(), -1);
+        } else {
+            context = new LogContext(parent, taskName,
+                    (source == null) ? parent.source : source,
+                    (target == null) ? parent.target : target,
+                    System.nanoTime(), -1);
+        }
+
+        return context.call(callable);
+    }
+
+    private <V> V call(final Callable<V> callable) throws Exception {
+        final LogContext previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return callable.call();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * @return the names of the enclosing {@link Task}s, outermost first, separated by
+     *          {@code " / "}
+     */
+    public String getTaskPath() {
+        String result = taskPath;
+        if (result == null) {
+            result = (parent == null) ? taskName : parent.getTaskPath() + SEPARATOR + taskName;
+            taskPath = result;
+        }
+        return result;
+    }
+
+    /**
+     * @return the source {@link Version} of the upgrade, or {@code null} if unknown
+     */
+    public Version getSource() {
+        return source;
+    }
+
+    /**
+     * @return the target {@link Version} of the upgrade, or {@code null} if unknown
+     */
+    public Version getTarget() {
+        return target;
+    }
+
+    /**
+     * @return the time, in milliseconds, since the innermost {@link Task} began executing
+     */
+    public long getElapsedMillis() {
+        final long nanos = (elapsed >= 0) ? elapsed : System.nanoTime() - start;
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * Capture the context of the calling thread as it is now, for an event to be written later.
+     *
+     * @return a copy of the context of the calling thread whose elapsed time is fixed, or
+     *          {@code null} if there is none
+     */
+    static LogContext snapshot() {
+        final LogContext current = CURRENT.get();
+        if (current == null || current.elapsed >= 0) {
+            return current;
+        }
+
+        final LogContext snapshot = new LogContext(current.parent, current.taskName, current.source, current.target, current.start, System.nanoTime() - current.start);
+        snapshot.taskPath = current.taskPath;
+        return snapshot;
+    }
+
+    /**
+     * Execute a {@link Runnable} on the calling thread within the supplied context, or with no
+     * context if {@code null}.
+     */
+    static void run(final LogContext context, final Runnable runnable) {
+        final LogContext previous = CURRENT.get();
+        if (context == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context);
+        }
+        try {
+            runnable.run();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Copy the context of the calling thread, if any, into the {@link MDC}.
+     *
+     * @return the values replaced, to be passed to {@link #restoreMdc(Object[])}, or {@code null}
+     *          if the calling thread has no context
+     */
+    static Object[] applyToMdc() {
+        final LogContext current = CURRENT.get();
+        if (current == null) {
+            return null;
+        }
+
+        final Object[] previous = new Object[KEYS.length];
+        for (int i = 0; i < KEYS.length; i++) {
+            previous[i] = MDC.get(KEYS[i]);
+        }
+
+        put(TASK_PATH_KEY, current.getTaskPath());
+        put(SOURCE_KEY, current.source);
+        put(TARGET_KEY, current.target);
+        put(ELAPSED_KEY, current.getElapsedMillis());
+
+        return previous;
+    }
+
+    /**
+     * Restore the {@link MDC} values replaced by {@link #applyToMdc()}.
+     */
+    static void restoreMdc(final Object[] previous) {
+        if (previous == null) {
+            return;
+        }
+
+        for (int i = 0; i < KEYS.length; i++) {
+            put(KEYS[i], previous[i]);
+        }
+    }
+
+    private static void put(final String key, final Object value) {
+        if (value == null) {
+            MDC.remove(key);
+        } else {
+            MDC.put(key, value);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LogContext [" + getTaskPath() + ", " + source + " -> " + target + ", " + getElapsedMillis() + "ms]";
+    }
+}
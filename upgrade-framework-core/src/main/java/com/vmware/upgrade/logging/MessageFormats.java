@@ -0,0 +1,212 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.logging;
+
+import java.text.MessageFormat;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Formats log messages as {@link MessageFormat#format(String, Object...)} does, without parsing
+ * the pattern of each message every time it is logged.
+ * <p>
+ * Patterns are compiled once and held in a bounded cache. A pattern consisting only of literal
+ * text and simple {@code {n}} placeholders is compiled into its literal segments and argument
+ * indexes, and is rendered by concatenation without involving a {@link MessageFormat} unless one
+ * of its arguments is a {@link Number} or {@link Date}, which require locale-sensitive formatting.
+ * Any other pattern is compiled into a {@link MessageFormat} using the default locale at the time
+ * it is first used.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+final class MessageFormats {
+    /**
+     * The maximum number of compiled patterns retained; log messages use a small, fixed set of
+     * patterns, so exceeding this suggests patterns are being constructed dynamically.
+     */
+    static final int MAX_CACHED_PATTERNS = 512;
+
+    /**
+     * The largest argument index accepted by the simple form.
+     */
+    private static final int MAX_SIMPLE_INDEX = 9999;
+
+    private static final ConcurrentMap<String, CompiledPattern> cache = new ConcurrentHashMap<String, CompiledPattern>();
+
+    /**
+     * A compiled pattern.
+     */
+    private static final class CompiledPattern {
+        private final String pattern;
+
+        /**
+         * The literal text preceding each placeholder, followed by the text after the last, or
+         * {@code null} if the pattern is not in the simple form.
+         */
+        private final String[] literals;
+
+        /**
+         * The argument index of each placeholder.
+         */
+        private final int[] indexes;
+
+        /**
+         * The {@link MessageFormat}, which is not thread-safe, for the pattern; created when first
+         * needed.
+         */
+        private MessageFormat format;
+
+        CompiledPattern(final String pattern, final String[] literals, final int[] indexes) {
+            this.pattern = pattern;
+            this.literals = literals;
+            this.indexes = indexes;
+        }
+
+        String format(final Object[] args) {
+            if (literals != null && isSimple(args)) {
+                final StringBuilder builder = new StringBuilder(pattern.length() + 16 * indexes.length);
+                for (int i = 0; i < indexes.length; i++) {
+                    builder.append(literals[i]);
+                    final int index = indexes[i];
+                    if (args != null && index < args.length) {
+                        builder.append(String.valueOf(args[index]));
+                    } else {
+                        builder.append('{').append(index).append('}');
+                    }
+                }
+                return builder.append(literals[indexes.length]).toString();
+            }
+
+            synchronized (this) {
+                if (format == null) {
+                    format = new MessageFormat(pattern);
+                }
+                return format.format(args);
+            }
+        }
+
+        private boolean isSimple(final Object[] args) {
+            if (args == null) {
+                return true;
+            }
+
+            for (final int index : indexes) {
+                if (index < args.length && (args[index] instanceof Number || args[index] instanceof Date)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private MessageFormats() {
+    }
+
+    /**
+     * Format a message.
+     *
+     * @param pattern the pattern, as accepted by {@link MessageFormat}
+     * @param args the arguments to the pattern
+     * @return the formatted message
+     * @throws IllegalArgumentException if the pattern is invalid
+     * @see MessageFormat#format(String, Object...)
+     */
+    static String format(final String pattern, final Object... args) {
+        CompiledPattern compiled = cache.get(pattern);
+        if (compiled == null) {
+            compiled = compile(pattern);
+            if (cache.size() >= MAX_CACHED_PATTERNS) {
+                cache.clear();
+            }
+            cache.put(pattern, compiled);
+        }
+
+        return compiled.format(args);
+    }
+
+    /**
+     * @return the number of compiled patterns currently cached
+     */
+    static int cachedPatterns() {
+        return cache.size();
+    }
+
+    private static CompiledPattern compile(final String pattern) {
+        final int length = pattern.length();
+
+        int placeholders = 0;
+        for (int i = 0; i < length; i++) {
+            final char c = pattern.charAt(i);
+            if (c == '{') {
+                placeholders++;
+            } else if (c == '\'') {
+                return complex(pattern);
+            }
+        }
+
+        final String[] literals = new String[placeholders + 1];
+        final int[] indexes = new int[placeholders];
+
+        int start = 0;
+        for (int p = 0; p < placeholders; p++) {
+            final int open = pattern.indexOf('{', start);
+            final int close = pattern.indexOf('}', open);
+            if (close < 0 || close - open - 1 < 1 || close - open - 1 > 4 || pattern.lastIndexOf('}', open) >= start) {
+                return complex(pattern);
+            }
+
+            int index = 0;
+            for (int i = open + 1; i < close; i++) {
+                final char c = pattern.charAt(i);
+                if (c < '0' || c > '9') {
+                    return complex(pattern);
+                }
+                index = index * 10 + (c - '0');
+            }
+            if (index > MAX_SIMPLE_INDEX) {
+                return complex(pattern);
+            }
+
+            literals[p] = pattern.substring(start, open);
+            indexes[p] = index;
+            start = close + 1;
+        }
+
+        if (pattern.indexOf('}', start) >= 0) {
+            return complex(pattern);
+        }
+        literals[placeholders] = pattern.substring(start);
+
+        return new CompiledPattern(pattern, literals, indexes);
+    }
+
+    private static CompiledPattern complex(final String pattern) {
+        final CompiledPattern compiled = new CompiledPattern(pattern, null, null);
+        // Validate the pattern eagerly so that an invalid pattern is never cached
+        compiled.format = new MessageFormat(pattern);
+        return compiled;
+    }
+}
@@ -22,15 +22,180 @@
 
 package com.vmware.upgrade.logging;
 
+import java.util.function.Supplier;
+
 /**
  * Wrapper around {@link Logger} (which is not intended to be exposed to framework users and should
  * remain in-sync with the {@code Logger} interface in {@code com.vmware.vcloud.activity.logging}
  * and {@code com.vmware.vcloud.logging}) for project-specific customizations.
+ * <p>
+ * In addition to the pattern-based methods of {@code Logger}, which format their arguments only
+ * if the level is enabled, messages may be provided by a {@link Supplier}. The supplier is
+ * invoked only if the level is enabled, so a message which is expensive to build, such as the
+ * description of a tree of tasks, costs nothing when it is not logged.
  *
  * @author Zach Shepherd shepherdz@vmware.com
  * @version 1.0
  * @since 1.0
  */
 public interface UpgradeLogger extends Logger {
-    // Intentionally blank; intended for future extension
+    /**
+     * Log a message at {@link LogLevel#TRACE}.
+     *
+     * @param message
+     *            supplies the message; invoked only if the level is enabled
+     */
+    default void trace(final Supplier<String> message) {
+        if (isTraceEnabled()) {
+            trace("{0}", message.get());
+        }
+    }
+
+    /**
+     * Log a message and an error at {@link LogLevel#TRACE}.
+     *
+     * @param error
+     *            the error to log
+     * @param message
+     *            supplies the message; invoked only if the level is enabled
+     */
+    default void trace(final Throwable error, final Supplier<String> message) {
+        if (isTraceEnabled()) {
+            trace(error, "{0}", message.get());
+        }
+    }
+
+    /**
+     * Log a message at {@link LogLevel#DEBUG}.
+     *
+     * @param message
+     *            supplies the message; invoked only if the level is enabled
+     */
+    default void debug(final Supplier<String> message) {
+        if (isDebugEnabled()) {
+            debug("{0}", message.get());
+        }
+    }
+
+    /**
+     * Log a message and an error at {@link LogLevel#DEBUG}.
+     *
+     * @param error
+     *            the error to log
+     * @param message
+     *            supplies the message; invoked only if the level is enabled
+     */
+    default void debug(final Throwable error, final Supplier<String> message) {
+        if (isDebugEnabled()) {
+            debug(error, "{0}", message.get());
+        }
+    }
+
+    /**
+     * Log a message at {@link LogLevel#INFO}.
+     *
+     * @param message
+     *            supplies the message; invoked only if the level is enabled
+     */
+    default void info(final Supplier<String> message) {
+        if (isInfoEnabled()) {
+            info("{0}", message.get());
+        }
+    }
+
+    /**
+     * Log a message and an error at {@link LogLevel#INFO}.
+     *
+     * @param error
+     *            the error to log
+     * @param message
+     *            supplies the message; invoked only if the level is enabled
+     */
+    default void info(final Throwable error, final Supplier<String> message) {
+        if (isInfoEnabled()) {
+            info(error, "{0}", message.get());
+        }
+    }
+
+    /**
+     * Log a message at {@link LogLevel#WARN}.
+     *
+     * @param message
+     *            supplies the message; invoked only if the level is enabled
+     */
+    default void warn(final Supplier<String> message) {
+        if (isWarnEnabled()) {
+            warn("{0}", message.get());
+        }
+    }
+
+    /**
+     * Log a message and an error at {@link LogLevel#WARN}.
+     *
+     * @param error
+     *            the error to log
+     * @param message
+     *            supplies the message; invoked only if the level is enabled
+     */
+    default void warn(final Throwable error, final Supplier<String> message) {
+        if (isWarnEnabled()) {
+            warn(error, "{0}", message.get());
+        }
+    }
+
+    /**
+     * Log a message at {@link LogLevel#ERROR}.
+     *
+     * @param message
+     *            supplies the message; invoked only if the level is enabled
+     */
+    default void error(final Supplier<String> message) {
+        if (isErrorEnabled()) {
+            error("{0}", message.get());
+        }
+    }
+
+    /**
+     * Log a message and an error at {@link LogLevel#ERROR}.
+     *
+     * @param error
+     *            the error to log
+     * @param message
+     *            supplies the message; invoked only if the level is enabled
+     */
+    default void error(final Throwable error, final Supplier<String> message) {
+        if (isErrorEnabled()) {
+            error(error, "{0}", message.get());
+        }
+    }
+
+    /**
+     * Log a message at the specified level.
+     *
+     * @param level
+     *            the level at which to log
+     * @param message
+     *            supplies the message; invoked only if the level is enabled
+     */
+    default void log(final LogLevel level, final Supplier<String> message) {
+        if (isLogLevelEnabled(level)) {
+            log(level, "{0}", message.get());
+        }
+    }
+
+    /**
+     * Log a message and an error at the specified level.
+     *
+     * @param level
+     *            the level at which to log
+     * @param error
+     *            the error to log
+     * @param message
+     *            supplies the message; invoked only if the level is enabled
+     */
+    default void log(final LogLevel level, final Throwable error, final Supplier<String> message) {
+        if (isLogLevelEnabled(level)) {
+            log(level, error, "{0}", message.get());
+        }
+    }
 }
@@ -22,8 +22,12 @@
 
 package com.vmware.upgrade.logging;
 
-import java.util.Map;
-import java.util.WeakHashMap;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiFunction;
 
 import com.vmware.upgrade.UpgradeContext;
 
@@ -37,7 +41,52 @@ import com.vmware.upgrade.UpgradeContext;
  * @since 1.0
  */
 public class UpgradeLoggerHelper {
-    private static Map<org.apache.log4j.Logger, UpgradeLogger> cache = new WeakHashMap<org.apache.log4j.Logger, UpgradeLogger>();
+    /**
+     * A weak reference to a {@link org.apache.log4j.Logger} which compares by the identity of its
+     * referent, for use as a key of {@link #cache}.
+     * <p>
+     * Once cleared, a key is equal only to itself.
+     */
+    private static final class LoggerKey extends WeakReference<org.apache.log4j.Logger> {
+        private final int hash;
+
+        LoggerKey(final org.apache.log4j.Logger logger, final ReferenceQueue<org.apache.log4j.Logger> queue) {
+            super(logger, queue);
+            this.hash = System.identityHashCode(logger);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof LoggerKey)) {
+                return false;
+            }
+
+            final org.apache.log4j.Logger logger = get();
+            return logger != null && logger == ((LoggerKey) o).get();
+        }
+    }
+
+    /**
+     * The {@link UpgradeLogger} created for each {@link org.apache.log4j.Logger}.
+     * <p>
+     * As each {@link UpgradeLogger} refers to its {@link org.apache.log4j.Logger}, both the keys
+     * and the values are weak; otherwise the values would prevent the keys from being cleared.
+     */
+    private static final ConcurrentMap<LoggerKey, Reference<UpgradeLogger>> cache = new ConcurrentHashMap<LoggerKey, Reference<UpgradeLogger>>();
+
+    /**
+     * The keys of {@link #cache} whose {@link org.apache.log4j.Logger} has been collected.
+     */
+    private static final ReferenceQueue<org.apache.log4j.Logger> collected = new ReferenceQueue<org.apache.log4j.Logger>();
 
     /**
      * A trivial {@link UpgradeLogger} implementation which does nothing.
@@ -152,22 +201,51 @@ public class UpgradeLoggerHelper {
     /**
      * Return a {@link UpgradeLogger} corresponding to a supplied {@link org.apache.log4j.Logger}.
      * <p>
-     * When convenient, this class may re-use a {@linkplain UpgradeLogger} instance created by a
-     * previous call to this method for the same {@linkplain org.apache.log4j.Logger}.
+     * At most one {@linkplain UpgradeLogger} exists at a time for each
+     * {@linkplain org.apache.log4j.Logger}; this method returns the existing instance, if any,
+     * without locking. This method is safe to call concurrently.
      *
      * @param delegateLogger the {@linkplain org.apache.log4j.Logger Logger} to wrap
      * @return the wrapped {@linkplain org.apache.log4j.Logger Logger}
+     * @throws IllegalArgumentException if {@code delegateLogger} is {@code null}
      */
-    public static UpgradeLogger asUpgradeLogger(org.apache.log4j.Logger delegateLogger) {
-        UpgradeLogger logger = cache.get(delegateLogger);
-        if (logger == null) {
-            logger = new UpgradeLoggerImpl(new Log4jLoggerImpl(delegateLogger));
+    public static UpgradeLogger asUpgradeLogger(final org.apache.log4j.Logger delegateLogger) {
+        if (delegateLogger == null) {
+            throw new IllegalArgumentException("delegateLogger");
+        }
+
+        final Reference<UpgradeLogger> cached = cache.get(new LoggerKey(delegateLogger, null));
+        if (cached != null) {
+            final UpgradeLogger logger = cached.get();
+            if (logger != null) {
+                return logger;
+            }
+        }
+
+        expungeCollected();
+
+        // The created logger must remain strongly reachable until it is returned
+        final UpgradeLogger[] result = new UpgradeLogger[1];
+        cache.compute(new LoggerKey(delegateLogger, collected), new BiFunction<LoggerKey, Reference<UpgradeLogger>, Reference<UpgradeLogger>>() {
+            @Override
+            public Reference<UpgradeLogger> apply(final LoggerKey key, final Reference<UpgradeLogger> existing) {
+                result[0] = (existing == null) ? null : existing.get();
+                if (result[0] != null) {
+                    return existing;
+                }
+
+                result[0] = new UpgradeLoggerImpl(new Log4jLoggerImpl(delegateLogger));
+                return new WeakReference<UpgradeLogger>(result[0]);
+            }
+        });
+
+        return result[0];
+    }
 
-            // Synchronization would be unnecessary here as the goal is to simply minimize
-            // construction cost (and not necessarily to guarantee the return of the same
-            // UpgradeLogger every time).
-            cache.put(delegateLogger, logger);
+    private static void expungeCollected() {
+        Reference<? extends org.apache.log4j.Logger> key;
+        while ((key = collected.poll()) != null) {
+            cache.remove(key);
         }
-        return logger;
     }
 }
@@ -22,8 +22,6 @@
 
 package com.vmware.upgrade.logging;
 
-import java.text.MessageFormat;
-
 /**
  * An internal {@link UpgradeLogger} implementation leveraged by {@link UpgradeLoggerHelper}.
  *
@@ -228,6 +226,9 @@ class UpgradeLoggerImpl implements UpgradeLogger {
 
     /**
      * Helper method that renders the user supplied message
+     * <p>
+     * The message is rendered as by {@link java.text.MessageFormat#format(String, Object...)},
+     * using a cached compiled form of the pattern.
      *
      * @param text
      *            the text of the message
@@ -236,6 +237,6 @@ class UpgradeLoggerImpl implements UpgradeLogger {
      * @return the fully rendered message
      */
     private String renderUserMessage(String text, Object... args) {
-        return MessageFormat.format(text, args);
+        return MessageFormats.format(text, args);
     }
 }
@@ -23,6 +23,9 @@
 /**
  * Utility classes for assisting with creation of {@link com.vmware.upgrade.logging.UpgradeLogger}
  * instances.
+ * <p>
+ * {@link com.vmware.upgrade.logging.AsyncLogger} provides loggers whose events are written on a
+ * background thread.
  *
  * @since 1.0
  */
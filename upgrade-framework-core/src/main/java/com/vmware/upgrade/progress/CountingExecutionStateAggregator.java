@@ -0,0 +1,51 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.progress;
+
+/**
+ * An {@link ExecutionStateAggregator} which can also calculate the state of a parent task from the
+ * number of child tasks in each state.
+ * <p>
+ * A parent which maintains these counts incrementally as its children report can aggregate their
+ * states without examining, or allocating a collection of, the state of every child.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public interface CountingExecutionStateAggregator extends ExecutionStateAggregator {
+    /**
+     * Calculates the state of a parent task from the number of child tasks in each state.
+     * <p>
+     * The result must be the same as that of {@link #aggregate(java.util.Collection)} for a
+     * collection containing each state the specified number of times.
+     *
+     * @param stateCounts the number of child tasks in each state, indexed by
+     *          {@link ExecutionState#ordinal()}
+     * @return an aggregate state
+     * @throws IllegalArgumentException if {@code stateCounts} is {@code null}, does not have an
+     *          element for each {@link ExecutionState}, contains a negative count or counts no
+     *          child tasks
+     */
+    public ExecutionState aggregate(int[] stateCounts);
+}
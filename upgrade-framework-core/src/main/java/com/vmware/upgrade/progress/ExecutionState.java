@@ -22,12 +22,6 @@
 
 package com.vmware.upgrade.progress;
 
-import java.util.Collections;
-import java.util.EnumSet;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Set;
-
 /**
  * Represents the current state of a {@link ProgressReporter}
  * <p>
@@ -37,9 +31,9 @@ import java.util.Set;
  *                          /
  *                         /
  *                        /
- *                       /
- *                      /
- *                     /
+ *                       /     TIMED_OUT
+ *                      /     /
+ *                     /     /
  * PENDING ---&gt; RUNNING ---&gt; COMPLETED
  *                 A   \
  *                 |    \
@@ -79,18 +73,30 @@ public enum ExecutionState {
     /**
      * The {@link ProgressReporter} is currently paused.
      */
-    SUSPENDED;
+    SUSPENDED,
+    /**
+     * The {@link ProgressReporter} has completed execution in an error state because it did not
+     * complete before its deadline.
+     */
+    TIMED_OUT;
 
-    private static final Map<ExecutionState, Set<ExecutionState>> validTransitions;
+    /**
+     * The valid target states of each state, indexed by {@link #ordinal()}, as bitmasks in which
+     * bit {@code n} is set iff the state with ordinal {@code n} is a valid target.
+     */
+    private static final int[] validTransitions = new int[values().length];
     static {
-        Map<ExecutionState, Set<ExecutionState>> transitions = new HashMap<ExecutionState, Set<ExecutionState>>();
-        transitions.put(CANCELLED, Collections.<ExecutionState>emptySet());
-        transitions.put(COMPLETED, Collections.<ExecutionState>emptySet());
-        transitions.put(FAILED, Collections.<ExecutionState>emptySet());
-        transitions.put(PENDING, EnumSet.of(RUNNING));
-        transitions.put(SUSPENDED, EnumSet.of(CANCELLED, RUNNING));
-        transitions.put(RUNNING, EnumSet.of(CANCELLED, COMPLETED, FAILED, SUSPENDED));
-        validTransitions = Collections.unmodifiableMap(transitions);
+        validTransitions[PENDING.ordinal()] = maskOf(RUNNING);
+        validTransitions[SUSPENDED.ordinal()] = maskOf(CANCELLED, RUNNING);
+        validTransitions[RUNNING.ordinal()] = maskOf(CANCELLED, COMPLETED, FAILED, SUSPENDED, TIMED_OUT);
+    }
+
+    private static int maskOf(final ExecutionState... states) {
+        int mask = 0;
+        for (final ExecutionState state : states) {
+            mask |= 1 << state.ordinal();
+        }
+        return mask;
     }
 
     /**
@@ -100,12 +106,7 @@ public enum ExecutionState {
      * @return {@code true} iff the state transition is valid.
      */
     public boolean canTransitionTo(final ExecutionState targetState) {
-        for (ExecutionState validState : validTransitions.get(this)) {
-            if (targetState.equals(validState)) {
-                return true;
-            }
-        }
-        return false;
+        return (validTransitions[ordinal()] & (1 << targetState.ordinal())) != 0;
     }
 
     /**
@@ -114,7 +115,6 @@ public enum ExecutionState {
      * @return {@code true} if there are no valid exit transitions for this state.
      */
     public boolean isTerminal() {
-        return validTransitions.get(this).isEmpty();
+        return validTransitions[ordinal()] == 0;
     }
 }
-
@@ -0,0 +1,45 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.progress;
+
+/**
+ * Implemented by {@link ProgressReporter}s, and by other objects from which they are created,
+ * whose share of the progress of an aggregate should be proportional to the amount of work they
+ * represent.
+ * <p>
+ * Weights are relative: a child with twice the weight of its sibling contributes twice as much to
+ * the progress of their parent. A weight of zero denotes negligible work. A
+ * {@link ProgressReporter} which is not {@link Weighted} has a weight of one.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public interface Weighted {
+    /**
+     * The relative amount of work represented.
+     *
+     * @return a non-negative weight
+     */
+    long getWeight();
+}
@@ -22,8 +22,7 @@
 
 package com.vmware.upgrade.progress.impl;
 
-import java.util.Set;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicReference;
 
 import com.vmware.upgrade.progress.ExecutionState;
@@ -32,21 +31,32 @@ import com.vmware.upgrade.progress.ProgressReporter;
 
 /**
  * An abstract implementation of a {@link ProgressReporter} which handles management of listeners
+ * <p>
+ * Reporting progress allocates nothing: the reports are the shared instances obtained from
+ * {@link ImmutableProgressReport#of(ExecutionState, int)} and the listeners are held in an array
+ * which is replaced, rather than modified, when a listener is added or removed.
  *
  * @author Zach Shepherd shepherdz@vmware.com
  * @version 1.0
  * @since 1.0
  */
 public abstract class AbstractProgressReporter implements ProgressReporter {
-    private final Set<ProgressListener> progressListeners;
+    private static final ProgressListener[] NO_LISTENERS = new ProgressListener[0];
+
+    /**
+     * Guards replacement of {@link #progressListeners}; distinct from {@code this}, on which
+     * subclasses synchronize while reporting.
+     */
+    private final Object listenersLock = new Object();
+    private volatile ProgressListener[] progressListeners;
     private final AtomicReference<ImmutableProgressReport> report =
-        new AtomicReference<ImmutableProgressReport>(new ImmutableProgressReport(ExecutionState.PENDING, 0 /*progress*/));
+        new AtomicReference<ImmutableProgressReport>(ImmutableProgressReport.of(ExecutionState.PENDING, 0 /*progress*/));
 
     /**
      * Creates an instance with no listeners, zero progress and {@link ExecutionState#PENDING} state.
      */
     public AbstractProgressReporter() {
-        this.progressListeners = new CopyOnWriteArraySet<ProgressListener>();
+        this.progressListeners = NO_LISTENERS;
     }
 
     @Override
@@ -55,7 +65,17 @@ public abstract class AbstractProgressReporter implements ProgressReporter {
             throw new NullPointerException("progressListener");
         }
 
-        return progressListeners.add(progressListener);
+        synchronized (listenersLock) {
+            final ProgressListener[] listeners = progressListeners;
+            if (indexOf(listeners, progressListener) >= 0) {
+                return false;
+            }
+
+            final ProgressListener[] updated = Arrays.copyOf(listeners, listeners.length + 1);
+            updated[listeners.length] = progressListener;
+            progressListeners = updated;
+            return true;
+        }
     }
 
     @Override
@@ -64,7 +84,28 @@ public abstract class AbstractProgressReporter implements ProgressReporter {
             throw new NullPointerException("progressListener");
         }
 
-        return progressListeners.remove(progressListener);
+        synchronized (listenersLock) {
+            final ProgressListener[] listeners = progressListeners;
+            final int index = indexOf(listeners, progressListener);
+            if (index < 0) {
+                return false;
+            }
+
+            final ProgressListener[] updated = new ProgressListener[listeners.length - 1];
+            System.arraycopy(listeners, 0, updated, 0, index);
+            System.arraycopy(listeners, index + 1, updated, index, updated.length - index);
+            progressListeners = (updated.length == 0) ? NO_LISTENERS : updated;
+            return true;
+        }
+    }
+
+    private static int indexOf(final ProgressListener[] listeners, final ProgressListener progressListener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i].equals(progressListener)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     @Override
@@ -151,7 +192,7 @@ public abstract class AbstractProgressReporter implements ProgressReporter {
     }
 
     private void storeAndReportUpdates(final ExecutionState ExecutionState, final int progress) {
-        report.set(new ImmutableProgressReport(ExecutionState, progress));
+        report.set(ImmutableProgressReport.of(ExecutionState, progress));
         reportProgress();
     }
 
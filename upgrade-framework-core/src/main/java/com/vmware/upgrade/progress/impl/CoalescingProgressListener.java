@@ -0,0 +1,193 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.progress.impl;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.vmware.upgrade.logging.UpgradeLogger;
+import com.vmware.upgrade.logging.UpgradeLoggerHelper;
+import com.vmware.upgrade.progress.ProgressReport;
+import com.vmware.upgrade.progress.ProgressReporter;
+import com.vmware.upgrade.progress.ProgressReporter.ProgressListener;
+
+/**
+ * A {@link ProgressListener} which delivers the reports it receives to another
+ * {@link ProgressListener} asynchronously, at most once per interval.
+ * <p>
+ * Reports arriving within an interval are coalesced: only the latest is delivered. The thread
+ * reporting progress never blocks and never executes the delegate, so a slow delegate (e.g. one
+ * updating a user interface or writing to a log) cannot delay the {@link ProgressReporter}s it
+ * observes. The latest report received is always delivered eventually and the delegate is never
+ * called concurrently. An exception thrown by the delegate is logged and does not prevent
+ * subsequent deliveries.
+ * <p>
+ * To stop receiving reports, the instance registered with the {@link ProgressReporter} must be
+ * removed rather than the delegate.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public final class CoalescingProgressListener implements ProgressListener {
+    private static final ScheduledExecutorService DISPATCHER = createDispatcher();
+
+    private static final UpgradeLogger LOGGER = UpgradeLoggerHelper.asUpgradeLogger(org.apache.log4j.Logger.getLogger(CoalescingProgressListener.class));
+
+    private static ScheduledExecutorService createDispatcher() {
+        final ScheduledThreadPoolExecutor dispatcher = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "upgrade-progress");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        dispatcher.setRemoveOnCancelPolicy(true);
+        return dispatcher;
+    }
+
+    private final ProgressListener delegate;
+
+    private final long intervalNanos;
+
+    private final ScheduledExecutorService dispatcher;
+
+    /**
+     * The latest report which has not yet been delivered, if any.
+     */
+    private final AtomicReference<ProgressReport> pending = new AtomicReference<ProgressReport>();
+
+    /**
+     * Whether a delivery has been scheduled or is in progress.
+     */
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final Runnable deliver = new Runnable() {
+        @Override
+        public void run() {
+            deliver();
+        }
+    };
+
+    /**
+     * The time of the last delivery, as reported by {@link System#nanoTime()}.
+     */
+    private volatile long lastDelivery;
+
+    /**
+     * Constructs a listener which delivers reports to {@code delegate} on a shared daemon thread.
+     *
+     * @param delegate
+     *          the {@link ProgressListener} to which reports are delivered
+     * @param minimumInterval
+     *          the minimum time between successive deliveries; must not be negative
+     * @param unit
+     *          the unit of {@code minimumInterval}
+     * @throws IllegalArgumentException
+     *          if {@code delegate} or {@code unit} is {@code null} or {@code minimumInterval} is
+     *          negative
+     */
+    public CoalescingProgressListener(final ProgressListener delegate, final long minimumInterval, final TimeUnit unit) {
+        this(delegate, minimumInterval, unit, DISPATCHER);
+    }
+
+    /**
+     * Constructs a listener which delivers reports to {@code delegate} using the supplied
+     * {@link ScheduledExecutorService}.
+     *
+     * @param delegate
+     *          the {@link ProgressListener} to which reports are delivered
+     * @param minimumInterval
+     *          the minimum time between successive deliveries; must not be negative
+     * @param unit
+     *          the unit of {@code minimumInterval}
+     * @param dispatcher
+     *          the {@link ScheduledExecutorService} on which reports are delivered
+     * @throws IllegalArgumentException
+     *          if {@code delegate}, {@code unit} or {@code dispatcher} is {@code null} or
+     *          {@code minimumInterval} is negative
+     */
+    public CoalescingProgressListener(final ProgressListener delegate, final long minimumInterval, final TimeUnit unit, final ScheduledExecutorService dispatcher) {
+        if (delegate == null) {
+            throw new IllegalArgumentException("delegate");
+        }
+        if (minimumInterval < 0) {
+            throw new IllegalArgumentException("minimumInterval");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("unit");
+        }
+        if (dispatcher == null) {
+            throw new IllegalArgumentException("dispatcher");
+        }
+
+        this.delegate = delegate;
+        this.intervalNanos = unit.toNanos(minimumInterval);
+        this.dispatcher = dispatcher;
+        this.lastDelivery = System.nanoTime() - intervalNanos;
+    }
+
+    @Override
+    public void reportProgress(final ProgressReport progress) {
+        pending.set(progress);
+        schedule();
+    }
+
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        final long delay = lastDelivery + intervalNanos - System.nanoTime();
+        dispatcher.schedule(deliver, Math.max(delay, 0), TimeUnit.NANOSECONDS);
+    }
+
+    private void deliver() {
+        try {
+            final ProgressReport progress = pending.getAndSet(null);
+            if (progress != null) {
+                lastDelivery = System.nanoTime();
+                delegate.reportProgress(progress);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn(e, "Delivering progress to {0} failed", delegate);
+        } finally {
+            scheduled.set(false);
+        }
+
+        // A report may have arrived while the delegate was being called
+        if (pending.get() != null) {
+            schedule();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Coalescing " + delegate;
+    }
+}
@@ -23,9 +23,8 @@
 package com.vmware.upgrade.progress.impl;
 
 import java.util.Collection;
-import java.util.LinkedHashSet;
-import java.util.Set;
 
+import com.vmware.upgrade.progress.CountingExecutionStateAggregator;
 import com.vmware.upgrade.progress.ExecutionState;
 import com.vmware.upgrade.progress.ExecutionStateAggregator;
 
@@ -37,7 +36,9 @@ import com.vmware.upgrade.progress.ExecutionStateAggregator;
  * @version 1.0
  * @since 1.0
  */
-public final class DefaultExecutionStateAggregator implements ExecutionStateAggregator {
+public final class DefaultExecutionStateAggregator implements CountingExecutionStateAggregator {
+    private static final ExecutionState[] STATES = ExecutionState.values();
+
     /**
      * Calculates the state of a parent task from a collection of states of child tasks.
      * <p>
@@ -49,7 +50,9 @@ public final class DefaultExecutionStateAggregator implements ExecutionStateAggr
      * <li> suspended iff at least one child is suspended
      *          and each other child is either suspended or canceled or failed or completed;
      * <li> canceled iff at least one child is canceled
-     *          and each other child is either canceled or failed or completed;
+     *          and each other child is either canceled or timed out or failed or completed;
+     * <li> timed out iff at least one child has timed out
+     *          and each other child is either timed out or failed or completed;
      * <li> failed iff at least one child has failed
      *          and each other child is either failed or completed;
      * <li> completed iff all children are completed;
@@ -77,35 +80,81 @@ public final class DefaultExecutionStateAggregator implements ExecutionStateAggr
             throw new IllegalArgumentException("executionStates");
         }
 
-        final Set<ExecutionState> uniqueStates = new LinkedHashSet<ExecutionState>(executionStates);
+        final int[] stateCounts = new int[STATES.length];
+        for (final ExecutionState state : executionStates) {
+            stateCounts[state.ordinal()]++;
+        }
 
+        return aggregate(stateCounts, executionStates.size());
+    }
+
+    /**
+     * Calculates the state of a parent task from the number of child tasks in each state, as
+     * {@link #aggregate(Collection)} does from their states.
+     *
+     * @param stateCounts the number of child tasks in each state, indexed by
+     *          {@link ExecutionState#ordinal()}
+     * @return an aggregate state
+     * @throws IllegalArgumentException if {@code stateCounts} is {@code null}, does not have an
+     *          element for each {@link ExecutionState}, contains a negative count or counts no
+     *          child tasks
+     */
+    @Override
+    public ExecutionState aggregate(final int[] stateCounts) {
+        if (stateCounts == null || stateCounts.length != STATES.length) {
+            throw new IllegalArgumentException("stateCounts");
+        }
+
+        int total = 0;
+        for (final int count : stateCounts) {
+            if (count < 0) {
+                throw new IllegalArgumentException("stateCounts");
+            }
+            total += count;
+        }
+
+        if (total == 0) {
+            throw new IllegalArgumentException("stateCounts");
+        }
+
+        return aggregate(stateCounts, total);
+    }
+
+    private static ExecutionState aggregate(final int[] stateCounts, final int total) {
         // If all states are the same
-        if (uniqueStates.size() == 1) {
-            return uniqueStates.iterator().next();
+        for (final ExecutionState state : STATES) {
+            if (stateCounts[state.ordinal()] == total) {
+                return state;
+            }
         }
 
         // If anything is still running or pending (but not everything is pending)
-        if (uniqueStates.contains(ExecutionState.RUNNING) || uniqueStates.contains(ExecutionState.PENDING)) {
+        if (stateCounts[ExecutionState.RUNNING.ordinal()] > 0 || stateCounts[ExecutionState.PENDING.ordinal()] > 0) {
             return ExecutionState.RUNNING;
         }
 
         // If everything not in a completion state is suspended (and there's at least one thing suspended)
-        if (uniqueStates.contains(ExecutionState.SUSPENDED)) {
+        if (stateCounts[ExecutionState.SUSPENDED.ordinal()] > 0) {
             return ExecutionState.SUSPENDED;
         }
 
         // If everything not complete has been canceled
-        if (uniqueStates.contains(ExecutionState.CANCELLED)) {
+        if (stateCounts[ExecutionState.CANCELLED.ordinal()] > 0) {
             return ExecutionState.CANCELLED;
         }
 
+        // If everything not complete or failed has timed out
+        if (stateCounts[ExecutionState.TIMED_OUT.ordinal()] > 0) {
+            return ExecutionState.TIMED_OUT;
+        }
+
         // If anything has failed
-        if (uniqueStates.contains(ExecutionState.FAILED)) {
+        if (stateCounts[ExecutionState.FAILED.ordinal()] > 0) {
             return ExecutionState.FAILED;
         }
 
         // If everything has completed
-        if (uniqueStates.contains(ExecutionState.COMPLETED)) {
+        if (stateCounts[ExecutionState.COMPLETED.ordinal()] > 0) {
             return ExecutionState.COMPLETED;
         }
 
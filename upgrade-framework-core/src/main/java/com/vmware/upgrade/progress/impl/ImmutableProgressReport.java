@@ -27,12 +27,26 @@ import com.vmware.upgrade.progress.ProgressReport;
 
 /**
  * An immutable {@link ProgressReport}.
+ * <p>
+ * As there are few distinct reports, an instance of each is created in advance and can be obtained
+ * from {@link #of(ExecutionState, int)} without allocating.
  *
  * @author Zach Shepherd shepherdz@vmware.com
  * @version 1.0
  * @since 1.0
  */
 public final class ImmutableProgressReport implements ProgressReport {
+    private static final ImmutableProgressReport[][] REPORTS;
+    static {
+        final ExecutionState[] states = ExecutionState.values();
+        REPORTS = new ImmutableProgressReport[states.length][101];
+        for (final ExecutionState state : states) {
+            for (int progress = 0; progress <= 100; progress++) {
+                REPORTS[state.ordinal()][progress] = new ImmutableProgressReport(state, progress);
+            }
+        }
+    }
+
     private final ExecutionState state;
     private final int progress;
 
@@ -67,6 +81,26 @@ public final class ImmutableProgressReport implements ProgressReport {
         this(progressReport.getState(), progressReport.getProgress());
     }
 
+    /**
+     * Obtains the shared {@link ImmutableProgressReport} with the specified state and progress.
+     *
+     * @param state see {@link ProgressReport#getState()}
+     * @param progress see {@link ProgressReport#getProgress()}
+     * @return an {@link ImmutableProgressReport}
+     * @throws IllegalArgumentException if progress is not between 0..100 or if state is null
+     */
+    public static ImmutableProgressReport of(final ExecutionState state, final int progress) {
+        if (state == null) {
+            throw new IllegalArgumentException("state");
+        }
+
+        if (progress < 0 || progress > 100) {
+            throw new IllegalArgumentException("progress");
+        }
+
+        return REPORTS[state.ordinal()][progress];
+    }
+
     @Override
     public ExecutionState getState() {
         return state;
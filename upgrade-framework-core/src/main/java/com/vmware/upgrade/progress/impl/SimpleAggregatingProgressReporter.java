@@ -26,21 +26,26 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
 
+import com.vmware.upgrade.progress.CountingExecutionStateAggregator;
 import com.vmware.upgrade.progress.ExecutionState;
 import com.vmware.upgrade.progress.ExecutionStateAggregator;
 import com.vmware.upgrade.progress.ProgressReport;
 import com.vmware.upgrade.progress.ProgressReporter;
-
-import org.apache.commons.math.stat.descriptive.SummaryStatistics;
+import com.vmware.upgrade.progress.Weighted;
 
 /**
  * An implementation of {@link ProgressReporter} which aggregates progress and state of child tasks.
  * <p>
- * Progress is aggregated so that each child task contributes equally to the overall progress of the parent task.
+ * Progress is aggregated so that each child task contributes to the overall progress of the parent task in
+ * proportion to its {@link Weighted weight}. If every child has a weight of zero, each contributes equally.
  * <p>
  * State is aggregated using {@link ExecutionStateAggregator#aggregate(java.util.Collection)}.
+ * <p>
+ * The weighted sum of the progress of the children and the number of children in each state are updated
+ * incrementally as each child reports, so the cost of handling a report does not depend on the
+ * number of children, and handling it allocates nothing, when the {@link ExecutionStateAggregator}
+ * is a {@link CountingExecutionStateAggregator} such as the {@link DefaultExecutionStateAggregator}.
  *
  * @see ExecutionStateAggregator#aggregate(java.util.Collection)
  *
@@ -48,24 +53,29 @@ import org.apache.commons.math.stat.descriptive.SummaryStatistics;
  * @version 1.0
  * @since 1.0
  */
-public class SimpleAggregatingProgressReporter extends AbstractProgressReporter {
+public class SimpleAggregatingProgressReporter extends AbstractProgressReporter implements Weighted {
 
     /**
      * A listener which tracks the last reported progress and
-     * notifies its parent when new progress arrives by invoking parent's {@code recalculate} method.
+     * notifies its parent when new progress arrives by invoking parent's {@code update} method.
      */
     private class PropagatingListener implements ProgressReporter.ProgressListener {
-        private final AtomicReference<ProgressReport> latestReport =
-            new AtomicReference<ProgressReport>(new ImmutableProgressReport(ExecutionState.PENDING, 0));
+        /**
+         * The latest progress report received from {@code reporter}; guarded by the enclosing
+         * {@link SimpleAggregatingProgressReporter}.
+         */
+        private ProgressReport latestReport = INITIAL_REPORT;
 
         private final ProgressReporter reporter;
 
+        private final long weight;
+
         /**
          * Constructor. Initializes {@code reporter} with specified instance of {@link ProgressReporter}.
          *
          * @param reporter
          *              an instance of {@link ProgressReporter} to monitor; must be non-null
-         * @throws IllegalArgumentException if {@code reporter} is {@code null}
+         * @throws IllegalArgumentException if {@code reporter} is {@code null} or has a negative weight
          */
         public PropagatingListener(final ProgressReporter reporter) {
             if (reporter == null) {
@@ -73,6 +83,11 @@ public class SimpleAggregatingProgressReporter extends AbstractProgressReporter
             }
 
             this.reporter = reporter;
+            this.weight = (reporter instanceof Weighted) ? ((Weighted) reporter).getWeight() : 1;
+
+            if (weight < 0) {
+                throw new IllegalArgumentException("reporter");
+            }
         }
 
         /**
@@ -96,33 +111,38 @@ public class SimpleAggregatingProgressReporter extends AbstractProgressReporter
 
         @Override
         public void reportProgress(final ProgressReport progress) {
-            latestReport.set(progress);
-            recalculate();
-        }
-
-        /**
-         * Returns the latest progress report received from {@code reporter}.
-         * <p>
-         * This method should be called after {@code start} method has been called and
-         * before {@code stop} method is called. If called before {@code start}, returns
-         * a default progress report with zero progress and {@link ExecutionState#PENDING} state.
-         * If called after {@code stop}, return the latest progress report received before
-         * stopped listening to progress reports from {@code reporter}.
-         *
-         * @return
-         *      the latest progress report received from {@code} reporter
-         */
-        public ProgressReport getCurrentProgressReport() {
-            return latestReport.get();
+            update(this, progress);
         }
     }
 
+    private static final ProgressReport INITIAL_REPORT = ImmutableProgressReport.of(ExecutionState.PENDING, 0);
+
     private final List<PropagatingListener> childListeners;
 
     private final ExecutionStateAggregator stateAggregator;
 
     private final AtomicBoolean terminated;
 
+    /**
+     * The number of children in each state, indexed by {@link ExecutionState#ordinal()}.
+     */
+    private final int[] stateCounts = new int[ExecutionState.values().length];
+
+    /**
+     * The sum of the latest progress reported by each child.
+     */
+    private long progressSum;
+
+    /**
+     * The sum of the latest progress reported by each child, multiplied by its weight.
+     */
+    private long weightedProgressSum;
+
+    /**
+     * The sum of the weights of the children.
+     */
+    private long totalWeight;
+
     /**
      * Constructs a reporter which initially has no children. This reporter will
      * use {@link DefaultExecutionStateAggregator} to aggregate child task states.
@@ -159,7 +179,7 @@ public class SimpleAggregatingProgressReporter extends AbstractProgressReporter
      * @param children
      *          a non-empty collection of child progress reporters
      * @throws IllegalArgumentException if {@code children} is {@code null} or empty
-     *                  or contains a {@code null} member
+     *                  or contains a {@code null} member or a member with a negative weight
      */
     public final void setChildren(final Collection<? extends ProgressReporter> children) {
         if (children == null) {
@@ -174,9 +194,13 @@ public class SimpleAggregatingProgressReporter extends AbstractProgressReporter
             throw new IllegalArgumentException("children");
         }
 
-        for (final ProgressReporter child : children) {
-            final PropagatingListener childListener = new PropagatingListener(child);
-            childListeners.add(childListener);
+        synchronized (this) {
+            for (final ProgressReporter child : children) {
+                final PropagatingListener childListener = new PropagatingListener(child);
+                childListeners.add(childListener);
+                stateCounts[childListener.latestReport.getState().ordinal()]++;
+                totalWeight += childListener.weight;
+            }
         }
 
         startChildListeners();
@@ -184,19 +208,79 @@ public class SimpleAggregatingProgressReporter extends AbstractProgressReporter
 
     /**
      * Stops aggregating state and progress of child tasks and sets aggregated state to FAILED.
+     * <p>
+     * If no child task has begun execution, the aggregated state first transitions to RUNNING, as
+     * {@link ExecutionState#PENDING} cannot transition directly to FAILED.
      */
     public synchronized void terminateWithFailure() {
         if (!terminated.compareAndSet(false, true)) {
             return;
         }
 
+        if (getState() == ExecutionState.PENDING) {
+            updateState(ExecutionState.RUNNING);
+        }
         updateState(ExecutionState.FAILED);
 
         // break circular references between this object and its children
         stopChildListeners();
     }
 
-    private synchronized void recalculate() {
+    /**
+     * Stops aggregating state and progress of child tasks and sets aggregated state to CANCELLED.
+     * <p>
+     * If no child task has begun execution, the aggregated state first transitions to RUNNING, as
+     * {@link ExecutionState#PENDING} cannot transition directly to CANCELLED. If the aggregated
+     * state is already terminal, it is left unchanged.
+     */
+    public synchronized void terminateWithCancellation() {
+        terminateWith(ExecutionState.CANCELLED);
+    }
+
+    /**
+     * Stops aggregating state and progress of child tasks and sets aggregated state to TIMED_OUT.
+     * <p>
+     * If no child task has begun execution, the aggregated state first transitions to RUNNING, as
+     * {@link ExecutionState#PENDING} cannot transition directly to TIMED_OUT. If the aggregated
+     * state is already terminal, it is left unchanged.
+     */
+    public synchronized void terminateWithTimeout() {
+        terminateWith(ExecutionState.TIMED_OUT);
+    }
+
+    private void terminateWith(final ExecutionState state) {
+        if (!terminated.compareAndSet(false, true)) {
+            return;
+        }
+
+        final ExecutionState currentState = getState();
+        if (!currentState.isTerminal()) {
+            if (currentState == ExecutionState.PENDING) {
+                updateState(ExecutionState.RUNNING);
+            }
+            updateState(state);
+        }
+
+        // break circular references between this object and its children
+        stopChildListeners();
+    }
+
+    /**
+     * Replace the latest report of a child, adjusting the running totals, and recalculate.
+     */
+    private synchronized void update(final PropagatingListener listener, final ProgressReport progress) {
+        final ProgressReport previous = listener.latestReport;
+        listener.latestReport = progress;
+
+        stateCounts[previous.getState().ordinal()]--;
+        stateCounts[progress.getState().ordinal()]++;
+        progressSum += progress.getProgress() - previous.getProgress();
+        weightedProgressSum += listener.weight * (progress.getProgress() - previous.getProgress());
+
+        recalculate();
+    }
+
+    private void recalculate() {
         if (terminated.get()) {
             return;
         }
@@ -229,21 +313,33 @@ public class SimpleAggregatingProgressReporter extends AbstractProgressReporter
         }
     }
 
+    /**
+     * The sum of the weights of the children.
+     *
+     * @return the total weight of the children, or zero if there are none
+     */
+    @Override
+    public synchronized long getWeight() {
+        return totalWeight;
+    }
+
     private int calculateProgress() {
-        final SummaryStatistics childProgress = new SummaryStatistics();
-        for (final PropagatingListener listener : childListeners) {
-            childProgress.addValue(listener.getCurrentProgressReport().getProgress());
+        if (totalWeight == 0) {
+            return (int) Math.round((double) progressSum / childListeners.size());
         }
 
-        final int roundedProgress = (int)Math.round(childProgress.getMean());
-        return roundedProgress;
+        return (int) Math.round((double) weightedProgressSum / totalWeight);
     }
 
     private ExecutionState calculateState() {
-        final List<ExecutionState> childStates = new ArrayList<ExecutionState>();
+        if (stateAggregator instanceof CountingExecutionStateAggregator) {
+            return ((CountingExecutionStateAggregator) stateAggregator).aggregate(stateCounts);
+        }
+
+        final List<ExecutionState> childStates = new ArrayList<ExecutionState>(childListeners.size());
 
         for (final PropagatingListener listener : childListeners) {
-            childStates.add(listener.getCurrentProgressReport().getState());
+            childStates.add(listener.latestReport.getState());
         }
 
         return stateAggregator.aggregate(childStates);
@@ -22,21 +22,17 @@
 
 package com.vmware.upgrade.sequencing;
 
-import java.io.IOException;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
-import com.fasterxml.jackson.core.JsonFactory;
-import com.fasterxml.jackson.core.JsonParseException;
-import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.core.JsonParser.Feature;
-import com.fasterxml.jackson.core.JsonToken;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.vmware.upgrade.UpgradeDefinition;
 
 import org.apache.commons.lang3.StringUtils;
@@ -64,6 +60,11 @@ import org.apache.commons.lang3.StringUtils;
  * Note: While an upgrade is in progress, the upgrade code is expected to set
  * a transition version for which {@link #isTransition()} is true.  Internally
  * this is a {@code Version} whose qualifier contains the string "transition".
+ * <p>
+ * Parsed {@link Version}s are interned: {@link #lookup(String)} returns the same instance for
+ * equal strings, and versions constructed from a string share the parsed form of any equal
+ * string parsed before. {@link Version}s are never modified once constructed, so sharing is
+ * unobservable other than through identity.
  *
  * @author Ryan Lewis ryanlewis@vmware.com
  * @version 1.0
@@ -75,7 +76,20 @@ public class Version implements Comparable<Version> {
      * any upgrade definitions from it have been executed.
      */
     private static final String INITIAL_VALUE = "0.0.0";
-    public static final Version INITIAL = lookup(INITIAL_VALUE);
+
+    /**
+     * The maximum number of interned versions retained; a manifest uses a limited set of distinct
+     * version strings, so the cache is simply emptied if this is exceeded.
+     */
+    static final int MAX_INTERNED = 8192;
+
+    private static final ConcurrentMap<String, Version> interned = new ConcurrentHashMap<String, Version>();
+
+    public static final Version INITIAL = new Version(VersionComponent.INITIAL);
+
+    static {
+        interned.put(INITIAL_VALUE, INITIAL);
+    }
 
     private final Component<?> version;
 
@@ -85,6 +99,8 @@ public class Version implements Comparable<Version> {
      * <p>
      * A schema version consists of one or more component versions which can linked and/or nested
      * within each other allowing for as much customization/complexity as necessary.
+     * <p>
+     * Components are immutable, so may be freely shared between {@link Version}s and threads.
      */
     protected interface Component<T> extends Comparable<Component<?>> {
         /**
@@ -168,6 +184,10 @@ public class Version implements Comparable<Version> {
 
     /**
      * Factory used to create a new {@link Component} based on a JSON string.
+     * <p>
+     * Besides JSON, a version may be a bare version string such as {@code 1.0.0}, or a pair of
+     * bare version strings separated by a comma such as {@code 1.0.0,2.0.0}, which describes a
+     * list. Keys of JSON objects need not be quoted.
      *
      * @see #parse(String)
      */
@@ -177,52 +197,372 @@ public class Version implements Comparable<Version> {
          *
          * @param version a JSON version
          * @return a new {@link Component}
-         * @throws JsonParseException if the version can not be parsed
-         * @throws IOException
+         * @throws IllegalArgumentException if the version can not be parsed
          */
-        public static Component<?> parse(String version) throws JsonParseException, IOException {
+        public static Component<?> parse(String version) {
             if (version.isEmpty()) {
                 return VersionComponent.parse(version);
             }
 
-            if (!version.contains(",") && !(version.startsWith("\"") || version.startsWith("[") || version.startsWith("{"))) {
-                version = "\"" + version + "\"";;
-            } else if (version.lastIndexOf(",") == version.indexOf(",") && version.indexOf(",") != -1 && !(version.startsWith("[") || version.startsWith("{"))) {
-                String[] v = version.split(",");
-                version = "[\"" + v[0] + "\"," + "\"" + v[1] + "\" ]";
+            final char first = version.charAt(0);
+            final int comma = version.indexOf(',');
+
+            if (comma == -1 && first != '"' && first != '[' && first != '{') {
+                return VersionComponent.parse(version);
+            } else if (comma != -1 && comma == version.lastIndexOf(',') && first != '[' && first != '{') {
+                return new ListComponent(
+                        VersionComponent.parse(version.substring(0, comma)),
+                        VersionComponent.parse(version.substring(comma + 1)));
             } else {
-                // Accept version as is
+                return new Parser(version).parse();
+            }
+        }
+    }
+
+    /**
+     * A single-pass recursive-descent parser for the JSON form of a version, which builds the
+     * {@link Component}s directly as it reads the string.
+     * <p>
+     * Strings and numbers nested within lists and maps are parsed as {@link VersionComponent}s;
+     * a number is first normalised as a JSON number value would be, so {@code 1.50} is read as
+     * {@code 1.5}.
+     */
+    private static final class Parser {
+        private final String text;
+
+        private int position;
+
+        Parser(final String text) {
+            this.text = text;
+        }
+
+        /**
+         * Parse the whole of the text as a top-level version.
+         */
+        Component<?> parse() {
+            skipWhitespace();
+
+            final Component<?> component;
+            final char c = peek();
+            if (c == '[') {
+                component = parseList();
+            } else if (c == '{') {
+                component = parseMap();
+            } else if (c == '"') {
+                component = VersionComponent.parse(parseString());
+            } else if (isNumberStart(c)) {
+                parseNumber();
+                component = VersionComponent.parse(text);
+            } else {
+                throw error("Unsupported version JSON");
+            }
+
+            skipWhitespace();
+            if (position != text.length()) {
+                throw error("Unexpected content after version");
             }
 
-            final JsonFactory jsonFactory = new JsonFactory(new ObjectMapper());
-            final JsonParser jp = jsonFactory.createParser(version);
-            jp.configure(Feature.ALLOW_UNQUOTED_FIELD_NAMES, true);
+            return component;
+        }
+
+        private Component<?> parseValue() {
+            skipWhitespace();
+
+            final char c = peek();
+            if (c == '[') {
+                return parseList();
+            } else if (c == '{') {
+                return parseMap();
+            } else if (c == '"') {
+                return VersionComponent.parse(parseString());
+            } else if (isNumberStart(c)) {
+                return VersionComponent.parse(parseNumber());
+            }
+
+            throw error("Unsupported version JSON");
+        }
 
-            final JsonToken token = jp.nextToken();
+        private ListComponent parseList() {
+            expect('[');
 
-            final JsonNode node = jp.readValueAsTree();
+            final List<Component<?>> versionList = new ArrayList<Component<?>>();
+            skipWhitespace();
+            if (peek() == ']') {
+                position++;
+                return new ListComponent(versionList);
+            }
 
-            switch(token) {
-                case VALUE_NUMBER_INT:
-                case VALUE_NUMBER_FLOAT:
-                    return VersionComponent.parse(version);
-                case VALUE_STRING:
-                    return VersionComponent.parse(node.asText());
-                case START_OBJECT:
-                    return MapComponent.parse(jsonFactory, node.toString());
-                case START_ARRAY:
-                    return ListComponent.parse(jsonFactory, node.toString());
-                default:
-                    throw new IllegalArgumentException("Unsupported version JSON");
+            while (true) {
+                versionList.add(parseValue());
+                skipWhitespace();
+                if (peek() == ']') {
+                    position++;
+                    return new ListComponent(versionList);
+                }
+                expect(',');
             }
         }
+
+        private MapComponent parseMap() {
+            expect('{');
+
+            final Map<String, Component<?>> versionMap = new LinkedHashMap<String, Component<?>>();
+            skipWhitespace();
+            if (peek() == '}') {
+                position++;
+                return new MapComponent(versionMap);
+            }
+
+            while (true) {
+                skipWhitespace();
+                final String key = (peek() == '"') ? parseString() : parseName();
+                skipWhitespace();
+                expect(':');
+                versionMap.put(key, parseValue());
+                skipWhitespace();
+                if (peek() == '}') {
+                    position++;
+                    return new MapComponent(versionMap);
+                }
+                expect(',');
+            }
+        }
+
+        /**
+         * Parse a quoted string, returning its unescaped content.
+         */
+        private String parseString() {
+            expect('"');
+
+            final int start = position;
+            while (position < text.length()) {
+                final char c = text.charAt(position);
+                if (c == '"') {
+                    return text.substring(start, position++);
+                } else if (c == '\\') {
+                    return parseEscapedString(start);
+                } else if (c < ' ') {
+                    throw error("Control character in string");
+                }
+                position++;
+            }
+
+            throw error("Unterminated string");
+        }
+
+        private String parseEscapedString(final int start) {
+            final StringBuilder builder = new StringBuilder(text.length() - start);
+            builder.append(text, start, position);
+
+            while (position < text.length()) {
+                final char c = text.charAt(position++);
+                if (c == '"') {
+                    return builder.toString();
+                } else if (c < ' ') {
+                    throw error("Control character in string");
+                } else if (c != '\\') {
+                    builder.append(c);
+                    continue;
+                }
+
+                if (position == text.length()) {
+                    break;
+                }
+
+                final char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        builder.append(escaped);
+                        break;
+                    case 'b':
+                        builder.append('\b');
+                        break;
+                    case 'f':
+                        builder.append('\f');
+                        break;
+                    case 'n':
+                        builder.append('\n');
+                        break;
+                    case 'r':
+                        builder.append('\r');
+                        break;
+                    case 't':
+                        builder.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            throw error("Incomplete unicode escape");
+                        }
+                        int code = 0;
+                        for (int i = 0; i < 4; i++) {
+                            final int digit = Character.digit(text.charAt(position++), 16);
+                            if (digit < 0) {
+                                throw error("Invalid unicode escape");
+                            }
+                            code = (code << 4) | digit;
+                        }
+                        builder.append((char) code);
+                        break;
+                    default:
+                        throw error("Invalid escape");
+                }
+            }
+
+            throw error("Unterminated string");
+        }
+
+        /**
+         * Parse an unquoted object key.
+         */
+        private String parseName() {
+            final int start = position;
+            while (position < text.length() && isNamePart(text.charAt(position))) {
+                position++;
+            }
+
+            if (position == start) {
+                throw error("Expected key");
+            }
+
+            return text.substring(start, position);
+        }
+
+        /**
+         * Parse a JSON number, returning its text as a JSON number value would render it.
+         */
+        private String parseNumber() {
+            final int start = position;
+            boolean integral = true;
+
+            if (peek() == '-') {
+                position++;
+            }
+            if (peek() == '0') {
+                position++;
+            } else {
+                digits();
+            }
+            if (peek() == '.') {
+                position++;
+                integral = false;
+                digits();
+            }
+            if (peek() == 'e' || peek() == 'E') {
+                position++;
+                integral = false;
+                if (peek() == '+' || peek() == '-') {
+                    position++;
+                }
+                digits();
+            }
+
+            final String number = text.substring(start, position);
+            if (!integral) {
+                return Double.toString(Double.parseDouble(number));
+            } else if (number.charAt(0) == '-') {
+                return new BigInteger(number).toString();
+            }
+
+            return number;
+        }
+
+        private void digits() {
+            final int start = position;
+            while (position < text.length() && text.charAt(position) >= '0' && text.charAt(position) <= '9') {
+                position++;
+            }
+
+            if (position == start) {
+                throw error("Expected digit");
+            }
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length()) {
+                final char c = text.charAt(position);
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                    return;
+                }
+                position++;
+            }
+        }
+
+        /**
+         * @return the next character, or {@code 0} at the end of the text
+         */
+        private char peek() {
+            return (position < text.length()) ? text.charAt(position) : 0;
+        }
+
+        private void expect(final char c) {
+            if (peek() != c) {
+                throw error("Expected '" + c + "'");
+            }
+            position++;
+        }
+
+        private static boolean isNumberStart(final char c) {
+            return c == '-' || (c >= '0' && c <= '9');
+        }
+
+        private static boolean isNamePart(final char c) {
+            return Character.isJavaIdentifierPart(c) && !Character.isIdentifierIgnorable(c);
+        }
+
+        private IllegalArgumentException error(final String message) {
+            return new IllegalArgumentException("Bad version value: " + message + " at position " + position + " in '" + text + "'");
+        }
     }
 
+    /**
+     * A single {@link org.osgi.framework.Version}.
+     * <p>
+     * The numeric parts of the version are packed into a single {@code long} sort key when they
+     * fit, so that most comparisons need compare only the keys and, if those are equal, the
+     * qualifiers.
+     */
     protected static final class VersionComponent implements Component<org.osgi.framework.Version> {
+        /**
+         * The {@link VersionComponent} for {@code 0.0.0}, shared by every version which does not
+         * have a component at a given index or key.
+         */
+        static final VersionComponent INITIAL = new VersionComponent(org.osgi.framework.Version.emptyVersion);
+
+        /**
+         * The value of {@link #key} if the version is too large to be packed.
+         */
+        private static final long UNPACKED = -1;
+
+        private static final int MINOR_BITS = 16;
+
+        private static final int MICRO_BITS = 16;
+
         private final org.osgi.framework.Version component;
 
+        /**
+         * The major version in the upper 31 bits, followed by the minor and micro versions; or
+         * {@link #UNPACKED} if the minor or micro version does not fit.
+         */
+        private final long key;
+
+        private final boolean transition;
+
+        private final int hash;
+
         private VersionComponent(org.osgi.framework.Version component) {
             this.component = component;
+            this.hash = component.hashCode();
+            this.transition = component.getQualifier().toLowerCase().contains("transition");
+
+            if (component.getMinor() >>> MINOR_BITS == 0 && component.getMicro() >>> MICRO_BITS == 0) {
+                this.key = ((long) component.getMajor() << (MINOR_BITS + MICRO_BITS))
+                        | ((long) component.getMinor() << MICRO_BITS)
+                        | component.getMicro();
+            } else {
+                this.key = UNPACKED;
+            }
         }
 
         @Override
@@ -233,7 +573,7 @@ public class Version implements Comparable<Version> {
         @Override
         public Component<?> get(int index) {
             if (index > 0) {
-                return VersionComponent.parse(INITIAL_VALUE);
+                return INITIAL;
             } else if (index == 0) {
                 return this;
             }
@@ -264,32 +604,31 @@ public class Version implements Comparable<Version> {
              * If replace has been called with a key and the current version is INITIAL, then
              * it means a new map component has been added to the schema version, so create one.
              */
-            if (component.toString().equals(INITIAL_VALUE)) {
-                try {
-                    return ComponentFactory.parse("{ \"" + key + "\": " + element.toString() + " }");
-                } catch (IOException e) {
-                    throw new RuntimeException("Error adding new manifest version (map): unable to parse");
-                }
+            if (component.equals(org.osgi.framework.Version.emptyVersion)) {
+                final Map<String, Component<?>> versionMap = new LinkedHashMap<String, Component<?>>();
+                versionMap.put(key, element.version);
+
+                return new MapComponent(versionMap);
             }
 
             return element.version;
         }
 
         public static VersionComponent parse(String component) throws IllegalArgumentException {
-            return new VersionComponent(org.osgi.framework.Version.parseVersion(component));
+            return parse(org.osgi.framework.Version.parseVersion(component));
         }
 
         public static VersionComponent parse(org.osgi.framework.Version component) throws IllegalArgumentException {
+            if (component.equals(org.osgi.framework.Version.emptyVersion)) {
+                return INITIAL;
+            }
+
             return new VersionComponent(component);
         }
 
         @Override
         public boolean isTransition() {
-            if (component.getQualifier().toLowerCase().contains("transition")) {
-                return true;
-            }
-
-            return false;
+            return transition;
         }
 
         @Override
@@ -298,19 +637,27 @@ public class Version implements Comparable<Version> {
                 throw new IllegalArgumentException("Can not compare a VersionComponent with a " + other.getClass().getSimpleName());
             }
 
-            org.osgi.framework.Version otherVersion = ((VersionComponent) other).get();
+            final VersionComponent otherComponent = (VersionComponent) other;
+            if (key == UNPACKED || otherComponent.key == UNPACKED) {
+                return component.compareTo(otherComponent.component);
+            }
+
+            final int compareResult = Long.compare(key, otherComponent.key);
+            if (compareResult != 0) {
+                return compareResult;
+            }
 
-            return component.compareTo(otherVersion);
+            return component.getQualifier().compareTo(otherComponent.component.getQualifier());
         }
 
         @Override
         public boolean equals(Object obj) {
-            return component.equals(((VersionComponent) obj).component);
+            return (obj instanceof VersionComponent) && component.equals(((VersionComponent) obj).component);
         }
 
         @Override
         public int hashCode() {
-            return component.hashCode();
+            return hash;
         }
 
         @Override
@@ -319,17 +666,27 @@ public class Version implements Comparable<Version> {
         }
     }
 
+    /**
+     * An immutable list of {@link Component}s.
+     * <p>
+     * {@link #replace(int, Version)} copies only the references held by the list; the new list
+     * shares every element other than the replaced one with the original.
+     */
     protected static final class ListComponent implements Component<List<Component<?>>> {
         private final List<Component<?>> component;
 
-        private ListComponent(List<Component<?>> component) {
-            this.component = component;
+        private final int hash;
+
+        /**
+         * @param component the elements of the list; not modified afterwards
+         */
+        ListComponent(List<Component<?>> component) {
+            this.component = Collections.unmodifiableList(component);
+            this.hash = component.hashCode();
         }
 
         private ListComponent(Component<?>... component) {
-            this.component = new ArrayList<>();
-            this.component.addAll(Arrays.asList(component));
-
+            this(Arrays.asList(component));
         }
 
         @Override
@@ -340,7 +697,7 @@ public class Version implements Comparable<Version> {
         @Override
         public Component<?> get(int index) {
             if (index >= component.size()) {
-                return VersionComponent.parse(INITIAL_VALUE);
+                return VersionComponent.INITIAL;
             }
 
             return component.get(index);
@@ -353,16 +710,15 @@ public class Version implements Comparable<Version> {
 
         @Override
         public Component<?> replace(int index, Version element) {
-            if (index == component.size()) {
-                component.add(element.version);
-            } else if (index < component.size()) {
-                component.set(index, element.version);
-            } else {
+            if (index > component.size()) {
                 final String msg = "Cannot specify an index of %s for '%s'";
                 throw new IllegalArgumentException(String.format(msg, index, component));
             }
 
-            return new ListComponent(component);
+            final Component<?>[] replaced = component.toArray(new Component<?>[Math.max(component.size(), index + 1)]);
+            replaced[index] = element.version;
+
+            return new ListComponent(replaced);
         }
 
         @Override
@@ -370,21 +726,6 @@ public class Version implements Comparable<Version> {
             throw new UnsupportedOperationException("can not call replace(key, element) on ListComponent");
         }
 
-        public static ListComponent parse(JsonFactory jsonFactory, String component) throws JsonParseException, IOException {
-            final JsonParser jp = jsonFactory.createParser(component);
-            final List<Component<?>> versionList = new ArrayList<Component<?>>();
-
-            jp.nextToken();
-
-            while (jp.nextValue() != JsonToken.END_ARRAY) {
-                final JsonNode node = jp.readValueAsTree();
-
-                versionList.add(ComponentFactory.parse(node.toString()));
-            }
-
-            return new ListComponent(versionList);
-        }
-
         @Override
         public boolean isTransition() {
             for (Component<?> c : component) {
@@ -401,21 +742,31 @@ public class Version implements Comparable<Version> {
             if (!(other instanceof ListComponent)) {
                 throw new IllegalArgumentException("Can not compare a ListComponent with a " + other.getClass().getSimpleName());
             }
-            if (component == other) {
+            if (this == other) {
                 return 0;
             }
 
-            final ListComponent otherList = (ListComponent) other;
+            return compareElements(other, ((ListComponent) other).component.size());
+        }
 
+        /**
+         * Compare the elements of this list to those of another {@link Component}, treating
+         * elements missing from either as {@link VersionComponent#INITIAL}.
+         *
+         * @param other a {@link ListComponent}, or a {@link VersionComponent} to be treated as a
+         *          list of one element
+         * @param otherSize the number of elements in {@code other}
+         */
+        private int compareElements(final Component<?> other, final int otherSize) {
             int compareResult = 0;
-            for (int i = 0; i < Math.max(component.size(), otherList.get().size()); i++) {
-                final int componentCompareResult = compare(get(i), otherList.get(i));
+            for (int i = 0; i < Math.max(component.size(), otherSize); i++) {
+                final int componentCompareResult = compare(get(i), other.get(i));
                 if (compareResult == 0) {
                     compareResult = componentCompareResult;
                 } else if (compareResult > 0 && componentCompareResult < 0 ||
                         compareResult < 0 && componentCompareResult > 0 ) {
                     final String msg = "Bad version value, cannot compare %s to %s";
-                    throw new IllegalArgumentException(String.format(msg, component, otherList));
+                    throw new IllegalArgumentException(String.format(msg, component, other));
 
                 }
             }
@@ -424,12 +775,12 @@ public class Version implements Comparable<Version> {
 
         @Override
         public boolean equals(Object obj) {
-            return component.equals(((ListComponent) obj).component);
+            return (obj instanceof ListComponent) && component.equals(((ListComponent) obj).component);
         }
 
         @Override
         public int hashCode() {
-            return component.hashCode();
+            return hash;
         }
 
         @Override
@@ -446,11 +797,23 @@ public class Version implements Comparable<Version> {
         }
     }
 
+    /**
+     * An immutable map of {@link Component}s, which preserves the order of its keys.
+     * <p>
+     * {@link #replace(String, Version)} copies only the entries of the map; the new map shares
+     * every value other than the replaced one with the original.
+     */
     protected static final class MapComponent implements Component<Map<String, Component<?>>> {
         private final Map<String, Component<?>> component;
 
-        private MapComponent(Map<String, Component<?>> component) {
-            this.component = component;
+        private final int hash;
+
+        /**
+         * @param component the entries of the map; not modified afterwards
+         */
+        MapComponent(Map<String, Component<?>> component) {
+            this.component = Collections.unmodifiableMap(component);
+            this.hash = component.hashCode();
         }
 
         @Override
@@ -467,7 +830,7 @@ public class Version implements Comparable<Version> {
         public Component<?> get(String key) {
             if (!component.containsKey(key)) {
                 // Initial case - when a new project manifest has been added to an existing version map
-                return VersionComponent.parse(INITIAL_VALUE);
+                return VersionComponent.INITIAL;
             }
 
             return component.get(key);
@@ -480,24 +843,10 @@ public class Version implements Comparable<Version> {
 
         @Override
         public Component<?> replace(String key, Version element){
-            component.put(key, element.version);
-
-            return new MapComponent(component);
-        }
-
-        public static MapComponent parse(JsonFactory jsonFactory, String component) throws JsonParseException, IOException {
-            final JsonParser jp = jsonFactory.createParser(component);
-            final Map<String, Component<?>> versionMap = new LinkedHashMap<String, Component<?>>();
-
-            jp.nextToken();
+            final Map<String, Component<?>> replaced = new LinkedHashMap<String, Component<?>>(component);
+            replaced.put(key, element.version);
 
-            while (jp.nextValue() != JsonToken.END_OBJECT) {
-                final JsonNode node = jp.readValueAsTree();
-
-                versionMap.put(jp.getCurrentName(), ComponentFactory.parse(node.toString()));
-            }
-
-            return new MapComponent(versionMap);
+            return new MapComponent(replaced);
         }
 
         @Override
@@ -517,7 +866,7 @@ public class Version implements Comparable<Version> {
                 throw new IllegalArgumentException("Can not compare a MapComponent with a " + other.getClass().getSimpleName());
             }
 
-            if (component == other) {
+            if (this == other) {
                 return 0;
             }
 
@@ -550,12 +899,12 @@ public class Version implements Comparable<Version> {
 
         @Override
         public boolean equals(Object obj) {
-            return component.equals(((MapComponent) obj).component);
+            return (obj instanceof MapComponent) && component.equals(((MapComponent) obj).component);
         }
 
         @Override
         public int hashCode() {
-            return component.hashCode();
+            return hash;
         }
 
         @Override
@@ -573,19 +922,7 @@ public class Version implements Comparable<Version> {
     }
 
     protected Version(String value) {
-        if (value == null) {
-            throw new IllegalArgumentException("value");
-        }
-
-        try {
-            this.version = ComponentFactory.parse(value);
-        } catch (JsonParseException e) {
-            throw new IllegalArgumentException("Bad version value", e);
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Bad version value", e);
-        } catch (ClassCastException e) {
-            throw new IllegalArgumentException("value is not a json array", e);
-        }
+        this(intern(value).version);
     }
 
     protected Version(org.osgi.framework.Version version) {
@@ -596,19 +933,56 @@ public class Version implements Comparable<Version> {
         this.version = version;
     }
 
+    /**
+     * Return the interned {@link Version} for a string, parsing and interning it if necessary.
+     *
+     * @param value a string representation of the {@link Version}
+     * @return the interned {@link Version}
+     * @throws IllegalArgumentException if {@code value} is {@code null} or is not a valid version
+     */
+    private static Version intern(final String value) {
+        if (value == null) {
+            throw new IllegalArgumentException("value");
+        }
+
+        final Version existing = interned.get(value);
+        if (existing != null) {
+            return existing;
+        }
+
+        final Version parsed = wrap(ComponentFactory.parse(value));
+        if (interned.size() >= MAX_INTERNED) {
+            interned.clear();
+            interned.put(INITIAL_VALUE, INITIAL);
+        }
+
+        final Version raced = interned.putIfAbsent(value, parsed);
+        return (raced != null) ? raced : parsed;
+    }
+
+    /**
+     * @return the number of versions currently interned
+     */
+    static int internedCount() {
+        return interned.size();
+    }
+
     protected Component<?> getRawVersion() {
         return this.version;
     }
 
     /**
      * Returns the {@link Version} corresponding to the given string value.
+     * <p>
+     * Equal strings return the same interned instance, unless it has been evicted from the
+     * bounded cache in the meantime.
      *
      * @param value a string representation of the {@link Version}
      * @return a {@link Version} representing value, if the value is valid. Otherwise, {@code null}
      */
     public static Version lookup(String value) {
         try {
-            return new Version(value);
+            return intern(value);
         } catch (IllegalArgumentException e) {
             return null;
         }
@@ -708,7 +1082,7 @@ public class Version implements Comparable<Version> {
      * @return the {@linkplain Version} at the specified {@code index}
      */
     public Version get(int index) {
-        return new Version(version.get(index));
+        return wrap(version.get(index));
     }
 
     /**
@@ -720,7 +1094,11 @@ public class Version implements Comparable<Version> {
      * @return the {@linkplain Version} with the specified {@code key}
      */
     public Version get(String key) {
-        return new Version(version.get(key));
+        return wrap(version.get(key));
+    }
+
+    private static Version wrap(final Component<?> component) {
+        return (component == VersionComponent.INITIAL) ? INITIAL : new Version(component);
     }
 
 
@@ -730,6 +1108,9 @@ public class Version implements Comparable<Version> {
      * <p>
      * If index equals the size of this {@link Version}, then {@code element} is added to this
      * {@link Version}'s internal list.
+     * <p>
+     * This {@link Version} is not modified; the new {@link Version} shares every other component
+     * with it.
      *
      * @param index index of the element to replace
      * @param element version to be stored at the specified position
@@ -748,6 +1129,9 @@ public class Version implements Comparable<Version> {
      * <p>
      * If key is not present in this {@link Version}, then {@code element} is added to this
      * {@link Version}'s internal map.
+     * <p>
+     * This {@link Version} is not modified; the new {@link Version} shares every other component
+     * with it.
      *
      * @param key key of the map to replace
      * @param element version to be stored with the specified key
@@ -757,6 +1141,35 @@ public class Version implements Comparable<Version> {
         return new Version(version.replace(key, element));
     }
 
+    /**
+     * Encode this {@link Version} in a compact binary form suitable for persisting, from which it
+     * can be restored by {@link #fromBytes(byte[])}.
+     * <p>
+     * The form is stable: bytes produced by one release of the framework can be decoded by any
+     * later release.
+     *
+     * @return the encoded {@link Version}
+     */
+    public byte[] toBytes() {
+        return VersionEncoding.encode(version);
+    }
+
+    /**
+     * Decode a {@link Version} from the binary form produced by {@link #toBytes()}.
+     *
+     * @param bytes the encoded {@link Version}
+     * @return the decoded {@link Version}, which is equal to, and has the same string
+     *          representation as, the encoded {@link Version}
+     * @throws IllegalArgumentException if {@code bytes} is {@code null} or is not a valid encoding
+     */
+    public static Version fromBytes(byte[] bytes) {
+        if (bytes == null) {
+            throw new IllegalArgumentException("bytes");
+        }
+
+        return wrap(VersionEncoding.decode(bytes));
+    }
+
     @Override
     public String toString() {
         return version.toString();
@@ -778,9 +1191,8 @@ public class Version implements Comparable<Version> {
     @Override
     public int hashCode() {
         if (version != null) {
-            int hc = version.get().hashCode();
-
-            return hc;
+            // Each component caches the hash code of the value it wraps
+            return version.hashCode();
         }
 
         return 0;
@@ -843,6 +1255,6 @@ public class Version implements Comparable<Version> {
      * or greater than {@code b}.
      */
     private static int compareListComponentToVersionComponent(final ListComponent a, final VersionComponent b) {
-        return a.compareTo(new ListComponent(b));
+        return a.compareElements(b, 1);
     }
 }
@@ -0,0 +1,303 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.sequencing;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.vmware.upgrade.sequencing.Version.Component;
+import com.vmware.upgrade.sequencing.Version.ListComponent;
+import com.vmware.upgrade.sequencing.Version.MapComponent;
+import com.vmware.upgrade.sequencing.Version.VersionComponent;
+
+/**
+ * The compact binary form of a {@link Version}, used by {@link Version#toBytes()} and
+ * {@link Version#fromBytes(byte[])}.
+ * <p>
+ * The form is a format byte ({@code 1}) followed by the encoded {@link Component}:
+ * <ul>
+ * <li>{@code 0} for {@code 0.0.0}</li>
+ * <li>{@code 1}, the major, minor and micro versions, then the qualifier, for any other single
+ * version</li>
+ * <li>{@code 2}, the number of elements, then each element, for a list</li>
+ * <li>{@code 3}, the number of entries, then the key and value of each entry, for a map</li>
+ * </ul>
+ * Numbers are unsigned variable-length integers of seven bits per byte, least significant
+ * first. A key is its length in bytes followed by its UTF-8 encoding. A qualifier is {@code 0}
+ * if it is empty, {@code 1} for {@code transition}, or otherwise two more than its length in
+ * bytes, followed by its UTF-8 encoding.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+final class VersionEncoding {
+    static final int FORMAT = 1;
+
+    private static final int INITIAL = 0;
+    private static final int SINGLE = 1;
+    private static final int LIST = 2;
+    private static final int MAP = 3;
+
+    /**
+     * Qualifiers which are encoded by their index rather than their text.
+     */
+    private static final String[] QUALIFIERS = { "", "transition" };
+
+    private VersionEncoding() {
+    }
+
+    /**
+     * Encode a {@link Component}.
+     *
+     * @param component the {@link Component} to encode
+     * @return the encoded form
+     */
+    static byte[] encode(final Component<?> component) {
+        final Encoder encoder = new Encoder();
+        encoder.writeByte(FORMAT);
+        encoder.write(component);
+
+        return encoder.toBytes();
+    }
+
+    /**
+     * Decode a {@link Component}.
+     *
+     * @param bytes the encoded form
+     * @return the decoded {@link Component}
+     * @throws IllegalArgumentException if {@code bytes} is not a valid encoding
+     */
+    static Component<?> decode(final byte[] bytes) {
+        final Decoder decoder = new Decoder(bytes);
+        if (decoder.readByte() != FORMAT) {
+            throw new IllegalArgumentException("Unsupported version encoding");
+        }
+
+        final Component<?> component = decoder.read();
+        if (decoder.position != bytes.length) {
+            throw new IllegalArgumentException("Unexpected bytes after encoded version");
+        }
+
+        return component;
+    }
+
+    private static final class Encoder {
+        private byte[] buffer = new byte[32];
+
+        private int position;
+
+        void write(final Component<?> component) {
+            if (component == VersionComponent.INITIAL) {
+                writeByte(INITIAL);
+            } else if (component instanceof VersionComponent) {
+                final org.osgi.framework.Version version = ((VersionComponent) component).get();
+                writeByte(SINGLE);
+                writeVarint(version.getMajor());
+                writeVarint(version.getMinor());
+                writeVarint(version.getMicro());
+                writeQualifier(version.getQualifier());
+            } else if (component instanceof ListComponent) {
+                final List<Component<?>> elements = ((ListComponent) component).get();
+                writeByte(LIST);
+                writeVarint(elements.size());
+                for (int i = 0; i < elements.size(); i++) {
+                    write(elements.get(i));
+                }
+            } else if (component instanceof MapComponent) {
+                final Map<String, Component<?>> entries = ((MapComponent) component).get();
+                writeByte(MAP);
+                writeVarint(entries.size());
+                for (final Map.Entry<String, Component<?>> entry : entries.entrySet()) {
+                    writeString(entry.getKey(), 0);
+                    write(entry.getValue());
+                }
+            } else {
+                throw new IllegalArgumentException("Unsupported component " + component.getClass().getSimpleName());
+            }
+        }
+
+        private void writeQualifier(final String qualifier) {
+            for (int i = 0; i < QUALIFIERS.length; i++) {
+                if (QUALIFIERS[i].equals(qualifier)) {
+                    writeVarint(i);
+                    return;
+                }
+            }
+
+            writeString(qualifier, QUALIFIERS.length);
+        }
+
+        private void writeString(final String value, final int lengthOffset) {
+            final byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(encoded.length + lengthOffset);
+            ensureCapacity(encoded.length);
+            System.arraycopy(encoded, 0, buffer, position, encoded.length);
+            position += encoded.length;
+        }
+
+        private void writeVarint(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7f) != 0) {
+                buffer[position++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeByte(final int value) {
+            ensureCapacity(1);
+            buffer[position++] = (byte) value;
+        }
+
+        private void ensureCapacity(final int length) {
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + length));
+            }
+        }
+
+        byte[] toBytes() {
+            return Arrays.copyOf(buffer, position);
+        }
+    }
+
+    private static final class Decoder {
+        private final byte[] bytes;
+
+        private int position;
+
+        Decoder(final byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        Component<?> read() {
+            final int tag = readByte();
+            switch (tag) {
+                case INITIAL:
+                    return VersionComponent.INITIAL;
+                case SINGLE:
+                    return readSingle();
+                case LIST:
+                    return readList();
+                case MAP:
+                    return readMap();
+                default:
+                    throw new IllegalArgumentException("Unknown component in encoded version");
+            }
+        }
+
+        private VersionComponent readSingle() {
+            final int major = readVarint();
+            final int minor = readVarint();
+            final int micro = readVarint();
+
+            return VersionComponent.parse(new org.osgi.framework.Version(major, minor, micro, readQualifier()));
+        }
+
+        private ListComponent readList() {
+            final int size = readCount();
+            final List<Component<?>> elements = new ArrayList<Component<?>>(size);
+            for (int i = 0; i < size; i++) {
+                elements.add(read());
+            }
+
+            return new ListComponent(elements);
+        }
+
+        private MapComponent readMap() {
+            final int size = readCount();
+            final Map<String, Component<?>> entries = new LinkedHashMap<String, Component<?>>();
+            for (int i = 0; i < size; i++) {
+                final String key = readString(readVarint());
+                if (entries.put(key, read()) != null) {
+                    throw new IllegalArgumentException("Duplicate key in encoded version");
+                }
+            }
+
+            return new MapComponent(entries);
+        }
+
+        private String readQualifier() {
+            final int value = readVarint();
+            if (value < QUALIFIERS.length) {
+                return QUALIFIERS[value];
+            }
+
+            return readString(value - QUALIFIERS.length);
+        }
+
+        private String readString(final int length) {
+            if (length > bytes.length - position) {
+                throw new IllegalArgumentException("Truncated encoded version");
+            }
+
+            final String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+
+            return value;
+        }
+
+        /**
+         * Read the number of elements or entries of a list or map, each of which occupies at
+         * least one byte.
+         */
+        private int readCount() {
+            final int count = readVarint();
+            if (count > bytes.length - position) {
+                throw new IllegalArgumentException("Truncated encoded version");
+            }
+
+            return count;
+        }
+
+        private int readVarint() {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                final int b = readByte();
+                if (shift == 28 && (b & 0xf8) != 0) {
+                    // more than 31 bits
+                    break;
+                }
+
+                value |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+
+            throw new IllegalArgumentException("Invalid number in encoded version");
+        }
+
+        int readByte() {
+            if (position == bytes.length) {
+                throw new IllegalArgumentException("Truncated encoded version");
+            }
+
+            return bytes[position++] & 0xff;
+        }
+    }
+}
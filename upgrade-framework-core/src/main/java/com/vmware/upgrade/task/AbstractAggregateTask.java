@@ -25,9 +25,14 @@ package com.vmware.upgrade.task;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 
 import com.vmware.upgrade.Task;
+import com.vmware.upgrade.logging.UpgradeLogger;
 import com.vmware.upgrade.progress.ExecutionState;
+import com.vmware.upgrade.progress.Weighted;
 import com.vmware.upgrade.progress.impl.SimpleAggregatingProgressReporter;
 
 /**
@@ -40,7 +45,7 @@ import com.vmware.upgrade.progress.impl.SimpleAggregatingProgressReporter;
  * @version 1.0
  * @since 1.0
  */
-public abstract class AbstractAggregateTask extends AbstractTask<SimpleAggregatingProgressReporter> {
+public abstract class AbstractAggregateTask extends AbstractTask<SimpleAggregatingProgressReporter> implements Composite, Weighted {
 
     private final List<Task> children;
 
@@ -89,10 +94,75 @@ public abstract class AbstractAggregateTask extends AbstractTask<SimpleAggregati
      *
      * @return an unmodifiable list of {@link Task}s
      */
-    protected final List<Task> getChildren() {
+    @Override
+    public final List<Task> getChildren() {
         return Collections.unmodifiableList(children);
     }
 
+    /**
+     * The sum of the {@link Weighted weights} of the children.
+     */
+    @Override
+    public long getWeight() {
+        return getReporter().getWeight();
+    }
+
+    /**
+     * Terminate this task in response to an exception thrown while waiting for its children to
+     * complete: report the appropriate {@link ExecutionState}, cancel the children and rethrow.
+     * <p>
+     * An {@link InterruptedException} caused by the {@link Deadline} passing is rethrown as a
+     * {@link TimeoutException}; any other exception is rethrown as is.
+     *
+     * @param e
+     *          the exception thrown while waiting
+     * @param deadline
+     *          the {@link Deadline} within which this task is executing, or {@code null}
+     * @param logger
+     *          the logger to which to report the termination
+     * @param cancel
+     *          cancels the children which have not completed
+     */
+    final void terminate(final Exception e, final Deadline deadline, final UpgradeLogger logger, final Runnable cancel)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        final boolean expired = (deadline != null && deadline.isExpired());
+
+        if (e instanceof InterruptedException) {
+            if (expired) {
+                logger.warn(e, "{0}: Deadline passed while waiting for tasks", getName());
+                getReporter().terminateWithTimeout();
+                cancel.run();
+                throw (TimeoutException) new TimeoutException(getName() + ": Deadline passed while waiting for tasks").initCause(e);
+            }
+            logger.warn(e, "{0}: Interrupted while waiting for tasks", getName());
+            getReporter().terminateWithCancellation();
+            cancel.run();
+            throw (InterruptedException) e;
+        } else if (e instanceof TimeoutException) {
+            logger.warn(e, "{0}: Deadline passed while waiting for tasks", getName());
+            getReporter().terminateWithTimeout();
+            cancel.run();
+            throw (TimeoutException) e;
+        } else if (e instanceof CancellationException) {
+            logger.warn(e, "{0}: Task was cancelled", getName());
+            getReporter().terminateWithCancellation();
+            cancel.run();
+            throw (CancellationException) e;
+        } else {
+            logger.warn(e, "{0}: Task failed due to uncaught exception", getName());
+            if (expired) {
+                getReporter().terminateWithTimeout();
+            } else {
+                getReporter().terminateWithFailure();
+            }
+            cancel.run();
+            if (e instanceof ExecutionException) {
+                throw (ExecutionException) e;
+            }
+            throw (RuntimeException) e;
+        }
+    }
+
     /**
      * Delegate to {@link SimpleAggregatingProgressReporter#getState()}
      */
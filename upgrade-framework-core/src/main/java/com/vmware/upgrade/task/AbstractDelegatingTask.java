@@ -23,10 +23,13 @@
 package com.vmware.upgrade.task;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 import com.vmware.upgrade.Task;
 import com.vmware.upgrade.progress.ExecutionState;
 import com.vmware.upgrade.progress.ProgressReporter;
+import com.vmware.upgrade.progress.Weighted;
 import com.vmware.upgrade.progress.impl.SimpleAggregatingProgressReporter;
 import com.vmware.upgrade.progress.impl.SimpleProgressReporter;
 
@@ -38,7 +41,25 @@ import com.vmware.upgrade.progress.impl.SimpleProgressReporter;
  * @version 1.0
  * @since 1.0
  */
-public abstract class AbstractDelegatingTask extends AbstractTask<SimpleAggregatingProgressReporter> {
+public abstract class AbstractDelegatingTask extends AbstractTask<SimpleAggregatingProgressReporter> implements Composite, Weighted {
+    /**
+     * A {@link ProgressReporter} for the "internal" share of the work, which carries no weight
+     * unless its number of ticks is known.
+     */
+    private static final class InternalProgressReporter extends SimpleProgressReporter implements Weighted {
+        private final long weight;
+
+        InternalProgressReporter(final int ticks) {
+            super(ticks);
+            this.weight = (ticks == UNKNOWN) ? 0 : 1;
+        }
+
+        @Override
+        public long getWeight() {
+            return weight;
+        }
+    }
+
     private final Task delegateTask;
 
     /**
@@ -46,6 +67,11 @@ public abstract class AbstractDelegatingTask extends AbstractTask<SimpleAggregat
      */
     private final SimpleProgressReporter internalReporter;
 
+    /**
+     * The result of {@link #describe()}, computed on first use.
+     */
+    private volatile String description;
+
     /**
      * Constructs a named task enclosing the provided delegate task which has
      * {@link SimpleProgressReporter#UNKNOWN} "ticks" of internal progress.
@@ -83,7 +109,7 @@ public abstract class AbstractDelegatingTask extends AbstractTask<SimpleAggregat
         }
 
         this.delegateTask = task;
-        this.internalReporter = new SimpleProgressReporter(ticks);
+        this.internalReporter = new InternalProgressReporter(ticks);
 
         createAndSetReporter();
     }
@@ -107,10 +133,27 @@ public abstract class AbstractDelegatingTask extends AbstractTask<SimpleAggregat
         internalReporter.advance();
     }
 
+    /**
+     * The {@link Weighted weight} of the delegate task, plus one if the internal share of the
+     * work has a known number of ticks.
+     */
+    @Override
+    public long getWeight() {
+        return getReporter().getWeight();
+    }
+
     protected final Task getDelegateTask() {
         return delegateTask;
     }
 
+    /**
+     * @return a list containing only the delegate task
+     */
+    @Override
+    public final List<Task> getChildren() {
+        return Collections.singletonList(delegateTask);
+    }
+
     /**
      * Invokes {@link #doCall()} in a context within which {@link #advance()} can be called.
      *
@@ -123,7 +166,11 @@ public abstract class AbstractDelegatingTask extends AbstractTask<SimpleAggregat
             doCall();
             internalReporter.setState(ExecutionState.COMPLETED);
         } catch (Exception e) {
-            getReporter().terminateWithFailure();
+            if (Deadline.isCurrentExpired()) {
+                getReporter().terminateWithTimeout();
+            } else {
+                getReporter().terminateWithFailure();
+            }
             throw e;
         }
 
@@ -136,16 +183,36 @@ public abstract class AbstractDelegatingTask extends AbstractTask<SimpleAggregat
      * It is expected that any concrete implementation of this class which overrides this method
      * will use {@code super.doCall()} to execute the delegate task.
      *
-     * Any exception thrown will cause the state to be reported as {@link ExecutionState#FAILED}.
+     * Any exception thrown will cause the state to be reported as {@link ExecutionState#FAILED},
+     * or as {@link ExecutionState#TIMED_OUT} if the {@link Deadline} within which this task is
+     * executing has passed.
      *
      * @throws Exception if the delegate task throws an exception.
      */
     protected void doCall() throws Exception {
-        delegateTask.call();
+        Children.execute(delegateTask, 0);
     }
 
+    /**
+     * Returns the {@link #describe() description} of this task, which is computed only once, as
+     * describing a wrapper may involve describing the tree of tasks it wraps.
+     */
     @Override
     public String toString() {
+        String result = description;
+        if (result == null) {
+            result = describe();
+            description = result;
+        }
+        return result;
+    }
+
+    /**
+     * Describe this task; invoked by {@link #toString()} at most once per task, barring races.
+     *
+     * @return a description of this task
+     */
+    protected String describe() {
         return "Wrapper around " + delegateTask.getName();
     }
 }
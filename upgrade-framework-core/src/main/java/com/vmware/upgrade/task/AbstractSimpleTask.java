@@ -24,6 +24,7 @@ package com.vmware.upgrade.task;
 
 import com.vmware.upgrade.Task;
 import com.vmware.upgrade.progress.ExecutionState;
+import com.vmware.upgrade.progress.Weighted;
 import com.vmware.upgrade.progress.impl.SimpleProgressReporter;
 
 /**
@@ -35,7 +36,7 @@ import com.vmware.upgrade.progress.impl.SimpleProgressReporter;
  * @version 1.0
  * @since 1.0
  */
-public abstract class AbstractSimpleTask extends AbstractTask<SimpleProgressReporter> {
+public abstract class AbstractSimpleTask extends AbstractTask<SimpleProgressReporter> implements Weighted {
     private final int maximumProgress;
 
     /**
@@ -78,6 +79,25 @@ public abstract class AbstractSimpleTask extends AbstractTask<SimpleProgressRepo
         getReporter().advance();
     }
 
+    /**
+     * The relative amount of work performed by this task; one unless overridden.
+     */
+    @Override
+    public long getWeight() {
+        return 1;
+    }
+
+    /**
+     * Report this task as having completed without executing it, as it completed during an
+     * earlier execution.
+     *
+     * @see Checkpoints
+     */
+    final void markSkipped() {
+        getReporter().setState(ExecutionState.RUNNING);
+        getReporter().setState(ExecutionState.COMPLETED);
+    }
+
     /**
      * Delegates to {@link SimpleProgressReporter#setState}
      */
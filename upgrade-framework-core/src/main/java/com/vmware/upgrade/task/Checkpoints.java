@@ -0,0 +1,275 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.task;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+import com.vmware.upgrade.Task;
+import com.vmware.upgrade.UpgradeContext;
+import com.vmware.upgrade.journal.ExecutionJournal;
+import com.vmware.upgrade.logging.UpgradeLogger;
+
+/**
+ * Records the completion of {@link Task}s in an {@link ExecutionJournal} as they execute and
+ * skips those recorded as completed by an earlier, interrupted execution.
+ * <p>
+ * Only {@link AbstractSimpleTask}s are recorded. Each is identified by a hash of its position
+ * within the tree of tasks being executed, the names of the tasks enclosing it, its own name and
+ * its {@link Fingerprinted#getFingerprint() fingerprint}, if any. Other {@link Task}s are always
+ * executed.
+ * <p>
+ * The aggregating tasks in this package execute their children within the checkpoint scope of the
+ * calling thread, if any. Within an {@link #beginAtomic() atomic unit}, checkpoints are only
+ * recorded once the unit commits.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public final class Checkpoints {
+    private static final ThreadLocal<Checkpoints> CURRENT = new ThreadLocal<Checkpoints>();
+
+    /**
+     * A group of checkpoints which are recorded together, once the work they represent has been
+     * made durable (e.g. by committing a database transaction), or not at all.
+     */
+    public static final class AtomicUnit {
+        private final Checkpoints previous;
+
+        private final List<String> pending;
+
+        private AtomicUnit(final Checkpoints previous, final List<String> pending) {
+            this.previous = previous;
+            this.pending = pending;
+        }
+
+        /**
+         * Record the checkpoints of the tasks which completed within this unit and restore the
+         * enclosing scope.
+         */
+        public void commit() {
+            restore();
+            if (pending != null) {
+                for (final String checkpoint : pending) {
+                    previous.record(checkpoint);
+                }
+            }
+        }
+
+        /**
+         * Discard the checkpoints of the tasks which completed within this unit and restore the
+         * enclosing scope.
+         */
+        public void discard() {
+            restore();
+        }
+
+        private void restore() {
+            set(previous);
+        }
+    }
+
+    private final UpgradeLogger logger;
+
+    private final ExecutionJournal journal;
+
+    private final Set<String> completed;
+
+    private final String path;
+
+    private final List<String> pending;
+
+    private Checkpoints(final UpgradeLogger logger, final ExecutionJournal journal, final Set<String> completed, final String path, final List<String> pending) {
+        this.logger = logger;
+        this.journal = journal;
+        this.completed = completed;
+        this.path = path;
+        this.pending = pending;
+    }
+
+    /**
+     * Execute a {@link Callable} on the calling thread within a new checkpoint scope.
+     *
+     * @param context
+     *          the {@link UpgradeContext}
+     * @param journal
+     *          the {@link ExecutionJournal} in which to record checkpoints
+     * @param completed
+     *          the checkpoints recorded by an earlier execution, whose tasks are to be skipped
+     * @param callable
+     *          the {@link Callable} to execute
+     * @return the result of {@code callable}
+     * @throws Exception
+     *          if {@code callable} throws an exception
+     */
+    public static <V> V call(final UpgradeContext context, final ExecutionJournal journal, final Set<String> completed, final Callable<V> callable) throws Exception {
+        if (journal == null) {
+            throw new IllegalArgumentException("journal");
+        }
+        if (completed == null) {
+            throw new IllegalArgumentException("completed");
+        }
+
+        final Checkpoints scope = new Checkpoints(context.getLogger(Checkpoints.class), journal, completed, "", null);
+        return scope.call(callable);
+    }
+
+    /**
+     * Begin an atomic unit within the checkpoint scope of the calling thread.
+     * <p>
+     * The caller must {@link AtomicUnit#commit() commit} or {@link AtomicUnit#discard() discard}
+     * the unit on the same thread once the work it encloses has completed.
+     *
+     * @return the new {@link AtomicUnit}
+     */
+    public static AtomicUnit beginAtomic() {
+        final Checkpoints current = CURRENT.get();
+        if (current == null) {
+            return new AtomicUnit(null, null);
+        }
+
+        final List<String> pending = Collections.synchronizedList(new ArrayList<String>());
+        CURRENT.set(new Checkpoints(current.logger, current.journal, current.completed, current.path, pending));
+        return new AtomicUnit(current, pending);
+    }
+
+    /**
+     * Execute a child {@link Task} on the calling thread, within the checkpoint scope of the
+     * calling thread, if any.
+     *
+     * @param task
+     *          the child to execute
+     * @param index
+     *          the position of the child within its parent
+     */
+    static void execute(final Task task, final int index) throws Exception {
+        final Checkpoints current = CURRENT.get();
+        if (current == null) {
+            task.call();
+        } else {
+            current.child(task, index).call(task);
+        }
+    }
+
+    /**
+     * Wrap a child {@link Task} so that it executes within the checkpoint scope of the calling
+     * thread, if any, regardless of the thread on which it is executed.
+     *
+     * @param task
+     *          the child to execute
+     * @param index
+     *          the position of the child within its parent
+     */
+    static Callable<Void> bind(final Task task, final int index) {
+        final Checkpoints current = CURRENT.get();
+        if (current == null) {
+            return task;
+        }
+
+        final Checkpoints scope = current.child(task, index);
+        return new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                return scope.call(task);
+            }
+        };
+    }
+
+    private Checkpoints child(final Task task, final int index) {
+        return new Checkpoints(logger, journal, completed, path + "/" + index + ":" + task.getName(), pending);
+    }
+
+    private <V> V call(final Callable<V> callable) throws Exception {
+        if (callable instanceof AbstractSimpleTask) {
+            callLeaf((AbstractSimpleTask) callable);
+            return null;
+        }
+
+        final Checkpoints previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return callable.call();
+        } finally {
+            set(previous);
+        }
+    }
+
+    private void callLeaf(final AbstractSimpleTask task) throws Exception {
+        final String fingerprint = (task instanceof Fingerprinted) ? ((Fingerprinted) task).getFingerprint() : "";
+        final String checkpoint = hash(path + "\n" + fingerprint);
+
+        if (completed.contains(checkpoint)) {
+            logger.info("Skipping {0} as it completed during an earlier execution", task.getName());
+            task.markSkipped();
+            return;
+        }
+
+        task.call();
+        record(checkpoint);
+    }
+
+    private void record(final String checkpoint) {
+        if (pending != null) {
+            pending.add(checkpoint);
+            return;
+        }
+
+        try {
+            journal.recordCompleted(checkpoint);
+        } catch (IOException e) {
+            // The task will be repeated if execution is resumed, as it would be without a journal
+            logger.warn(e, "Unable to record checkpoint {0} in {1}", checkpoint, journal);
+        }
+    }
+
+    private static void set(final Checkpoints scope) {
+        if (scope == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(scope);
+        }
+    }
+
+    private static String hash(final String value) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new AssertionError(e);
+        }
+
+        final StringBuilder result = new StringBuilder();
+        for (final byte b : digest.digest(value.getBytes(StandardCharsets.UTF_8))) {
+            result.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,69 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.task;
+
+import java.util.concurrent.Callable;
+
+import com.vmware.upgrade.Task;
+import com.vmware.upgrade.logging.LogContext;
+
+/**
+ * Dispatches the children of the aggregating and delegating tasks in this package.
+ * <p>
+ * Each child executes within the {@link Checkpoints checkpoint scope} of its parent, if any, and
+ * a {@link LogContext} nested within that of its parent, if any, whichever thread executes it.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+final class Children {
+    private Children() {
+    }
+
+    /**
+     * Execute a child {@link Task} on the calling thread.
+     *
+     * @param task
+     *          the child to execute
+     * @param index
+     *          the position of the child within its parent
+     */
+    static void execute(final Task task, final int index) throws Exception {
+        LogContext.call(task.getName(), null, null, Checkpoints.bind(task, index));
+    }
+
+    /**
+     * Wrap a child {@link Task} so that it executes within the scope of the calling thread,
+     * regardless of the thread on which it is executed.
+     *
+     * @param task
+     *          the child to execute
+     * @param index
+     *          the position of the child within its parent
+     * @return the wrapped child
+     */
+    static Callable<Void> bind(final Task task, final int index) {
+        return LogContext.bind(task.getName(), Checkpoints.bind(task, index));
+    }
+}
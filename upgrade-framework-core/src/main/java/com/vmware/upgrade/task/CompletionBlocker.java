@@ -0,0 +1,105 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.task;
+
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link ForkJoinPool.ManagedBlocker} which waits for the next task submitted to a
+ * {@link CompletionService} to complete.
+ * <p>
+ * Waiting via {@link ForkJoinPool#managedBlock} allows a {@link ForkJoinPool} executing the
+ * waiting aggregate to start a spare thread to run the tasks being waited for. If the pool has
+ * already started as many spare threads as it may, waiting fails rather than risk waiting for
+ * tasks which no thread is available to run.
+ * <p>
+ * If a {@link Deadline} is supplied, waiting stops once it passes.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+final class CompletionBlocker implements ForkJoinPool.ManagedBlocker {
+    private final CompletionService<Void> completionService;
+
+    private final Deadline deadline;
+
+    private Future<Void> completed;
+
+    CompletionBlocker(final CompletionService<Void> completionService, final Deadline deadline) {
+        this.completionService = completionService;
+        this.deadline = deadline;
+    }
+
+    @Override
+    public boolean block() throws InterruptedException {
+        if (completed == null) {
+            if (deadline == null) {
+                completed = completionService.take();
+            } else {
+                completed = completionService.poll(deadline.remaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isReleasable() {
+        if (completed == null) {
+            completed = completionService.poll();
+        }
+        return completed != null || (deadline != null && deadline.isExpired());
+    }
+
+    /**
+     * Wait for the next task to complete.
+     *
+     * @return the {@link Future} of the completed task
+     * @throws InterruptedException
+     *          if interrupted while waiting
+     * @throws TimeoutException
+     *          if the deadline passes before a task completes
+     * @throws RejectedExecutionException
+     *          if the {@link ForkJoinPool} executing the calling thread cannot start a spare thread
+     */
+    Future<Void> take() throws InterruptedException, TimeoutException {
+        try {
+            ForkJoinPool.managedBlock(this);
+        } catch (final RejectedExecutionException e) {
+            throw new RejectedExecutionException("Unable to start a thread to run the tasks being waited for; "
+                    + "too many threads of the pool are blocked waiting for nested parallel tasks", e);
+        }
+
+        final Future<Void> result = completed;
+        if (result == null) {
+            throw new TimeoutException("Deadline passed while waiting for tasks");
+        }
+        completed = null;
+        return result;
+    }
+}
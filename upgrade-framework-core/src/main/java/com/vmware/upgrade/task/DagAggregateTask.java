@@ -0,0 +1,326 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.task;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
+
+import com.vmware.upgrade.Task;
+import com.vmware.upgrade.UpgradeContext;
+import com.vmware.upgrade.logging.UpgradeLogger;
+import com.vmware.upgrade.progress.ExecutionState;
+
+/**
+ * A {@link Task} which aggregates other {@link Task}s and executes them in parallel, subject to
+ * dependencies between them.
+ * <p>
+ * Each child is started as soon as all of the children it depends upon have completed, with at
+ * most a configured number of children executing at once. When more children are ready than may
+ * be started, those with the longest chain of dependent children (the critical path) are started
+ * first, with ties broken in the order the children were supplied.
+ * <p>
+ * Failure and cancellation are handled as in {@link ParallelAggregateTask}: as soon as any child
+ * fails, the children which are executing are cancelled and no further children are started.
+ *
+ * @see ParallelAggregateTask
+ * @see SerialAggregateTask
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public final class DagAggregateTask extends AbstractAggregateTask {
+    private final UpgradeLogger logger;
+
+    private final ExecutorService executor;
+
+    private final int maxConcurrency;
+
+    /**
+     * For each child (by index), the indices of the children which depend upon it.
+     */
+    private final int[][] dependents;
+
+    /**
+     * For each child (by index), the number of children it depends upon.
+     */
+    private final int[] dependencyCounts;
+
+    /**
+     * For each child (by index), the number of children on the longest chain of dependents
+     * beginning with that child.
+     */
+    private final int[] criticalPathLengths;
+
+    /**
+     * Constructs a named task which aggregates the supplied tasks without limiting the number of
+     * tasks which execute at once.
+     *
+     * @see #DagAggregateTask(UpgradeContext, String, ExecutorService, List, Map, int)
+     */
+    public DagAggregateTask(final UpgradeContext context, final String name, final ExecutorService executor, final List<Task> children, final Map<Task, ? extends Collection<Task>> dependencies) {
+        this(context, name, executor, children, dependencies, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Constructs a named task which aggregates the supplied tasks.
+     *
+     * Tasks will be executed using the supplied {@link ExecutorService}.
+     *
+     * @param context
+     *          the {@link UpgradeContext}
+     * @param name
+     *          see {@link Task#getName()}
+     * @param executor
+     *          the {@link ExecutorService} to use for executing the {@code children}
+     * @param children
+     *          the children to execute
+     * @param dependencies
+     *          a mapping from a child to the children which must complete before it may begin;
+     *          children without dependencies may be omitted
+     * @param maxConcurrency
+     *          the maximum number of children to execute at once
+     * @throws IllegalArgumentException
+     *          if {@code children} is {@code null}, {@code children} contains a {@code null}
+     *          element or the same task more than once, {@code executor} is {@code null},
+     *          {@code executor} has been shutdown,
+     *          {@code dependencies} is {@code null}, refers to a task which is not one of the
+     *          {@code children} or contains a cycle, or {@code maxConcurrency <= 0}
+     */
+    public DagAggregateTask(final UpgradeContext context, final String name, final ExecutorService executor, final List<Task> children, final Map<Task, ? extends Collection<Task>> dependencies, final int maxConcurrency) {
+        super(name, children);
+
+        if (executor == null) {
+            throw new IllegalArgumentException("executor");
+        }
+        if (executor.isShutdown()) {
+            throw new IllegalArgumentException("executor.isShutdown");
+        }
+        if (dependencies == null) {
+            throw new IllegalArgumentException("dependencies");
+        }
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency");
+        }
+
+        this.executor = executor;
+        this.maxConcurrency = maxConcurrency;
+
+        final int size = children.size();
+        final Map<Task, Integer> indices = new IdentityHashMap<Task, Integer>(size);
+        for (int i = 0; i < size; i++) {
+            if (indices.put(children.get(i), i) != null) {
+                throw new IllegalArgumentException("children");
+            }
+        }
+
+        final List<List<Integer>> dependentLists = new ArrayList<List<Integer>>(size);
+        for (int i = 0; i < size; i++) {
+            dependentLists.add(new ArrayList<Integer>());
+        }
+        this.dependencyCounts = new int[size];
+
+        for (final Map.Entry<Task, ? extends Collection<Task>> entry : dependencies.entrySet()) {
+            final Integer dependent = indices.get(entry.getKey());
+            if (dependent == null || entry.getValue() == null) {
+                throw new IllegalArgumentException("dependencies");
+            }
+
+            for (final Task dependency : entry.getValue()) {
+                final Integer index = indices.get(dependency);
+                if (index == null) {
+                    throw new IllegalArgumentException("dependencies");
+                }
+
+                dependentLists.get(index).add(dependent);
+                dependencyCounts[dependent]++;
+            }
+        }
+
+        this.dependents = new int[size][];
+        for (int i = 0; i < size; i++) {
+            final List<Integer> list = dependentLists.get(i);
+            dependents[i] = new int[list.size()];
+            for (int j = 0; j < list.size(); j++) {
+                dependents[i][j] = list.get(j);
+            }
+        }
+
+        this.criticalPathLengths = calculateCriticalPathLengths(dependents, dependencyCounts);
+
+        logger = context.getLogger(getClass());
+    }
+
+    /**
+     * Calculate the length of the longest chain of dependents beginning with each task.
+     *
+     * @throws IllegalArgumentException
+     *          if the dependencies contain a cycle
+     */
+    private static int[] calculateCriticalPathLengths(final int[][] dependents, final int[] dependencyCounts) {
+        final int size = dependents.length;
+
+        // Kahn's algorithm yields a topological order or detects a cycle
+        final int[] remaining = dependencyCounts.clone();
+        final Deque<Integer> ready = new ArrayDeque<Integer>();
+        for (int i = 0; i < size; i++) {
+            if (remaining[i] == 0) {
+                ready.add(i);
+            }
+        }
+
+        final List<Integer> order = new ArrayList<Integer>(size);
+        while (!ready.isEmpty()) {
+            final int current = ready.remove();
+            order.add(current);
+            for (final int dependent : dependents[current]) {
+                if (--remaining[dependent] == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+
+        if (order.size() != size) {
+            throw new IllegalArgumentException("dependencies");
+        }
+
+        final int[] lengths = new int[size];
+        for (int i = size - 1; i >= 0; i--) {
+            final int current = order.get(i);
+            int longest = 0;
+            for (final int dependent : dependents[current]) {
+                longest = Math.max(longest, lengths[dependent]);
+            }
+            lengths[current] = longest + 1;
+        }
+
+        return lengths;
+    }
+
+    /**
+     * Executes all children in an order consistent with their dependencies, failing as soon as
+     * any child fails.
+     *
+     * @throws ExecutionException
+     *          if a child fails; executing children are cancelled, no further children are
+     *          started and this task is reported as {@link ExecutionState#FAILED}
+     * @throws TimeoutException
+     *          if the {@link Deadline} within which this task is executing passes; the children are
+     *          cancelled and this task is reported as {@link ExecutionState#TIMED_OUT}
+     * @throws InterruptedException
+     *          if this task is interrupted while waiting; executing children are cancelled and
+     *          this task is reported as {@link ExecutionState#CANCELLED}
+     * @throws CancellationException
+     *          if a child is cancelled by a party other than this task; executing children are
+     *          cancelled and this task is reported as {@link ExecutionState#CANCELLED}
+     * @throws RejectedExecutionException
+     *          if this task is executing in an {@link ExecutorRegistry} pool which cannot start a
+     *          spare thread to run the children while this task waits; the children are cancelled
+     *          and this task is reported as {@link ExecutionState#FAILED}
+     */
+    @Override
+    public Void call() throws InterruptedException, ExecutionException, TimeoutException {
+        logger.trace("{0}: Beginning execution", getName());
+
+        final List<Task> children = getChildren();
+        final int[] remaining = dependencyCounts.clone();
+
+        final Queue<Integer> ready = new PriorityQueue<Integer>(Math.max(1, children.size()), new Comparator<Integer>() {
+            @Override
+            public int compare(final Integer a, final Integer b) {
+                final int byCriticalPath = Integer.compare(criticalPathLengths[b], criticalPathLengths[a]);
+                return (byCriticalPath != 0) ? byCriticalPath : Integer.compare(a, b);
+            }
+        });
+        for (int i = 0; i < children.size(); i++) {
+            if (remaining[i] == 0) {
+                ready.add(i);
+            }
+        }
+
+        final Deadline deadline = Deadline.current();
+        final CompletionService<Void> completionService = new ExecutorCompletionService<Void>(executor);
+        final CompletionBlocker blocker = new CompletionBlocker(completionService, deadline);
+        final Map<Future<Void>, Integer> running = new HashMap<Future<Void>, Integer>();
+
+        try {
+            for (int completed = 0; completed < children.size(); completed++) {
+                while (running.size() < maxConcurrency && !ready.isEmpty()) {
+                    final int index = ready.remove();
+                    final Task task = children.get(index);
+                    logger.debug("{0}: Queueing execution of task {1}", getName(), task.getName());
+                    running.put(completionService.submit(Deadline.bind(Children.bind(task, index))), index);
+                }
+
+                final Future<Void> future = blocker.take();
+                final int index = running.remove(future);
+                future.get();
+
+                for (final int dependent : dependents[index]) {
+                    if (--remaining[dependent] == 0) {
+                        ready.add(dependent);
+                    }
+                }
+            }
+        } catch (final Exception e) {
+            terminate(e, deadline, logger, new Runnable() {
+                @Override
+                public void run() {
+                    cancelRunning(running.keySet(), ready.size());
+                }
+            });
+        }
+
+        logger.trace("{0}: Completed successfully", getName());
+
+        return null;
+    }
+
+    private void cancelRunning(final Collection<Future<Void>> running, final int ready) {
+        int cancelled = 0;
+        for (final Future<Void> future : running) {
+            if (future.cancel(true)) {
+                cancelled++;
+            }
+        }
+
+        logger.info("{0}: Cancelled {1} task(s); {2} ready task(s) were not started", getName(), cancelled, ready);
+    }
+}
@@ -0,0 +1,328 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.task;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.upgrade.Task;
+import com.vmware.upgrade.logging.UpgradeLogger;
+
+/**
+ * A point in time by which the {@link Task}s executing within it must complete.
+ * <p>
+ * A deadline is established for the duration of a {@link TimeoutTask} and applies to every
+ * {@link Task} executed within it, including those executed on other threads by
+ * {@link ParallelAggregateTask} and {@link DagAggregateTask}. Nested deadlines never extend the
+ * deadline within which they are established.
+ * <p>
+ * When a deadline passes, its expiry actions are run. A {@link Task} blocking in a way which
+ * cannot be interrupted (e.g. executing a JDBC statement) may register an expiry action which
+ * cancels the blocking operation.
+ *
+ * @see #current()
+ * @see #addExpiryAction(Runnable)
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public final class Deadline implements AutoCloseable {
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<Deadline>();
+
+    private static final ScheduledExecutorService SCHEDULER = createScheduler();
+
+    private static ScheduledExecutorService createScheduler() {
+        final ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "upgrade-deadline");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    private final Deadline parent;
+
+    private final long expiry;
+
+    private final UpgradeLogger logger;
+
+    private final Runnable expire = new Runnable() {
+        @Override
+        public void run() {
+            expire();
+        }
+    };
+
+    /**
+     * The actions which have been registered and not yet run.
+     */
+    private final Set<Runnable> actions = new LinkedHashSet<Runnable>();
+
+    /**
+     * The action being run, if any.
+     */
+    private Runnable running;
+
+    private final ScheduledFuture<?> scheduled;
+
+    private volatile boolean expired;
+
+    private Deadline(final Deadline parent, final long timeout, final TimeUnit unit, final UpgradeLogger logger) {
+        final long requested = System.nanoTime() + unit.toNanos(timeout);
+
+        this.parent = parent;
+        this.expiry = (parent != null && parent.expiry - requested < 0) ? parent.expiry : requested;
+        this.logger = logger;
+
+        if (parent != null && !parent.addExpiryAction(expire)) {
+            expired = true;
+            scheduled = null;
+        } else {
+            scheduled = SCHEDULER.schedule(expire, Math.max(0, expiry - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Establish a deadline the specified time from now, or at the {@link #current()} deadline if
+     * that is sooner.
+     * <p>
+     * The caller must {@link #close()} the deadline once the work it bounds has completed.
+     *
+     * @param timeout
+     *          the time from now by which work must complete
+     * @param unit
+     *          the unit of {@code timeout}
+     * @param logger
+     *          the logger to which failures of expiry actions are reported
+     * @return the new deadline
+     * @throws IllegalArgumentException
+     *          if {@code timeout} is not positive or {@code unit} or {@code logger} is
+     *          {@code null}
+     */
+    public static Deadline start(final long timeout, final TimeUnit unit, final UpgradeLogger logger) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("unit");
+        }
+        if (logger == null) {
+            throw new IllegalArgumentException("logger");
+        }
+
+        return new Deadline(CURRENT.get(), timeout, unit, logger);
+    }
+
+    /**
+     * @return the deadline within which the calling thread is executing, or {@code null} if
+     *          there is none
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @return {@code true} if the calling thread is executing within a deadline which has passed
+     */
+    public static boolean isCurrentExpired() {
+        final Deadline current = CURRENT.get();
+        return current != null && current.isExpired();
+    }
+
+    /**
+     * Wrap a {@link Callable} so that it executes within the {@link #current()} deadline of the
+     * calling thread, regardless of the thread on which it is executed.
+     */
+    static <V> Callable<V> bind(final Callable<V> callable) {
+        final Deadline deadline = CURRENT.get();
+        if (deadline == null) {
+            return callable;
+        }
+
+        return new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                return deadline.call(callable);
+            }
+        };
+    }
+
+    /**
+     * Execute a {@link Callable} on the calling thread within this deadline.
+     */
+    <V> V call(final Callable<V> callable) throws Exception {
+        final Deadline previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return callable.call();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * @param unit
+     *          the unit in which to express the result
+     * @return the time remaining before this deadline passes, or zero if it has passed
+     */
+    public long remaining(final TimeUnit unit) {
+        if (isExpired()) {
+            return 0;
+        }
+        return unit.convert(Math.max(0, expiry - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return {@code true} if this deadline has passed
+     */
+    public boolean isExpired() {
+        return expired || expiry - System.nanoTime() <= 0;
+    }
+
+    /**
+     * Register an action to run once this deadline passes.
+     * <p>
+     * Actions are run on a shared thread and must therefore not block for long.
+     *
+     * @param action
+     *          the action to run
+     * @return {@code true} if the action was registered, or {@code false} if this deadline has
+     *          already passed
+     * @throws IllegalArgumentException
+     *          if {@code action} is {@code null}
+     */
+    public synchronized boolean addExpiryAction(final Runnable action) {
+        if (action == null) {
+            throw new IllegalArgumentException("action");
+        }
+
+        if (expired) {
+            return false;
+        }
+
+        actions.add(action);
+        return true;
+    }
+
+    /**
+     * Deregister an action registered using {@link #addExpiryAction(Runnable)}.
+     * <p>
+     * Once this method returns, the action is not running and will not be run.
+     *
+     * @param action
+     *          the action to deregister
+     * @return {@code true} if the action was registered and had not been run
+     */
+    public synchronized boolean removeExpiryAction(final Runnable action) {
+        if (actions.remove(action)) {
+            return true;
+        }
+
+        boolean interrupted = false;
+        while (running == action) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private void expire() {
+        synchronized (this) {
+            if (expired) {
+                return;
+            }
+            expired = true;
+        }
+
+        // Actions run without holding the lock, one at a time, so that a slow action delays
+        // neither queries of this deadline nor the removal of actions which have not yet run
+        while (true) {
+            final Runnable action;
+            synchronized (this) {
+                final Iterator<Runnable> iterator = actions.iterator();
+                if (!iterator.hasNext()) {
+                    return;
+                }
+                action = iterator.next();
+                iterator.remove();
+                running = action;
+            }
+
+            try {
+                action.run();
+            } catch (final RuntimeException e) {
+                // An action failing must not prevent the remaining actions from running
+                logger.warn(e, "Expiry action {0} of {1} failed", action, this);
+            } finally {
+                synchronized (this) {
+                    running = null;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    /**
+     * Release the resources used to track this deadline. Expiry actions will not be run if this
+     * deadline subsequently passes.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            actions.clear();
+        }
+        if (scheduled != null) {
+            scheduled.cancel(false);
+        }
+        if (parent != null) {
+            parent.removeExpiryAction(expire);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline [remaining=" + remaining(TimeUnit.MILLISECONDS) + "ms]";
+    }
+}
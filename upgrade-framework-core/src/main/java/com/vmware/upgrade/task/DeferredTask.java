@@ -0,0 +1,199 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.task;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import com.vmware.upgrade.Task;
+import com.vmware.upgrade.progress.ExecutionState;
+import com.vmware.upgrade.progress.ProgressReport;
+import com.vmware.upgrade.progress.ProgressReporter;
+import com.vmware.upgrade.progress.Weighted;
+import com.vmware.upgrade.progress.impl.AbstractProgressReporter;
+
+/**
+ * A {@link Task} which creates the {@link Task} it executes only once it is itself executed.
+ * <p>
+ * The created {@link Task} is referenced only for the duration of {@link #call()}, so a sequence
+ * of {@link DeferredTask}s need only hold one of the {@link Task}s they create in memory at a
+ * time. Until then, progress is reported as {@link ExecutionState#PENDING}; afterwards, the
+ * progress of the created {@link Task} is reported. As its {@link Weighted weight} must be known
+ * before the {@link Task} is created, it is estimated by the creator of the {@link DeferredTask}.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class DeferredTask extends AbstractTask<DeferredTask.ForwardingReporter> implements Composite, Weighted {
+    /**
+     * A {@link ProgressReporter} which reports the progress of whichever {@link Task} it is
+     * listening to.
+     */
+    static final class ForwardingReporter extends AbstractProgressReporter implements ProgressReporter.ProgressListener {
+        @Override
+        public synchronized void reportProgress(final ProgressReport progress) {
+            if (getState().isTerminal()) {
+                return;
+            }
+
+            updateProgress(progress.getProgress());
+            updateState(progress.getState());
+        }
+
+        /**
+         * Report the supplied terminal state unless a terminal state has already been reported.
+         */
+        synchronized void terminateWith(final ExecutionState state) {
+            if (getState().isTerminal()) {
+                return;
+            }
+
+            if (getState() == ExecutionState.PENDING) {
+                updateState(ExecutionState.RUNNING);
+            }
+            if (state == ExecutionState.COMPLETED) {
+                updateProgress(100);
+            }
+            updateState(state);
+        }
+    }
+
+    private final Callable<? extends Task> factory;
+
+    private final long weight;
+
+    /**
+     * The {@link Task} being executed, if any.
+     */
+    private volatile Task current;
+
+    /**
+     * Constructs a named task with a weight of one which will execute the {@link Task} created by
+     * {@code factory}.
+     *
+     * @param name
+     *          see {@link Task#getName()}
+     * @param factory
+     *          creates the {@link Task} to execute; invoked once per call to {@link #call()}
+     * @throws IllegalArgumentException
+     *          if {@code name} or {@code factory} is {@code null}
+     */
+    public DeferredTask(final String name, final Callable<? extends Task> factory) {
+        this(name, factory, 1);
+    }
+
+    /**
+     * Constructs a named task with the specified weight which will execute the {@link Task}
+     * created by {@code factory}.
+     *
+     * @param name
+     *          see {@link Task#getName()}
+     * @param factory
+     *          creates the {@link Task} to execute; invoked once per call to {@link #call()}
+     * @param weight
+     *          the estimated {@link Weighted weight} of the created {@link Task}
+     * @throws IllegalArgumentException
+     *          if {@code name} or {@code factory} is {@code null} or {@code weight} is negative
+     */
+    public DeferredTask(final String name, final Callable<? extends Task> factory, final long weight) {
+        super(name);
+
+        if (factory == null) {
+            throw new IllegalArgumentException("factory");
+        }
+        if (weight < 0) {
+            throw new IllegalArgumentException("weight");
+        }
+
+        this.factory = factory;
+        this.weight = weight;
+
+        setReporter(new ForwardingReporter());
+    }
+
+    @Override
+    public long getWeight() {
+        return weight;
+    }
+
+    /**
+     * @return a list containing the created {@link Task} while it executes, otherwise an empty list
+     */
+    @Override
+    public List<Task> getChildren() {
+        final Task task = current;
+        return (task == null) ? Collections.<Task>emptyList() : Collections.singletonList(task);
+    }
+
+    /**
+     * Create the {@link Task}.
+     *
+     * @return the {@link Task} to execute
+     * @throws Exception
+     *          if the {@link Task} cannot be created
+     */
+    protected Task createTask() throws Exception {
+        final Task task = factory.call();
+        if (task == null) {
+            throw new IllegalStateException(getName() + ": No task was created");
+        }
+        return task;
+    }
+
+    /**
+     * Create the {@link Task}, execute it and release it.
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public Void call() throws Exception {
+        final ForwardingReporter reporter = getReporter();
+        try {
+            final Task task = createTask();
+            current = task;
+            task.addListener(reporter);
+            try {
+                task.requestProgressReport();
+                Children.execute(task, 0);
+                task.requestProgressReport();
+            } finally {
+                task.removeListener(reporter);
+                current = null;
+            }
+        } catch (Exception e) {
+            reporter.terminateWith(Deadline.isCurrentExpired() ? ExecutionState.TIMED_OUT : ExecutionState.FAILED);
+            throw e;
+        }
+
+        // The created task may not report its own completion (e.g. if it is not an AbstractTask)
+        reporter.terminateWith(ExecutionState.COMPLETED);
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "Deferred " + getName();
+    }
+}
@@ -0,0 +1,384 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+package com.vmware.upgrade.task;
+
+import java.io.Closeable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A registry of named, bounded {@link ExecutorService}s intended to be shared by all of the
+ * {@link ParallelAggregateTask}s created for an upgrade.
+ * <p>
+ * Pools are created lazily on first {@linkplain #getExecutor(String) lookup} and are sized
+ * according to any {@linkplain #setPoolSize(String, int) explicitly configured} size or the
+ * registry-wide default.
+ * <p>
+ * Each pool is a work-stealing {@link ForkJoinPool} whose size is its target parallelism. A
+ * {@link ParallelAggregateTask} waits for its children using {@link ForkJoinPool#managedBlock},
+ * so while a parent blocks a pool thread the pool may start a spare thread to run the queued
+ * children. Nested {@code parallel} blocks can therefore share a single pool without starving or
+ * deadlocking, provided that no more than {@value #MAX_SPARE_THREADS} of its threads are blocked
+ * waiting at once. An aggregate which would need a further spare thread fails with a
+ * {@link java.util.concurrent.RejectedExecutionException} rather than waiting for children which
+ * no thread is available to run. Pool threads are daemon threads and are allowed to time out when idle,
+ * so a registry which is not explicitly {@linkplain #close() closed} neither retains threads after
+ * the upgrade has finished executing nor prevents the JVM from exiting.
+ * <p>
+ * On runtimes which support them, the registry can also provide an executor which runs each
+ * submitted task on its own virtual thread. This suits wide {@link ParallelAggregateTask}s of
+ * I/O-bound children, which would otherwise each hold a platform thread while blocked.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class ExecutorRegistry implements Closeable {
+    /**
+     * The name of the pool used when no pool is explicitly requested.
+     */
+    public static final String DEFAULT_POOL = "default";
+
+    /**
+     * The number of threads in a pool for which no size has been configured.
+     */
+    public static final int DEFAULT_POOL_SIZE = 10;
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * The maximum number of spare threads a pool may start to compensate for blocked threads
+     * (matching the limit of {@link ForkJoinPool#commonPool()}).
+     */
+    public static final int MAX_SPARE_THREADS = 256;
+
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor()}, or {@code null} if the runtime does
+     * not support virtual threads.
+     */
+    private static final Method VIRTUAL_THREAD_EXECUTOR_FACTORY = findVirtualThreadExecutorFactory();
+
+    /**
+     * A point-in-time snapshot of the utilization of a pool within an {@link ExecutorRegistry}.
+     */
+    public static final class PoolStatistics {
+        private final String name;
+        private final int parallelism;
+        private final int poolSize;
+        private final int activeCount;
+        private final long queueSize;
+        private final long stealCount;
+
+        private PoolStatistics(final String name, final ForkJoinPool executor) {
+            this.name = name;
+            this.parallelism = executor.getParallelism();
+            this.poolSize = executor.getPoolSize();
+            this.activeCount = executor.getActiveThreadCount();
+            this.queueSize = executor.getQueuedSubmissionCount() + executor.getQueuedTaskCount();
+            this.stealCount = executor.getStealCount();
+        }
+
+        /**
+         * @return the name of the pool
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the number of threads the pool keeps running, excluding spare threads started
+         *          to compensate for blocked threads
+         */
+        public int getParallelism() {
+            return parallelism;
+        }
+
+        /**
+         * @return the number of threads currently in the pool, including spare threads
+         */
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        /**
+         * @return the approximate number of threads actively executing tasks
+         */
+        public int getActiveCount() {
+            return activeCount;
+        }
+
+        /**
+         * @return the approximate number of tasks waiting for a thread
+         */
+        public long getQueueSize() {
+            return queueSize;
+        }
+
+        /**
+         * @return the approximate number of tasks executed by a thread other than the one which
+         *          queued them
+         */
+        public long getStealCount() {
+            return stealCount;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder(name);
+            builder.append(" {");
+            builder.append("threads: ").append(poolSize).append("/").append(parallelism).append(", ");
+            builder.append("active: ").append(activeCount).append(", ");
+            builder.append("queued: ").append(queueSize).append(", ");
+            builder.append("steals: ").append(stealCount);
+            builder.append("}");
+            return builder.toString();
+        }
+    }
+
+    /**
+     * A {@link ForkJoinPool.ForkJoinWorkerThreadFactory} producing daemon threads named after the
+     * pool they belong to.
+     */
+    private static final class PoolThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+        private final String prefix;
+        private final AtomicInteger count = new AtomicInteger();
+
+        PoolThreadFactory(final String name) {
+            this.prefix = "upgrade-" + name + "-";
+        }
+
+        @Override
+        public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+            final ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {};
+            thread.setName(prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    private final int defaultPoolSize;
+
+    private final ConcurrentMap<String, Integer> poolSizes = new ConcurrentHashMap<String, Integer>();
+
+    private final ConcurrentMap<String, ForkJoinPool> executors = new ConcurrentHashMap<String, ForkJoinPool>();
+
+    private ExecutorService virtualThreadExecutor;
+
+    private volatile boolean closed;
+
+    /**
+     * Constructs a registry whose pools default to {@link #DEFAULT_POOL_SIZE} threads.
+     */
+    public ExecutorRegistry() {
+        this(DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * Constructs a registry whose pools default to the supplied number of threads.
+     *
+     * @param defaultPoolSize
+     *          the number of threads in a pool for which no size has been configured
+     * @throws IllegalArgumentException
+     *          if {@code defaultPoolSize <= 0}
+     */
+    public ExecutorRegistry(final int defaultPoolSize) {
+        if (defaultPoolSize <= 0) {
+            throw new IllegalArgumentException("defaultPoolSize");
+        }
+
+        this.defaultPoolSize = defaultPoolSize;
+    }
+
+    /**
+     * Configure the number of threads in the named pool.
+     * <p>
+     * This must be called before the pool is first {@linkplain #getExecutor(String) retrieved}.
+     *
+     * @param name
+     *          the name of the pool
+     * @param size
+     *          the number of threads in the pool
+     * @throws IllegalArgumentException
+     *          if {@code name} is {@code null} or {@code size <= 0}
+     * @throws IllegalStateException
+     *          if the pool has already been created
+     */
+    public void setPoolSize(final String name, final int size) {
+        if (name == null) {
+            throw new IllegalArgumentException("name");
+        }
+        if (size <= 0) {
+            throw new IllegalArgumentException("size");
+        }
+        if (executors.containsKey(name)) {
+            throw new IllegalStateException("Pool " + name + " has already been created");
+        }
+
+        poolSizes.put(name, size);
+    }
+
+    /**
+     * Retrieve the {@link ExecutorService} backing the named pool, creating it if necessary.
+     *
+     * @param name
+     *          the name of the pool, or {@code null} for the {@link #DEFAULT_POOL}
+     * @return the shared {@link ExecutorService} for the pool
+     * @throws IllegalStateException
+     *          if the registry has been {@linkplain #close() closed}
+     */
+    public ExecutorService getExecutor(final String name) {
+        final String poolName = (name == null) ? DEFAULT_POOL : name;
+
+        ForkJoinPool executor = executors.get(poolName);
+        if (executor == null) {
+            if (closed) {
+                throw new IllegalStateException("ExecutorRegistry is closed");
+            }
+
+            final ForkJoinPool created = createExecutor(poolName);
+            executor = executors.putIfAbsent(poolName, created);
+            if (executor == null) {
+                executor = created;
+            } else {
+                created.shutdown();
+            }
+        }
+
+        return executor;
+    }
+
+    /**
+     * Determine whether the current runtime supports virtual threads (JDK 21 or later).
+     *
+     * @return {@code true} if {@link #getVirtualThreadExecutor()} can be used
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VIRTUAL_THREAD_EXECUTOR_FACTORY != null;
+    }
+
+    /**
+     * Retrieve the shared {@link ExecutorService} which runs each submitted task on a new virtual
+     * thread, creating it if necessary.
+     * <p>
+     * Unlike the named pools, this executor is unbounded and its threads are cheap to block, so
+     * it needs no sizing.
+     *
+     * @return the shared virtual thread {@link ExecutorService}
+     * @throws UnsupportedOperationException
+     *          if the runtime does not {@linkplain #isVirtualThreadSupported() support} virtual
+     *          threads
+     * @throws IllegalStateException
+     *          if the registry has been {@linkplain #close() closed}
+     */
+    public synchronized ExecutorService getVirtualThreadExecutor() {
+        if (VIRTUAL_THREAD_EXECUTOR_FACTORY == null) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+        }
+
+        if (virtualThreadExecutor == null) {
+            if (closed) {
+                throw new IllegalStateException("ExecutorRegistry is closed");
+            }
+
+            try {
+                virtualThreadExecutor = (ExecutorService) VIRTUAL_THREAD_EXECUTOR_FACTORY.invoke(null);
+            } catch (final IllegalAccessException e) {
+                throw new UnsupportedOperationException("Virtual threads are not accessible", e);
+            } catch (final InvocationTargetException e) {
+                throw new UnsupportedOperationException("Virtual threads are not available", e.getCause());
+            }
+        }
+
+        return virtualThreadExecutor;
+    }
+
+    /**
+     * Returns a snapshot of the utilization of each pool created so far.
+     *
+     * @return an unmodifiable mapping of pool name to {@link PoolStatistics}
+     */
+    public Map<String, PoolStatistics> getStatistics() {
+        final Map<String, PoolStatistics> statistics = new LinkedHashMap<String, PoolStatistics>();
+
+        for (final Map.Entry<String, ForkJoinPool> entry : executors.entrySet()) {
+            statistics.put(entry.getKey(), new PoolStatistics(entry.getKey(), entry.getValue()));
+        }
+
+        return Collections.unmodifiableMap(statistics);
+    }
+
+    /**
+     * Shut down all pools. Tasks which have already been submitted are allowed to complete, but
+     * no further pools can be retrieved from this registry.
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        for (final ForkJoinPool executor : executors.values()) {
+            executor.shutdown();
+        }
+
+        synchronized (this) {
+            if (virtualThreadExecutor != null) {
+                virtualThreadExecutor.shutdown();
+            }
+        }
+    }
+
+    private static Method findVirtualThreadExecutorFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (final NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private ForkJoinPool createExecutor(final String name) {
+        final Integer configuredSize = poolSizes.get(name);
+        final int size = (configuredSize == null) ? defaultPoolSize : configuredSize;
+
+        return new ForkJoinPool(
+                size,
+                new PoolThreadFactory(name),
+                null,
+                true,
+                0,
+                size + MAX_SPARE_THREADS,
+                1,
+                null,
+                KEEP_ALIVE_SECONDS,
+                TimeUnit.SECONDS
+        );
+    }
+}
@@ -0,0 +1,148 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+package com.vmware.upgrade.task;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vmware.upgrade.Task;
+import com.vmware.upgrade.UpgradeDefinition;
+import com.vmware.upgrade.logging.AsyncLogger;
+
+/**
+ * A {@link Task} which waits for the events buffered by an {@link AsyncLogger} to be written once
+ * its delegate task fails or, if it is the final {@link Task} of an upgrade, completes.
+ * <p>
+ * The wait happens before this task reports its terminal state and is not cut short by an
+ * interrupt, so the events logged by an upgrade which is cancelled are written too.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public final class LogFlushingTask extends AbstractDelegatingTask {
+    private final AsyncLogger logger;
+
+    private final boolean isLast;
+
+    /**
+     * Constructs a named task which flushes the supplied {@link AsyncLogger} around the delegate
+     * task.
+     *
+     * @param name
+     *          see {@link Task#getName()}
+     * @param task
+     *          the delegate to execute
+     * @param logger
+     *          the {@link AsyncLogger} to flush
+     * @param isLast
+     *          whether to flush once the delegate task completes as well as when it fails
+     * @throws IllegalArgumentException
+     *          if {@code task} or {@code logger} is {@code null}
+     */
+    public LogFlushingTask(final String name, final Task task, final AsyncLogger logger, final boolean isLast) {
+        super(name, task);
+
+        if (logger == null) {
+            throw new IllegalArgumentException("logger");
+        }
+
+        this.logger = logger;
+        this.isLast = isLast;
+    }
+
+    /**
+     * Ensure that every event logged via {@code logger} by the execution of an
+     * {@link UpgradeDefinition} has been written once it completes or fails.
+     * <p>
+     * Each {@link Task} of the returned {@link UpgradeDefinition} is a {@link LogFlushingTask}
+     * wrapping the corresponding {@link Task} of {@code definition}.
+     *
+     * @param definition
+     *          the {@link UpgradeDefinition} to be executed
+     * @param logger
+     *          the {@link AsyncLogger} to flush
+     * @return an {@link UpgradeDefinition} wrapping the {@link Task}s of {@code definition}
+     * @throws IllegalArgumentException
+     *          if {@code definition} or {@code logger} is {@code null}
+     */
+    public static UpgradeDefinition flushOn(final UpgradeDefinition definition, final AsyncLogger logger) {
+        if (definition == null) {
+            throw new IllegalArgumentException("definition");
+        }
+        if (logger == null) {
+            throw new IllegalArgumentException("logger");
+        }
+
+        final List<Task> tasks = definition.getUpgradeTasks();
+        final List<Task> wrapped = new ArrayList<Task>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            final Task task = tasks.get(i);
+            wrapped.add(new LogFlushingTask(task.getName(), task, logger, i == tasks.size() - 1));
+        }
+
+        return new UpgradeDefinition() {
+            @Override
+            public List<Task> getUpgradeTasks() {
+                return wrapped;
+            }
+        };
+    }
+
+    @Override
+    protected void doCall() throws Exception {
+        try {
+            super.doCall();
+        } catch (Exception e) {
+            flushUninterruptibly();
+            throw e;
+        }
+        if (isLast) {
+            flushUninterruptibly();
+        }
+    }
+
+    /**
+     * Wait for the buffered events to be written, retrying if interrupted and restoring the
+     * interrupt once they have been.
+     */
+    private void flushUninterruptibly() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                logger.flush();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    protected String describe() {
+        return "Log flush around " + getDelegateTask().getName();
+    }
+}
@@ -24,16 +24,28 @@ package com.vmware.upgrade.task;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeoutException;
 
 import com.vmware.upgrade.Task;
 import com.vmware.upgrade.UpgradeContext;
 import com.vmware.upgrade.logging.UpgradeLogger;
+import com.vmware.upgrade.progress.ExecutionState;
 
 /**
  * A {@link Task} which aggregates other {@link Task}s and executes them in parallel
+ * <p>
+ * While waiting for its children, the task blocks using {@link ForkJoinPool#managedBlock}. When
+ * it is itself executing in a {@link ForkJoinPool}, the pool may therefore start a spare thread to
+ * run queued children (including those of nested {@link ParallelAggregateTask}s) so that nested
+ * aggregates sharing a pool do not deadlock.
  *
  * @author Zach Shepherd shepherdz@vmware.com
  * @version 1.0
@@ -76,34 +88,76 @@ public final class ParallelAggregateTask extends AbstractAggregateTask {
         logger = context.getLogger(getClass());
     }
 
+    /**
+     * Executes all children, failing as soon as any child fails.
+     * <p>
+     * Failures are detected in the order in which children complete rather than the order in which
+     * they were submitted. When a child fails, or this task is interrupted while waiting, every
+     * child which has not yet completed is cancelled: queued children are never started and
+     * running children are interrupted so that they may stop cooperatively.
+     *
+     * @throws ExecutionException
+     *          if a child fails; the remaining children are cancelled and this task is reported
+     *          as {@link ExecutionState#FAILED}
+     * @throws TimeoutException
+     *          if the {@link Deadline} within which this task is executing passes; the children are
+     *          cancelled and this task is reported as {@link ExecutionState#TIMED_OUT}
+     * @throws InterruptedException
+     *          if this task is interrupted while waiting; the children are cancelled and this task
+     *          is reported as {@link ExecutionState#CANCELLED}
+     * @throws CancellationException
+     *          if a child is cancelled by a party other than this task; the remaining children are
+     *          cancelled and this task is reported as {@link ExecutionState#CANCELLED}
+     * @throws RejectedExecutionException
+     *          if this task is executing in an {@link ExecutorRegistry} pool which cannot start a
+     *          spare thread to run the children while this task waits; the children are cancelled
+     *          and this task is reported as {@link ExecutionState#FAILED}
+     */
     @Override
-    public Void call() throws InterruptedException, ExecutionException {
+    public Void call() throws InterruptedException, ExecutionException, TimeoutException {
         logger.trace("{0}: Beginning execution", getName());
 
+        final Deadline deadline = Deadline.current();
+        final CompletionService<Void> completionService = new ExecutorCompletionService<Void>(executor);
+        final CompletionBlocker blocker = new CompletionBlocker(completionService, deadline);
         final List<Future<Void>> futures = new ArrayList<Future<Void>>(getChildren().size());
 
-        for (final Task task : getChildren()) {
-            logger.debug("{0}: Queueing execution of task {1}", getName(), task.getName());
-            final Future<Void> future = executor.submit(task);
-            futures.add(future);
-        }
+        try {
+            final List<Task> children = getChildren();
+            for (int i = 0; i < children.size(); i++) {
+                final Task task = children.get(i);
+                logger.debug("{0}: Queueing execution of task {1}", getName(), task.getName());
+                final Future<Void> future = completionService.submit(Deadline.bind(Children.bind(task, i)));
+                futures.add(future);
+            }
 
-        for (final Future<Void> future : futures) {
-            try {
-                future.get();
-            } catch (final InterruptedException e) {
-                logger.warn(e, "{0}: Task failed due to uncaught exception", getName());
-                getReporter().terminateWithFailure();
-                throw e;
-            } catch (final ExecutionException e) {
-                logger.warn(e, "{0}: Task failed due to uncaught exception", getName());
-                getReporter().terminateWithFailure();
-                throw e;
+            for (int remaining = futures.size(); remaining > 0; remaining--) {
+                blocker.take().get();
             }
+        } catch (final Exception e) {
+            terminate(e, deadline, logger, new Runnable() {
+                @Override
+                public void run() {
+                    cancelIncomplete(futures);
+                }
+            });
         }
 
         logger.trace("{0}: Completed successfully", getName());
 
         return null;
     }
+
+    private void cancelIncomplete(final List<Future<Void>> futures) {
+        int cancelled = 0;
+        for (final Future<Void> future : futures) {
+            if (future.cancel(true)) {
+                cancelled++;
+            }
+        }
+
+        if (cancelled > 0) {
+            logger.info("{0}: Cancelled {1} of {2} task(s)", getName(), cancelled, futures.size());
+        }
+    }
 }
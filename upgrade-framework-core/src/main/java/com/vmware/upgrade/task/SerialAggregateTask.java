@@ -60,13 +60,19 @@ public final class SerialAggregateTask extends AbstractAggregateTask {
         logger.trace("{0}: Beginning execution", getName());
 
         try {
-            for (final Task child : getChildren()) {
+            final List<Task> children = getChildren();
+            for (int i = 0; i < children.size(); i++) {
+                final Task child = children.get(i);
                 logger.debug("{0}: Beginning execution of task {1}", getName(), child.getName());
-                child.call();
+                Children.execute(child, i);
             }
         } catch (Exception e) {
             logger.warn(e, "{0}: Task failed due to uncaught exception", getName());
-            getReporter().terminateWithFailure();
+            if (Deadline.isCurrentExpired()) {
+                getReporter().terminateWithTimeout();
+            } else {
+                getReporter().terminateWithFailure();
+            }
             throw e;
         }
 
@@ -0,0 +1,149 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.task;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.vmware.upgrade.Task;
+import com.vmware.upgrade.UpgradeContext;
+import com.vmware.upgrade.logging.UpgradeLogger;
+import com.vmware.upgrade.progress.ExecutionState;
+
+/**
+ * A {@link Task} which executes another {@link Task} within a {@link Deadline}.
+ * <p>
+ * The deadline applies to the whole of the delegate task, including any tasks it aggregates. If
+ * the deadline passes, the thread executing this task is interrupted, aggregates stop waiting for
+ * and cancel their children, and tasks which have registered an expiry action with the
+ * {@link Deadline} (e.g. to cancel a database statement) have that action run. The timeout is
+ * reported as {@link ExecutionState#TIMED_OUT} rather than {@link ExecutionState#FAILED}.
+ * <p>
+ * If this task is executed within an existing deadline which passes sooner, that deadline applies.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public final class TimeoutTask extends AbstractDelegatingTask {
+    private final UpgradeLogger logger;
+
+    private final long timeout;
+
+    private final TimeUnit unit;
+
+    /**
+     * Constructs a named task executing the delegate task within the specified time.
+     *
+     * @param context
+     *          the {@link UpgradeContext}
+     * @param name
+     *          see {@link Task#getName()}
+     * @param task
+     *          the delegate to execute
+     * @param timeout
+     *          the maximum time for which the delegate may execute
+     * @param unit
+     *          the unit of {@code timeout}
+     * @throws IllegalArgumentException
+     *          if {@code task} or {@code unit} is {@code null} or {@code timeout} is not positive
+     */
+    public TimeoutTask(final UpgradeContext context, final String name, final Task task, final long timeout, final TimeUnit unit) {
+        super(name, task);
+
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("timeout");
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("unit");
+        }
+
+        this.timeout = timeout;
+        this.unit = unit;
+
+        logger = context.getLogger(getClass());
+    }
+
+    /**
+     * Executes the delegate task within the deadline.
+     *
+     * @throws TimeoutException
+     *          if the deadline passes before the delegate task completes; the exception thrown by
+     *          the delegate task, if any, is the cause
+     * @throws Exception
+     *          if the delegate task throws an exception before the deadline passes
+     */
+    @Override
+    protected void doCall() throws Exception {
+        final Thread thread = Thread.currentThread();
+        final Runnable interrupt = new Runnable() {
+            @Override
+            public void run() {
+                thread.interrupt();
+            }
+        };
+
+        final Deadline deadline = Deadline.start(timeout, unit, logger);
+        boolean registered = false;
+        try {
+            registered = deadline.addExpiryAction(interrupt);
+            if (!registered) {
+                throw new TimeoutException(getName() + ": Deadline passed before execution began");
+            }
+
+            deadline.call(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    TimeoutTask.super.doCall();
+                    return null;
+                }
+            });
+        } catch (final Exception e) {
+            if (!deadline.isExpired()) {
+                throw e;
+            }
+
+            logger.warn(e, "{0}: Did not complete within {1} {2}", getName(), timeout, unit);
+            getReporter().terminateWithTimeout();
+            if (e instanceof TimeoutException && !registered) {
+                throw e;
+            }
+
+            final TimeoutException timeoutException = new TimeoutException(getName() + ": Did not complete within " + timeout + " " + unit);
+            timeoutException.initCause(e);
+            throw timeoutException;
+        } finally {
+            if (registered && !deadline.removeExpiryAction(interrupt)) {
+                // The interrupt was delivered by the deadline rather than a party to which it is meaningful
+                Thread.interrupted();
+            }
+            deadline.close();
+        }
+    }
+
+    @Override
+    protected String describe() {
+        return "Timeout of " + timeout + " " + unit + " around " + getDelegateTask().getName();
+    }
+}
@@ -55,7 +55,7 @@ public class TrivialTask extends AbstractSimpleTask {
             callable.call();
             incrementProgress();
         } catch (Exception e) {
-            setState(ExecutionState.FAILED);
+            setState(Deadline.isCurrentExpired() ? ExecutionState.TIMED_OUT : ExecutionState.FAILED);
             throw e;
         }
         setState(ExecutionState.COMPLETED);
@@ -55,9 +55,21 @@
  *     <dt>{@link com.vmware.upgrade.task.AbstractDelegatingTask}</dt>
  *     <dd>A base class from which {@link com.vmware.upgrade.Task}s which perform wrap another
  *          {@link com.vmware.upgrade.Task} (e.g. in order to add functionality) can be built.</dd>
+ *     <dd>
+ *       <dl>
+ *         <dt>{@link com.vmware.upgrade.task.TimeoutTask}</dt>
+ *         <dd>Executes a {@link com.vmware.upgrade.Task} within a
+ *              {@link com.vmware.upgrade.task.Deadline}.</dd>
+ *       </dl>
+ *     </dd>
+ *     <dt>{@link com.vmware.upgrade.task.DeferredTask}</dt>
+ *     <dd>Creates the {@link com.vmware.upgrade.Task} it executes only once it is executed.</dd>
  *   </dl>
  * </dd>
  * </dl>
+ * Each of the aggregating, delegating and deferred {@link com.vmware.upgrade.Task}s is a
+ * {@link com.vmware.upgrade.task.Composite}, exposing the {@link com.vmware.upgrade.Task}s beneath
+ * it so that the tree can be inspected while it executes.
  *
  * @since 1.0
  */
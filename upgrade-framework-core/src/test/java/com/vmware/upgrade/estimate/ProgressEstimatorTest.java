@@ -0,0 +1,262 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.estimate;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.upgrade.DummyUpgradeContext;
+import com.vmware.upgrade.Task;
+import com.vmware.upgrade.TestGroups;
+import com.vmware.upgrade.progress.ExecutionState;
+import com.vmware.upgrade.task.AbstractSimpleTask;
+import com.vmware.upgrade.task.SerialAggregateTask;
+import com.vmware.upgrade.task.TrivialTask;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for {@link ProgressEstimator}
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class ProgressEstimatorTest {
+    /**
+     * A {@link Clock} which advances only when instructed.
+     */
+    private static final class ManualClock extends Clock {
+        private long millis;
+
+        void advance(final long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(final ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * A {@link DurationHistory} which retains the latest duration recorded for each task.
+     */
+    private static final class MemoryDurationHistory implements DurationHistory {
+        private final Map<String, Long> durations = new HashMap<String, Long>();
+
+        @Override
+        public long getDuration(final String key) {
+            final Long duration = durations.get(key);
+            return (duration == null) ? -1 : duration;
+        }
+
+        @Override
+        public void recordDuration(final String key, final long millis) {
+            durations.put(key, millis);
+        }
+    }
+
+    /**
+     * A task which advances the clock by a fixed amount for each of a number of steps, checking the
+     * estimate after each.
+     */
+    private static final class SteppingTask extends AbstractSimpleTask {
+        private final ManualClock clock;
+        private final long stepMillis;
+        private final int steps;
+        private ProgressEstimator estimator;
+        private long estimateAfterFirstStep;
+
+        SteppingTask(final String name, final ManualClock clock, final long stepMillis, final int steps) {
+            super(name, steps);
+            this.clock = clock;
+            this.stepMillis = stepMillis;
+            this.steps = steps;
+        }
+
+        @Override
+        public Void call() {
+            setState(ExecutionState.RUNNING);
+            for (int i = 0; i < steps; i++) {
+                clock.advance(stepMillis);
+                incrementProgress();
+                if (i == 0) {
+                    estimateAfterFirstStep = estimator.getEstimatedRemaining(TimeUnit.MILLISECONDS);
+                }
+            }
+            setState(ExecutionState.COMPLETED);
+
+            return null;
+        }
+    }
+
+    private static Task advancingTask(final String name, final ManualClock clock, final long millis) {
+        return new TrivialTask(name, new Callable<Void>() {
+            @Override
+            public Void call() {
+                clock.advance(millis);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Verify that durations recorded by previous executions are used to estimate the time
+     * remaining and that the durations of this execution are recorded
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testEstimateFromHistory() throws Exception {
+        final ManualClock clock = new ManualClock();
+        final MemoryDurationHistory history = new MemoryDurationHistory();
+        history.recordDuration("first", 1000);
+        history.recordDuration("second", 3000);
+
+        final long[] midway = new long[1];
+        final ProgressEstimator[] estimator = new ProgressEstimator[1];
+        final Task first = new TrivialTask("first", new Callable<Void>() {
+            @Override
+            public Void call() {
+                clock.advance(400);
+                midway[0] = estimator[0].getEstimatedRemaining(TimeUnit.MILLISECONDS);
+                return null;
+            }
+        });
+        final Task second = advancingTask("second", clock, 1000);
+
+        estimator[0] = new ProgressEstimator(Arrays.asList(first, second), history, clock);
+        Assert.assertEquals(estimator[0].getEstimatedRemaining(TimeUnit.MILLISECONDS), 4000);
+        Assert.assertEquals(estimator[0].getEstimatedRemaining(TimeUnit.SECONDS), 4);
+
+        first.call();
+        Assert.assertEquals(midway[0], 3600);
+        Assert.assertEquals(estimator[0].getEstimatedRemaining(TimeUnit.MILLISECONDS), 3000);
+        Assert.assertEquals(history.getDuration("first"), 400);
+
+        second.call();
+        Assert.assertEquals(estimator[0].getEstimatedRemaining(TimeUnit.MILLISECONDS), 0);
+        Assert.assertEquals(history.getDuration("second"), 1000);
+    }
+
+    /**
+     * Verify that, without history, the estimate is derived from the progress of the executing
+     * task and the time taken by those which have completed
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testEstimateWithoutHistory() throws Exception {
+        final ManualClock clock = new ManualClock();
+        final SteppingTask first = new SteppingTask("first", clock, 100, 4);
+        final SteppingTask second = new SteppingTask("second", clock, 100, 4);
+
+        final ProgressEstimator estimator = new ProgressEstimator(Arrays.asList(first, second), new MemoryDurationHistory(), clock);
+        first.estimator = estimator;
+        second.estimator = estimator;
+        Assert.assertEquals(estimator.getEstimatedRemaining(TimeUnit.MILLISECONDS), -1);
+
+        first.call();
+        Assert.assertEquals(first.estimateAfterFirstStep, -1, "The second task is not yet estimable");
+        Assert.assertEquals(estimator.getEstimatedRemaining(TimeUnit.MILLISECONDS), 400);
+
+        second.estimator = new ProgressEstimator(Arrays.asList(second), new MemoryDurationHistory(), clock);
+        second.call();
+        Assert.assertEquals(second.estimateAfterFirstStep, 300);
+    }
+
+    /**
+     * Verify that the children of composite tasks are tracked and that completed leaves are
+     * counted towards the throughput
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testCompositeExpansion() throws Exception {
+        final ManualClock clock = new ManualClock();
+        final MemoryDurationHistory history = new MemoryDurationHistory();
+
+        final List<Task> children = Arrays.asList(
+                advancingTask("a", clock, 100),
+                advancingTask("b", clock, 100),
+                advancingTask("c", clock, 100));
+        final Task serial = new SerialAggregateTask(new DummyUpgradeContext(), "serial", children);
+
+        final double[] throughput = new double[1];
+        final ProgressEstimator estimator = new ProgressEstimator(Arrays.asList(serial), history, clock);
+        estimator.addListener(new ProgressEstimator.EstimateListener() {
+            @Override
+            public void reportEstimate(final long remainingMillis, final double leavesPerSecond) {
+                throughput[0] = leavesPerSecond;
+            }
+        });
+        Assert.assertEquals(estimator.getLeafThroughput(), 0.0);
+
+        serial.call();
+
+        Assert.assertEquals(estimator.getLeafThroughput(), 10.0, 0.001);
+        Assert.assertEquals(throughput[0], 10.0, 0.001);
+        Assert.assertEquals(history.getDuration("serial/0:a"), 100);
+        Assert.assertEquals(history.getDuration("serial/2:c"), 100);
+        Assert.assertEquals(history.getDuration("serial"), 300);
+    }
+
+    /**
+     * Verify that the durations of tasks which share a name are recorded separately
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testDuplicateNamesAreDistinct() throws Exception {
+        final ManualClock clock = new ManualClock();
+        final MemoryDurationHistory history = new MemoryDurationHistory();
+
+        final List<Task> children = Arrays.asList(
+                advancingTask("same", clock, 100),
+                advancingTask("same", clock, 200));
+        final Task serial = new SerialAggregateTask(new DummyUpgradeContext(), "serial", children);
+
+        new ProgressEstimator(Arrays.asList(serial), history, clock);
+        serial.call();
+
+        Assert.assertEquals(history.getDuration("serial/0:same"), 100);
+        Assert.assertEquals(history.getDuration("serial/1:same"), 200);
+    }
+}
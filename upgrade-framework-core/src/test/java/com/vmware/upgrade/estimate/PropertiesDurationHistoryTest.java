@@ -0,0 +1,87 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.estimate;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.vmware.upgrade.TestGroups;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for {@link PropertiesDurationHistory}
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class PropertiesDurationHistoryTest {
+    private File file;
+
+    @BeforeMethod(groups = { TestGroups.UNIT })
+    public void createFile() throws IOException {
+        file = File.createTempFile("durations", ".properties");
+        Assert.assertTrue(file.delete());
+    }
+
+    @AfterMethod(groups = { TestGroups.UNIT })
+    public void deleteFile() {
+        file.delete();
+    }
+
+    /**
+     * Verify that a history which has never been saved knows no durations
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testReadMissing() throws IOException {
+        Assert.assertEquals(new PropertiesDurationHistory(file).getDuration("task"), -1);
+    }
+
+    /**
+     * Verify that recorded durations are averaged and read back by another instance once saved
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testRoundTrip() throws IOException {
+        final PropertiesDurationHistory history = new PropertiesDurationHistory(file);
+        history.recordDuration("task", 1000);
+        Assert.assertEquals(history.getDuration("task"), 1000);
+        history.recordDuration("task", 3000);
+        Assert.assertEquals(history.getDuration("task"), 2000);
+
+        Assert.assertEquals(new PropertiesDurationHistory(file).getDuration("task"), -1);
+        history.save();
+        Assert.assertEquals(new PropertiesDurationHistory(file).getDuration("task"), 2000);
+    }
+
+    /**
+     * Verify that negative durations are rejected
+     */
+    @Test(groups = { TestGroups.UNIT }, expectedExceptions = { IllegalArgumentException.class })
+    public void testNegativeDuration() throws IOException {
+        new PropertiesDurationHistory(file).recordDuration("task", -1);
+    }
+}
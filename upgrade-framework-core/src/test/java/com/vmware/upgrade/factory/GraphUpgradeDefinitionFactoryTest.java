@@ -22,18 +22,29 @@
 
 package com.vmware.upgrade.factory;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.vmware.upgrade.DummyUpgradeContext;
 import com.vmware.upgrade.Task;
 import com.vmware.upgrade.TestGroups;
 import com.vmware.upgrade.UpgradeContext;
 import com.vmware.upgrade.UpgradeDefinition;
+import com.vmware.upgrade.journal.ExecutionJournal;
+import com.vmware.upgrade.journal.FileExecutionJournal;
 import com.vmware.upgrade.sequencing.AbstractGraph;
+import com.vmware.upgrade.sequencing.Graph.Edge;
 import com.vmware.upgrade.sequencing.Version;
+import com.vmware.upgrade.task.SerialAggregateTask;
+import com.vmware.upgrade.task.TrivialTask;
 
 import org.easymock.EasyMock;
 import org.testng.Assert;
@@ -85,4 +96,302 @@ public class GraphUpgradeDefinitionFactoryTest {
 
         Assert.assertEquals(definition.getUpgradeTasks().size(), 0);
     }
+
+    /**
+     * Verify that an upgrade interrupted part way through is resumed from the transition
+     * version, repeating only the tasks which had not completed
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void verifyResume() throws Exception {
+        final Version target = Version.INITIAL.getNext();
+        final AtomicInteger first = new AtomicInteger();
+        final AtomicInteger second = new AtomicInteger();
+        final boolean[] failing = { true };
+
+        final UpgradeContext context = new DummyUpgradeContext() {
+            private volatile Version version = Version.INITIAL;
+
+            @Override
+            public Version getVersion() {
+                return version;
+            }
+
+            @Override
+            public void setVersion(Version version) {
+                this.version = version;
+            }
+        };
+
+        final AbstractGraph graph = new AbstractGraph() {
+            @Override
+            protected Map<Version, Edge> getEdges() {
+                final Task task = new SerialAggregateTask(context, "Steps", Arrays.<Task>asList(
+                        new TrivialTask("first", new Runnable() {
+                            @Override
+                            public void run() {
+                                first.incrementAndGet();
+                            }
+                        }),
+                        new TrivialTask("second", new Callable<Void>() {
+                            @Override
+                            public Void call() throws IOException {
+                                second.incrementAndGet();
+                                if (failing[0]) {
+                                    throw new IOException("interrupted");
+                                }
+                                return null;
+                            }
+                        })));
+
+                final Map<Version, Edge> map = new HashMap<Version, Edge>();
+                map.put(Version.INITIAL, new ImmutableEdge(Version.INITIAL, target, task));
+                return map;
+            }
+        };
+
+        final File file = File.createTempFile("journal", ".log");
+        try {
+            final ExecutionJournal journal = new FileExecutionJournal(file);
+            final UpgradeDefinitionFactory factory = new GraphUpgradeDefinitionFactory(graph, journal);
+
+            try {
+                factory.create(context).getUpgradeTasks().get(0).call();
+                Assert.fail("Expected IOException");
+            } catch (IOException e) {
+                // expected
+            }
+            Assert.assertEquals(context.getVersion(), Version.INITIAL.getTransition(target));
+            Assert.assertFalse(new GraphUpgradeDefinitionFactory(graph).isUpgradeSupported(context));
+            Assert.assertTrue(factory.isUpgradeSupported(context));
+
+            failing[0] = false;
+            final UpgradeDefinition definition = factory.create(context);
+            Assert.assertEquals(definition.getUpgradeTasks().size(), 1);
+            definition.getUpgradeTasks().get(0).call();
+
+            Assert.assertEquals(context.getVersion(), target);
+            Assert.assertEquals(first.get(), 1);
+            Assert.assertEquals(second.get(), 2);
+            Assert.assertNull(journal.read());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Verify that the {@link Task} for each edge is created only as its upgrade begins
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void verifyDeferredCreation() throws Exception {
+        final Version second = Version.INITIAL.getNext();
+        final Version third = second.getNext();
+        final AtomicInteger created = new AtomicInteger();
+
+        final UpgradeContext context = new DummyUpgradeContext() {
+            private volatile Version version = Version.INITIAL;
+
+            @Override
+            public Version getVersion() {
+                return version;
+            }
+
+            @Override
+            public void setVersion(Version version) {
+                this.version = version;
+            }
+        };
+
+        final Map<Version, Edge> edges = new HashMap<Version, Edge>();
+        for (final Version source : Arrays.asList(Version.INITIAL, second)) {
+            edges.put(source, new Edge() {
+                @Override
+                public Version getSource() {
+                    return source;
+                }
+
+                @Override
+                public Version getTarget() {
+                    return source.getNext();
+                }
+
+                @Override
+                public Task createTask(UpgradeContext context) {
+                    created.incrementAndGet();
+                    return new TrivialTask("Upgrade from " + source, new Runnable() {
+                        @Override
+                        public void run() {
+                            // no-op
+                        }
+                    });
+                }
+            });
+        }
+
+        final UpgradeDefinition definition = new GraphUpgradeDefinitionFactory(new AbstractGraph() {
+            @Override
+            protected Map<Version, Edge> getEdges() {
+                return edges;
+            }
+        }).create(context);
+
+        Assert.assertEquals(definition.getUpgradeTasks().size(), 2);
+        Assert.assertEquals(created.get(), 0);
+
+        definition.getUpgradeTasks().get(0).call();
+        Assert.assertEquals(created.get(), 1);
+
+        definition.getUpgradeTasks().get(1).call();
+        Assert.assertEquals(created.get(), 2);
+        Assert.assertEquals(context.getVersion(), third);
+    }
+
+    /**
+     * Verify that, with a prefetch depth, the {@link Task} for the next edge is created in the
+     * background while the current edge executes
+     */
+    @Test(groups = { TestGroups.UNIT }, timeOut = 30000)
+    public void verifyPrefetch() throws Exception {
+        final Version second = Version.INITIAL.getNext();
+        final CountDownLatch secondCreated = new CountDownLatch(1);
+        final Thread caller = Thread.currentThread();
+        final Thread[] creators = new Thread[2];
+
+        final UpgradeContext context = new DummyUpgradeContext() {
+            private volatile Version version = Version.INITIAL;
+
+            @Override
+            public Version getVersion() {
+                return version;
+            }
+
+            @Override
+            public void setVersion(Version version) {
+                this.version = version;
+            }
+        };
+
+        final Map<Version, Edge> edges = new HashMap<Version, Edge>();
+        for (final Version source : Arrays.asList(Version.INITIAL, second)) {
+            final int index = edges.size();
+            edges.put(source, new Edge() {
+                @Override
+                public Version getSource() {
+                    return source;
+                }
+
+                @Override
+                public Version getTarget() {
+                    return source.getNext();
+                }
+
+                @Override
+                public Task createTask(UpgradeContext context) {
+                    creators[index] = Thread.currentThread();
+                    if (index == 1) {
+                        secondCreated.countDown();
+                    }
+                    return new TrivialTask("Upgrade from " + source, new Callable<Void>() {
+                        @Override
+                        public Void call() throws InterruptedException {
+                            if (index == 0) {
+                                Assert.assertTrue(secondCreated.await(10, TimeUnit.SECONDS));
+                            }
+                            return null;
+                        }
+                    });
+                }
+            });
+        }
+
+        final UpgradeDefinition definition = new GraphUpgradeDefinitionFactory(new AbstractGraph() {
+            @Override
+            protected Map<Version, Edge> getEdges() {
+                return edges;
+            }
+        }, null, 1).create(context);
+
+        for (final Task task : definition.getUpgradeTasks()) {
+            task.call();
+        }
+
+        Assert.assertSame(creators[0], caller);
+        Assert.assertNotSame(creators[1], caller);
+        Assert.assertEquals(context.getVersion(), second.getNext());
+    }
+
+    /**
+     * Verify that, once an upgrade fails, the creation of the {@link Task} for the next edge in the
+     * background is cancelled
+     */
+    @Test(groups = { TestGroups.UNIT }, timeOut = 30000)
+    public void verifyPrefetchCancelledOnFailure() throws Exception {
+        final Version second = Version.INITIAL.getNext();
+        final CountDownLatch secondStarted = new CountDownLatch(1);
+        final CountDownLatch secondInterrupted = new CountDownLatch(1);
+
+        final UpgradeContext context = new DummyUpgradeContext() {
+            private volatile Version version = Version.INITIAL;
+
+            @Override
+            public Version getVersion() {
+                return version;
+            }
+
+            @Override
+            public void setVersion(Version version) {
+                this.version = version;
+            }
+        };
+
+        final Map<Version, Edge> edges = new HashMap<Version, Edge>();
+        for (final Version source : Arrays.asList(Version.INITIAL, second)) {
+            final int index = edges.size();
+            edges.put(source, new Edge() {
+                @Override
+                public Version getSource() {
+                    return source;
+                }
+
+                @Override
+                public Version getTarget() {
+                    return source.getNext();
+                }
+
+                @Override
+                public Task createTask(UpgradeContext context) {
+                    if (index == 1) {
+                        secondStarted.countDown();
+                        try {
+                            Thread.sleep(TimeUnit.MINUTES.toMillis(10));
+                        } catch (InterruptedException e) {
+                            secondInterrupted.countDown();
+                        }
+                    }
+                    return new TrivialTask("Upgrade from " + source, new Callable<Void>() {
+                        @Override
+                        public Void call() throws InterruptedException {
+                            Assert.assertTrue(secondStarted.await(10, TimeUnit.SECONDS));
+                            throw new IllegalStateException("Failed");
+                        }
+                    });
+                }
+            });
+        }
+
+        final UpgradeDefinition definition = new GraphUpgradeDefinitionFactory(new AbstractGraph() {
+            @Override
+            protected Map<Version, Edge> getEdges() {
+                return edges;
+            }
+        }, null, 1).create(context);
+
+        try {
+            definition.getUpgradeTasks().get(0).call();
+            Assert.fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        Assert.assertTrue(secondInterrupted.await(10, TimeUnit.SECONDS));
+    }
 }
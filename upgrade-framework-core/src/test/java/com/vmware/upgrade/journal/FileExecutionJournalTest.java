@@ -0,0 +1,130 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import com.vmware.upgrade.TestGroups;
+import com.vmware.upgrade.sequencing.Version;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for {@link FileExecutionJournal}
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class FileExecutionJournalTest {
+    private static final Version SOURCE = Version.INITIAL;
+    private static final Version TARGET = Version.INITIAL.getNext();
+
+    private File file;
+
+    @BeforeMethod(groups = { TestGroups.UNIT })
+    public void createFile() throws IOException {
+        file = File.createTempFile("journal", ".log");
+        Assert.assertTrue(file.delete());
+    }
+
+    @AfterMethod(groups = { TestGroups.UNIT })
+    public void deleteFile() {
+        file.delete();
+    }
+
+    /**
+     * Verify that a journal which has never been written records no upgrade in progress
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testReadMissing() throws IOException {
+        Assert.assertNull(new FileExecutionJournal(file).read());
+    }
+
+    /**
+     * Verify that recorded checkpoints are read back by another instance
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testRoundTrip() throws IOException {
+        final ExecutionJournal journal = new FileExecutionJournal(file);
+        journal.begin(SOURCE, TARGET);
+        journal.recordCompleted("a");
+        journal.recordCompleted("b");
+
+        final ExecutionJournal.Record record = new FileExecutionJournal(file).read();
+        Assert.assertEquals(record.getSource(), SOURCE);
+        Assert.assertEquals(record.getTarget(), TARGET);
+        Assert.assertEquals(record.getCompleted().size(), 2);
+        Assert.assertTrue(record.getCompleted().contains("a"));
+        Assert.assertTrue(record.getCompleted().contains("b"));
+    }
+
+    /**
+     * Verify that beginning an upgrade discards the checkpoints of the previous one and that
+     * ending it leaves no upgrade in progress
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testBeginAndEnd() throws IOException {
+        final ExecutionJournal journal = new FileExecutionJournal(file);
+        journal.begin(SOURCE, TARGET);
+        journal.recordCompleted("a");
+        journal.begin(TARGET, TARGET.getNext());
+
+        final ExecutionJournal.Record record = journal.read();
+        Assert.assertEquals(record.getSource(), TARGET);
+        Assert.assertTrue(record.getCompleted().isEmpty());
+
+        journal.end();
+        Assert.assertNull(journal.read());
+    }
+
+    /**
+     * Verify that an entry left incomplete by a crash is ignored
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testTornEntry() throws IOException {
+        final ExecutionJournal journal = new FileExecutionJournal(file);
+        journal.begin(SOURCE, TARGET);
+        journal.recordCompleted("a");
+        Files.write(file.toPath(), "completed\tb".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        final ExecutionJournal.Record record = journal.read();
+        Assert.assertEquals(record.getCompleted().size(), 1);
+        Assert.assertTrue(record.getCompleted().contains("a"));
+    }
+
+    /**
+     * Verify that checkpoints which cannot be stored on a single line are rejected
+     */
+    @Test(groups = { TestGroups.UNIT }, expectedExceptions = { IllegalArgumentException.class })
+    public void testInvalidCheckpoint() throws IOException {
+        new FileExecutionJournal(file).recordCompleted("a\nb");
+    }
+}
@@ -0,0 +1,250 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.logging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import com.vmware.upgrade.Task;
+import com.vmware.upgrade.TestGroups;
+import com.vmware.upgrade.UpgradeDefinition;
+import com.vmware.upgrade.task.LogFlushingTask;
+import com.vmware.upgrade.task.TrivialTask;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for {@link AsyncLogger}
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class AsyncLoggerTest {
+    /**
+     * Verify that events are written in order on the background thread by the time a flush
+     * returns
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testOrderedFlush() throws Exception {
+        final RecordingAppender appender = new RecordingAppender();
+        final AsyncLogger async = new AsyncLogger(16, AsyncLogger.OverflowPolicy.BLOCK);
+        try {
+            final UpgradeLogger logger = async.asUpgradeLogger(appender.createLogger(AsyncLoggerTest.class, "ordered"));
+            for (int i = 0; i < 1000; i++) {
+                logger.debug("Message {0}", Integer.toString(i));
+            }
+            async.flush();
+
+            Assert.assertEquals(appender.getMessages().size(), 1000);
+            for (int i = 0; i < 1000; i++) {
+                Assert.assertEquals(appender.getMessages().get(i), "Message " + i);
+            }
+            Assert.assertEquals(appender.getThreadNames().get(0), "upgrade-log");
+            Assert.assertEquals(async.getDiscardedCount(), 0);
+        } finally {
+            async.close();
+        }
+    }
+
+    /**
+     * Verify that low-severity events are discarded while the buffer is full and that more severe
+     * events are not
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testDiscardBelowWarn() throws Exception {
+        final CountDownLatch released = new CountDownLatch(1);
+        final RecordingAppender appender = new RecordingAppender(released);
+        final AsyncLogger async = new AsyncLogger(2, AsyncLogger.OverflowPolicy.DISCARD_BELOW_WARN);
+        try {
+            final UpgradeLogger logger = async.asUpgradeLogger(appender.createLogger(AsyncLoggerTest.class, "discard"));
+            // The background thread holds at most one event while blocked in the appender
+            for (int i = 0; i < 10; i++) {
+                logger.info("Info {0}", Integer.toString(i));
+            }
+            Assert.assertTrue(async.getDiscardedCount() >= 7);
+
+            released.countDown();
+            logger.warn("Warning");
+            async.flush();
+
+            Assert.assertEquals(appender.getMessages().size(), 10 - async.getDiscardedCount() + 1);
+            Assert.assertEquals(appender.getMessages().get(0), "Info 0");
+            Assert.assertEquals(appender.getMessages().get(appender.getMessages().size() - 1), "Warning");
+        } finally {
+            async.close();
+        }
+    }
+
+    /**
+     * Verify that the events logged by an upgrade which fails have been written by the time the
+     * failure is reported to the caller
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testFlushOnFailure() throws Exception {
+        final RecordingAppender appender = new RecordingAppender();
+        final AsyncLogger async = new AsyncLogger(16, AsyncLogger.OverflowPolicy.BLOCK);
+        try {
+            final UpgradeLogger logger = async.asUpgradeLogger(appender.createLogger(AsyncLoggerTest.class, "definition"));
+            final Task first = new TrivialTask("first", new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100; i++) {
+                        logger.info("Step {0}", Integer.toString(i));
+                    }
+                    throw new IllegalStateException("Failed");
+                }
+            });
+            final Task second = new TrivialTask("second", new Runnable() {
+                @Override
+                public void run() {
+                    logger.info("Never");
+                }
+            });
+
+            final UpgradeDefinition definition = LogFlushingTask.flushOn(new UpgradeDefinition() {
+                private final List<Task> tasks = Arrays.asList(first, second);
+
+                @Override
+                public List<Task> getUpgradeTasks() {
+                    return tasks;
+                }
+            }, async);
+
+            try {
+                definition.getUpgradeTasks().get(0).call();
+                Assert.fail("Expected IllegalStateException");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+
+            Assert.assertEquals(appender.getMessages().size(), 100);
+        } finally {
+            async.close();
+        }
+    }
+
+    /**
+     * Verify that the events logged by a task which fails once interrupted have been written by
+     * the time the failure is reported to the caller, and that the interrupt is preserved
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testFlushOnInterruptedFailure() throws Exception {
+        final CountDownLatch released = new CountDownLatch(1);
+        final RecordingAppender appender = new RecordingAppender(released);
+        final AsyncLogger async = new AsyncLogger(128, AsyncLogger.OverflowPolicy.BLOCK);
+        try {
+            final UpgradeLogger logger = async.asUpgradeLogger(appender.createLogger(AsyncLoggerTest.class, "interrupted"));
+            final Task task = new LogFlushingTask("interrupted", new TrivialTask("interrupted", new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100; i++) {
+                        logger.info("Step {0}", Integer.toString(i));
+                    }
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Cancelled");
+                }
+            }), async, false);
+
+            final Thread releaser = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    released.countDown();
+                }
+            });
+            releaser.start();
+
+            try {
+                task.call();
+                Assert.fail("Expected IllegalStateException");
+            } catch (IllegalStateException e) {
+                // expected
+            }
+
+            Assert.assertTrue(Thread.interrupted());
+            Assert.assertEquals(appender.getMessages().size(), 100);
+            releaser.join();
+        } finally {
+            async.close();
+        }
+    }
+
+    /**
+     * Verify that events logged once closed are written directly
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testClose() {
+        final RecordingAppender appender = new RecordingAppender();
+        final AsyncLogger async = new AsyncLogger(16, AsyncLogger.OverflowPolicy.BLOCK);
+        final UpgradeLogger logger = async.asUpgradeLogger(appender.createLogger(AsyncLoggerTest.class, "close"));
+
+        logger.error("Before");
+        async.close();
+        logger.error("After");
+
+        Assert.assertEquals(appender.getMessages(), Arrays.asList("Before", "After"));
+        Assert.assertEquals(appender.getThreadNames().get(1), Thread.currentThread().getName());
+    }
+
+    /**
+     * Verify that no event logged concurrently with a close is lost
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testCloseWhileLogging() throws Exception {
+        final RecordingAppender appender = new RecordingAppender();
+        final AsyncLogger async = new AsyncLogger(4, AsyncLogger.OverflowPolicy.BLOCK);
+        final UpgradeLogger logger = async.asUpgradeLogger(appender.createLogger(AsyncLoggerTest.class, "concurrent"));
+
+        final CountDownLatch started = new CountDownLatch(4);
+        final List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    for (int j = 0; j < 1000; j++) {
+                        logger.info("Message {0}", Integer.toString(j));
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        started.await();
+        async.close();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertEquals(appender.getMessages().size(), 4000);
+    }
+}
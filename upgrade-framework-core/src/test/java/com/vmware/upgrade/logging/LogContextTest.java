@@ -0,0 +1,137 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.logging;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.vmware.upgrade.DummyUpgradeContext;
+import com.vmware.upgrade.Task;
+import com.vmware.upgrade.TestGroups;
+import com.vmware.upgrade.UpgradeContext;
+import com.vmware.upgrade.sequencing.Version;
+import com.vmware.upgrade.task.ParallelAggregateTask;
+import com.vmware.upgrade.task.SerialAggregateTask;
+import com.vmware.upgrade.task.TrivialTask;
+
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+import org.apache.log4j.spi.LoggingEvent;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for {@link LogContext}
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class LogContextTest {
+    private static final UpgradeContext CONTEXT = new DummyUpgradeContext();
+
+    /**
+     * @return the message, task path and target of each event recorded by {@code appender}
+     */
+    private static List<String> paths(final RecordingAppender appender) {
+        final List<String> paths = new ArrayList<String>();
+        for (LoggingEvent event : appender.getEvents()) {
+            paths.add(event.getRenderedMessage() + ": " + event.getMDC(LogContext.TASK_PATH_KEY) + " " + event.getMDC(LogContext.TARGET_KEY));
+        }
+        return paths;
+    }
+
+    private static Task recordingTask(final String name, final Map<String, String> paths) {
+        return new TrivialTask(name, new Runnable() {
+            @Override
+            public void run() {
+                paths.put(name, LogContext.current().getTaskPath());
+            }
+        });
+    }
+
+    /**
+     * Verify that the context of each child of the aggregating tasks names the path to it,
+     * including children executed on other threads
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testTaskPath() throws Exception {
+        final Map<String, String> paths = new ConcurrentHashMap<String, String>();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Task parallel = new ParallelAggregateTask(CONTEXT, "parallel", executor,
+                    Arrays.asList(recordingTask("a", paths), recordingTask("b", paths)));
+            final Task serial = new SerialAggregateTask(CONTEXT, "serial", Arrays.asList(recordingTask("c", paths), parallel));
+
+            Assert.assertNull(LogContext.current());
+            LogContext.call(serial.getName(), Version.INITIAL, Version.INITIAL.getNext(), serial);
+            Assert.assertNull(LogContext.current());
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Assert.assertEquals(paths.get("a"), "serial / parallel / a");
+        Assert.assertEquals(paths.get("b"), "serial / parallel / b");
+        Assert.assertEquals(paths.get("c"), "serial / c");
+    }
+
+    /**
+     * Verify that the context is available to log4j while an event is logged, both synchronously
+     * and through an {@link AsyncLogger}, and that the {@link MDC} is restored afterwards
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testMdc() throws Exception {
+        final RecordingAppender appender = new RecordingAppender();
+        final Logger log4jLogger = appender.createLogger(LogContextTest.class, "mdc");
+        final AsyncLogger async = new AsyncLogger(16, AsyncLogger.OverflowPolicy.BLOCK);
+        try {
+            final UpgradeLogger direct = UpgradeLoggerHelper.asUpgradeLogger(log4jLogger);
+            final UpgradeLogger buffered = async.asUpgradeLogger(log4jLogger);
+
+            direct.info("Outside");
+            LogContext.call("upgrade", Version.INITIAL, Version.INITIAL.getNext(), new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    direct.info("Direct");
+                    buffered.info("Buffered");
+                    return null;
+                }
+            });
+            async.flush();
+
+            Assert.assertNull(MDC.get(LogContext.TASK_PATH_KEY));
+            Assert.assertEquals(paths(appender), Arrays.asList(
+                    "Outside: null null",
+                    "Direct: upgrade " + Version.INITIAL.getNext(),
+                    "Buffered: upgrade " + Version.INITIAL.getNext()));
+        } finally {
+            async.close();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.logging;
+
+import java.text.MessageFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A stand-alone benchmark comparing {@link MessageFormats#format(String, Object...)} against
+ * {@link MessageFormat#format(String, Object...)} for the patterns typically logged during an
+ * upgrade.
+ * <p>
+ * For each, the benchmark reports the mean time per message after a warm-up period. This is not
+ * part of the test suite; run it with
+ * {@code java com.vmware.upgrade.logging.MessageFormatsBenchmark [iterations]}.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public final class MessageFormatsBenchmark {
+    private static final String SIMPLE = "Executing SQL {0} of {1}: {2}";
+    private static final Object[] SIMPLE_ARGS = { "12", "345", "INSERT INTO config (name) VALUES ('Hello World')" };
+
+    private static final String NUMERIC = "Executing SQL {0} of {1}";
+    private static final Object[] NUMERIC_ARGS = { 12, 345 };
+
+    private MessageFormatsBenchmark() {
+    }
+
+    private interface Formatter {
+        String format(String pattern, Object[] args);
+    }
+
+    public static void main(final String[] args) {
+        final int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+
+        final Formatter uncached = new Formatter() {
+            @Override
+            public String format(final String pattern, final Object[] args) {
+                return MessageFormat.format(pattern, args);
+            }
+        };
+        final Formatter cached = new Formatter() {
+            @Override
+            public String format(final String pattern, final Object[] args) {
+                return MessageFormats.format(pattern, args);
+            }
+        };
+
+        System.out.println("iterations: " + iterations);
+
+        run("simple, MessageFormat.format", uncached, SIMPLE, SIMPLE_ARGS, iterations);
+        run("simple, MessageFormats.format", cached, SIMPLE, SIMPLE_ARGS, iterations);
+        run("numeric, MessageFormat.format", uncached, NUMERIC, NUMERIC_ARGS, iterations);
+        run("numeric, MessageFormats.format", cached, NUMERIC, NUMERIC_ARGS, iterations);
+    }
+
+    private static void run(final String mode, final Formatter formatter, final String pattern, final Object[] args, final int iterations) {
+        int length = 0;
+        for (int i = 0; i < iterations; i++) {
+            length += formatter.format(pattern, args).length();
+        }
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            length += formatter.format(pattern, args).length();
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        System.out.println(mode + ": "
+                + (elapsed / iterations) + "ns per message, "
+                + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms total "
+                + "(" + length + " characters)");
+    }
+}
@@ -0,0 +1,97 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.logging;
+
+import java.text.MessageFormat;
+import java.util.Date;
+
+import com.vmware.upgrade.TestGroups;
+
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for {@link MessageFormats}
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class MessageFormatsTest {
+    private static final String PATTERN_PROVIDER = "pattern-provider";
+
+    @DataProvider(name = PATTERN_PROVIDER)
+    public Object[][] patterns() {
+        final Object[] none = new Object[0];
+        final Object[] strings = new Object[] { "a", "b" };
+        final Object[] mixed = new Object[] { "a", 1234567, new Date(0), null, new StringBuilder("sb") };
+
+        return new Object[][] {
+            { "", none },
+            { "No placeholders", strings },
+            { "{0}", strings },
+            { "{0} and {1}", strings },
+            { "{1}{0}{1}", strings },
+            { "Missing {2}", strings },
+            { "Leading zero {01}", strings },
+            { "No arguments {0}", null },
+            { "Number {1}, date {2}, null {3}, object {4}", mixed },
+            { "Number {1,number,#}", mixed },
+            { "Quoted '{0}' and {0}", strings },
+            { "It''s {0}", strings },
+            { "Stray } brace {0}", strings },
+        };
+    }
+
+    /**
+     * Verify that messages are formatted exactly as {@link MessageFormat} formats them
+     */
+    @Test(groups = { TestGroups.UNIT }, dataProvider = PATTERN_PROVIDER)
+    public void testEquivalence(final String pattern, final Object[] args) {
+        final String expected = MessageFormat.format(pattern, args);
+
+        Assert.assertEquals(MessageFormats.format(pattern, args), expected);
+        // The second use is served from the cache
+        Assert.assertEquals(MessageFormats.format(pattern, args), expected);
+    }
+
+    /**
+     * Verify that invalid patterns are rejected as {@link MessageFormat} rejects them
+     */
+    @Test(groups = { TestGroups.UNIT }, expectedExceptions = { IllegalArgumentException.class })
+    public void testInvalidPattern() {
+        MessageFormats.format("Unterminated {0", "a");
+    }
+
+    /**
+     * Verify that the number of cached patterns is bounded
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testCacheIsBounded() {
+        for (int i = 0; i < 2 * MessageFormats.MAX_CACHED_PATTERNS; i++) {
+            Assert.assertEquals(MessageFormats.format("Pattern " + i + " {0}", "a"), "Pattern " + i + " a");
+            Assert.assertTrue(MessageFormats.cachedPatterns() <= MessageFormats.MAX_CACHED_PATTERNS);
+        }
+    }
+}
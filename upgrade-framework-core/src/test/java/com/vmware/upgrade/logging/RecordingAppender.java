@@ -0,0 +1,138 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+
+package com.vmware.upgrade.logging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.log4j.AppenderSkeleton;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.apache.log4j.spi.LoggingEvent;
+
+/**
+ * A log4j appender which records the events it receives, optionally waiting before each, for use
+ * by tests which verify what is logged.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public final class RecordingAppender extends AppenderSkeleton {
+    private final List<LoggingEvent> events = Collections.synchronizedList(new ArrayList<LoggingEvent>());
+    private final CountDownLatch released;
+
+    /**
+     * Constructs an appender which records each event as soon as it is received.
+     */
+    public RecordingAppender() {
+        this(new CountDownLatch(0));
+    }
+
+    /**
+     * Constructs an appender which waits for {@code released} before recording each event.
+     *
+     * @param released
+     *          the latch to wait for
+     */
+    public RecordingAppender(final CountDownLatch released) {
+        this.released = released;
+    }
+
+    /**
+     * Return a {@link Logger} which logs events of every level to this appender only.
+     *
+     * @param test
+     *          the test class, which qualifies the name of the logger
+     * @param name
+     *          the name of the logger, unique within the test class
+     * @return the {@link Logger}
+     */
+    public Logger createLogger(final Class<?> test, final String name) {
+        final Logger logger = Logger.getLogger(test.getName() + "." + name);
+        logger.setAdditivity(false);
+        logger.setLevel(Level.ALL);
+        logger.removeAllAppenders();
+        logger.addAppender(this);
+        return logger;
+    }
+
+    /**
+     * @return the events recorded so far, in the order in which they were received; the thread
+     *          name and MDC of each are those of the thread which appended it
+     */
+    public List<LoggingEvent> getEvents() {
+        synchronized (events) {
+            return new ArrayList<LoggingEvent>(events);
+        }
+    }
+
+    /**
+     * @return the rendered messages of the events recorded so far
+     */
+    public List<String> getMessages() {
+        final List<String> messages = new ArrayList<String>();
+        for (LoggingEvent event : getEvents()) {
+            messages.add(event.getRenderedMessage());
+        }
+        return messages;
+    }
+
+    /**
+     * @return the names of the threads which appended the events recorded so far
+     */
+    public List<String> getThreadNames() {
+        final List<String> threadNames = new ArrayList<String>();
+        for (LoggingEvent event : getEvents()) {
+            threadNames.add(event.getThreadName());
+        }
+        return threadNames;
+    }
+
+    @Override
+    protected void append(final LoggingEvent event) {
+        try {
+            released.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Capture the state of the appending thread, which the event otherwise reads lazily
+        event.getThreadName();
+        event.getMDCCopy();
+        event.getRenderedMessage();
+        events.add(event);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public boolean requiresLayout() {
+        return false;
+    }
+}
@@ -0,0 +1,163 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.logging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import com.vmware.upgrade.TestGroups;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for {@link UpgradeLoggerHelper}
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class UpgradeLoggerHelperTest {
+    private static final int THREADS = 16;
+    private static final int LOGGERS = 200;
+    private static final int ROUNDS = 20;
+
+    /**
+     * Verify that the same {@link UpgradeLogger} is returned for a {@link Logger}
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testReuse() {
+        final Logger logger = Logger.getLogger(UpgradeLoggerHelperTest.class.getName() + ".reuse");
+
+        Assert.assertSame(UpgradeLoggerHelper.asUpgradeLogger(logger), UpgradeLoggerHelper.asUpgradeLogger(logger));
+        Assert.assertNotSame(UpgradeLoggerHelper.asUpgradeLogger(logger), UpgradeLoggerHelper.asUpgradeLogger(Logger.getRootLogger()));
+    }
+
+    /**
+     * Verify that, when many threads concurrently request the {@link UpgradeLogger}s for the same
+     * {@link Logger}s, as parallel tasks do on construction, each receives the same single
+     * {@link UpgradeLogger} for each {@link Logger}
+     */
+    @Test(groups = { TestGroups.UNIT }, timeOut = 60000)
+    public void testConcurrentAccess() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                final List<Logger> loggers = new ArrayList<Logger>(LOGGERS);
+                for (int i = 0; i < LOGGERS; i++) {
+                    loggers.add(Logger.getLogger(UpgradeLoggerHelperTest.class.getName() + ".round" + round + ".logger" + i));
+                }
+
+                final CyclicBarrier barrier = new CyclicBarrier(THREADS);
+                final List<Future<UpgradeLogger[]>> futures = new ArrayList<Future<UpgradeLogger[]>>(THREADS);
+                for (int t = 0; t < THREADS; t++) {
+                    final List<Logger> order = new ArrayList<Logger>(loggers);
+                    Collections.shuffle(order);
+                    futures.add(executor.submit(new Callable<UpgradeLogger[]>() {
+                        @Override
+                        public UpgradeLogger[] call() throws Exception {
+                            barrier.await();
+
+                            final UpgradeLogger[] wrappers = new UpgradeLogger[LOGGERS];
+                            for (final Logger logger : order) {
+                                wrappers[loggers.indexOf(logger)] = UpgradeLoggerHelper.asUpgradeLogger(logger);
+                            }
+                            return wrappers;
+                        }
+                    }));
+                }
+
+                final UpgradeLogger[] expected = futures.get(0).get();
+                for (final Future<UpgradeLogger[]> future : futures) {
+                    final UpgradeLogger[] wrappers = future.get();
+                    for (int i = 0; i < LOGGERS; i++) {
+                        Assert.assertNotNull(wrappers[i]);
+                        Assert.assertSame(wrappers[i], expected[i]);
+                        Assert.assertSame(UpgradeLoggerHelper.asUpgradeLogger(loggers.get(i)), expected[i]);
+                    }
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Verify that a {@code null} {@link Logger} is rejected
+     */
+    @Test(groups = { TestGroups.UNIT }, expectedExceptions = { IllegalArgumentException.class })
+    public void testNullLogger() {
+        UpgradeLoggerHelper.asUpgradeLogger(null);
+    }
+
+    /**
+     * Verify that a {@link Supplier} of a message is invoked only if the level is enabled
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testSupplierIsLazy() {
+        final Logger logger = Logger.getLogger(UpgradeLoggerHelperTest.class.getName() + ".lazy");
+        final UpgradeLogger upgradeLogger = UpgradeLoggerHelper.asUpgradeLogger(logger);
+        final AtomicInteger invocations = new AtomicInteger();
+        final Supplier<String> message = new Supplier<String>() {
+            @Override
+            public String get() {
+                invocations.incrementAndGet();
+                return "message";
+            }
+        };
+
+        logger.setLevel(Level.INFO);
+        upgradeLogger.trace(message);
+        upgradeLogger.debug(message);
+        upgradeLogger.debug(new Exception(), message);
+        upgradeLogger.log(LogLevel.DEBUG, message);
+        Assert.assertEquals(invocations.get(), 0);
+
+        logger.setLevel(Level.OFF);
+        upgradeLogger.info(message);
+        upgradeLogger.warn(new Exception(), message);
+        upgradeLogger.error(message);
+        Assert.assertEquals(invocations.get(), 0);
+
+        logger.setLevel(Level.ALL);
+        upgradeLogger.debug(message);
+        upgradeLogger.info(message);
+        upgradeLogger.warn(message);
+        upgradeLogger.error(new Exception(), message);
+        upgradeLogger.log(LogLevel.TRACE, new Exception(), message);
+        Assert.assertEquals(invocations.get(), 5);
+
+        UpgradeLoggerHelper.NO_OP_LOGGER.debug(message);
+        Assert.assertEquals(invocations.get(), 5);
+    }
+}
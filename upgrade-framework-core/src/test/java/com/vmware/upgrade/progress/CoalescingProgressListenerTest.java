@@ -0,0 +1,150 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.progress;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.upgrade.TestGroups;
+import com.vmware.upgrade.progress.ProgressReporter.ProgressListener;
+import com.vmware.upgrade.progress.impl.CoalescingProgressListener;
+import com.vmware.upgrade.progress.impl.SimpleProgressReporter;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for {@link CoalescingProgressListener}
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class CoalescingProgressListenerTest {
+    private static final int TOTAL_TICKS = 100;
+
+    /**
+     * A {@link ProgressListener} which records the reports it receives and the threads on which
+     * it receives them, optionally blocking until released.
+     */
+    private static final class RecordingListener implements ProgressListener {
+        final List<ProgressReport> reports = new CopyOnWriteArrayList<ProgressReport>();
+        final List<Thread> threads = new CopyOnWriteArrayList<Thread>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        final CountDownLatch release;
+
+        RecordingListener(final CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void reportProgress(final ProgressReport progress) {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            reports.add(progress);
+            threads.add(Thread.currentThread());
+            if (progress.getState() == ExecutionState.COMPLETED) {
+                completed.countDown();
+            }
+        }
+    }
+
+    /**
+     * Verify that rapid reports are coalesced, delivered on another thread and that the latest
+     * report is always delivered
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testCoalescing() throws InterruptedException {
+        final RecordingListener delegate = new RecordingListener(new CountDownLatch(0));
+        final SimpleProgressReporter reporter = new SimpleProgressReporter(TOTAL_TICKS);
+        reporter.addListener(new CoalescingProgressListener(delegate, 200, TimeUnit.MILLISECONDS));
+
+        reporter.setState(ExecutionState.RUNNING);
+        for (int i = 0; i < TOTAL_TICKS; i++) {
+            reporter.advance();
+        }
+        reporter.setState(ExecutionState.COMPLETED);
+
+        Assert.assertTrue(delegate.completed.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(delegate.reports.size() < TOTAL_TICKS, "Expected reports to be coalesced: " + delegate.reports);
+        Assert.assertEquals(delegate.reports.get(delegate.reports.size() - 1).getProgress(), 100);
+        Assert.assertFalse(delegate.threads.contains(Thread.currentThread()));
+    }
+
+    /**
+     * Verify that a blocked delegate does not block the reporting thread
+     */
+    @Test(groups = { TestGroups.UNIT }, timeOut = 30000)
+    public void testBlockedDelegate() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final RecordingListener delegate = new RecordingListener(release);
+        final SimpleProgressReporter reporter = new SimpleProgressReporter(TOTAL_TICKS);
+        reporter.addListener(new CoalescingProgressListener(delegate, 0, TimeUnit.MILLISECONDS));
+
+        reporter.setState(ExecutionState.RUNNING);
+        for (int i = 0; i < TOTAL_TICKS; i++) {
+            reporter.advance();
+        }
+        reporter.setState(ExecutionState.COMPLETED);
+
+        Assert.assertTrue(delegate.reports.isEmpty());
+        release.countDown();
+
+        Assert.assertTrue(delegate.completed.await(10, TimeUnit.SECONDS));
+        Assert.assertTrue(delegate.reports.size() <= 2, "Expected reports to be coalesced: " + delegate.reports);
+    }
+
+    /**
+     * Verify that reports continue to be delivered after the delegate throws
+     */
+    @Test(groups = { TestGroups.UNIT }, timeOut = 30000)
+    public void testFailingDelegate() throws InterruptedException {
+        final CountDownLatch completed = new CountDownLatch(1);
+        final ProgressListener delegate = new ProgressListener() {
+            @Override
+            public void reportProgress(final ProgressReport progress) {
+                if (progress.getState() == ExecutionState.COMPLETED) {
+                    completed.countDown();
+                } else {
+                    throw new IllegalStateException("Failed");
+                }
+            }
+        };
+        final SimpleProgressReporter reporter = new SimpleProgressReporter(TOTAL_TICKS);
+        reporter.addListener(new CoalescingProgressListener(delegate, 0, TimeUnit.MILLISECONDS));
+
+        reporter.setState(ExecutionState.RUNNING);
+        for (int i = 0; i < TOTAL_TICKS; i++) {
+            reporter.advance();
+        }
+        reporter.setState(ExecutionState.COMPLETED);
+
+        Assert.assertTrue(completed.await(10, TimeUnit.SECONDS));
+    }
+}
@@ -31,6 +31,7 @@ import java.util.Map;
 import java.util.Set;
 
 import com.vmware.upgrade.TestGroups;
+import com.vmware.upgrade.progress.CountingExecutionStateAggregator;
 import com.vmware.upgrade.progress.ExecutionState;
 import com.vmware.upgrade.progress.ExecutionStateAggregator;
 import com.vmware.upgrade.progress.impl.DefaultExecutionStateAggregator;
@@ -79,6 +80,48 @@ public class DefaultExecutionStateAggregatorTest {
         AssertJUnit.assertTrue(errorMessage, beforeState.equals(afterState) || beforeState.canTransitionTo(afterState));
     }
 
+    /**
+     * Verify that aggregating the number of children in each state produces the same state as
+     * aggregating the states themselves
+     *
+     * @param before
+     *          the {@code ExecutionState}s of the children before
+     * @param after
+     *          the {@code ExecutionState}s of the children after
+     */
+    @Test(groups = { TestGroups.UNIT }, dataProvider = DEPTH_TWO_PROVIDER)
+    public void countingDepthTwoTest(List<ExecutionState> before, List<ExecutionState> after) {
+        CountingExecutionStateAggregator stateAggregator = new DefaultExecutionStateAggregator();
+
+        AssertJUnit.assertEquals(stateAggregator.aggregate(before), stateAggregator.aggregate(countStates(before)));
+        AssertJUnit.assertEquals(stateAggregator.aggregate(after), stateAggregator.aggregate(countStates(after)));
+    }
+
+    /**
+     * Verify that counts which do not describe any children are rejected
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void invalidCountsTest() {
+        CountingExecutionStateAggregator stateAggregator = new DefaultExecutionStateAggregator();
+
+        for (int[] counts : new int[][] { null, new int[1], new int[ExecutionState.values().length] }) {
+            try {
+                stateAggregator.aggregate(counts);
+                AssertJUnit.fail("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    private static int[] countStates(List<ExecutionState> states) {
+        int[] counts = new int[ExecutionState.values().length];
+        for (ExecutionState state : states) {
+            counts[state.ordinal()]++;
+        }
+        return counts;
+    }
+
     @SuppressWarnings("unchecked")
     @DataProvider(name = DEPTH_TWO_PROVIDER)
     public Object[][] generateAllDepthTwoTransitions() {
@@ -22,7 +22,9 @@
 
 package com.vmware.upgrade.progress;
 
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import com.vmware.upgrade.TestGroups;
@@ -30,12 +32,16 @@ import com.vmware.upgrade.progress.ExecutionState;
 import com.vmware.upgrade.progress.ProgressReport;
 import com.vmware.upgrade.progress.ProgressReporter;
 import com.vmware.upgrade.progress.ProgressReporter.ProgressListener;
+import com.vmware.upgrade.progress.impl.DefaultExecutionStateAggregator;
 import com.vmware.upgrade.progress.impl.ImmutableProgressReport;
 import com.vmware.upgrade.progress.impl.SimpleAggregatingProgressReporter;
 import com.vmware.upgrade.progress.impl.SimpleProgressReporter;
 
+import com.sun.management.ThreadMXBean;
+
 import org.easymock.EasyMock;
 import org.testng.AssertJUnit;
+import org.testng.SkipException;
 import org.testng.annotations.Test;
 
 /**
@@ -401,6 +407,62 @@ public class ProgressReportingTest {
         EasyMock.verify(mock);
     }
 
+    /**
+     * Verify that {@link SimpleAggregatingProgressReporter#terminateWithCancellation()} reports
+     * cancellation and stops propagating progress from its children
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testSimpleAggregatingProgressReporterTerminateWithCancellation() {
+        SimpleAggregatingProgressReporter reporter = new SimpleAggregatingProgressReporter();
+
+        SimpleProgressReporter child1 = new SimpleProgressReporter(TOTAL_TICKS);
+        SimpleProgressReporter child2 = new SimpleProgressReporter(TOTAL_TICKS);
+
+        reporter.setChildren(java.util.Arrays.asList(child1, child2));
+
+        ProgressReport[] expectedReports =
+            new ProgressReport[] {
+                PENDING_REPORT,
+                RUNNING_REPORT,
+                new ImmutableProgressReport(ExecutionState.RUNNING, 10),
+                new ImmutableProgressReport(ExecutionState.CANCELLED, 10)};
+
+        ProgressListener mock = createMockListener(expectedReports);
+        reporter.addListener(mock);
+
+        reporter.requestProgressReport();       // pending
+        child1.setState(ExecutionState.RUNNING);     // running
+        child1.advance();             // 10%
+        reporter.terminateWithCancellation(); // cancelled
+        reporter.terminateWithCancellation(); // no-op: already terminated
+        child1.advance();             // no-op: terminated
+        child1.setState(ExecutionState.FAILED);      // no-op: terminated
+
+        EasyMock.verify(mock);
+    }
+
+    /**
+     * Verify that {@link SimpleAggregatingProgressReporter#terminateWithCancellation()} can
+     * cancel a reporter whose children have not begun execution
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testSimpleAggregatingProgressReporterTerminateWithCancellationWhilePending() {
+        SimpleAggregatingProgressReporter reporter = new SimpleAggregatingProgressReporter();
+
+        reporter.setChildren(java.util.Arrays.asList(new SimpleProgressReporter(TOTAL_TICKS)));
+
+        ProgressListener mock = createMockListener(
+                PENDING_REPORT,
+                RUNNING_REPORT,
+                new ImmutableProgressReport(ExecutionState.CANCELLED, INITIAL_PROGRESS));
+        reporter.addListener(mock);
+
+        reporter.requestProgressReport();       // pending
+        reporter.terminateWithCancellation(); // running, then cancelled
+
+        EasyMock.verify(mock);
+    }
+
     /**
      * Verify results of {@link ProgressReporter.addListener} and {@link ProgressReporter.removeListener}.
      */
@@ -426,6 +488,198 @@ public class ProgressReportingTest {
         }
     }
 
+    /**
+     * Verify that {@link SimpleAggregatingProgressReporter} aggregates many children identically
+     * whether it uses the {@link DefaultExecutionStateAggregator} or another
+     * {@link ExecutionStateAggregator}
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testSimpleAggregatingProgressReporterWithManyChildren() {
+        final int count = 1000;
+        final List<SimpleProgressReporter> children = new ArrayList<SimpleProgressReporter>(count);
+        for (int i = 0; i < count; i++) {
+            children.add(new SimpleProgressReporter(TOTAL_TICKS));
+        }
+
+        final ExecutionStateAggregator defaultAggregator = new DefaultExecutionStateAggregator();
+        final SimpleAggregatingProgressReporter incremental = new SimpleAggregatingProgressReporter(defaultAggregator);
+        final SimpleAggregatingProgressReporter delegating = new SimpleAggregatingProgressReporter(new ExecutionStateAggregator() {
+            @Override
+            public ExecutionState aggregate(Collection<ExecutionState> childStates) {
+                return defaultAggregator.aggregate(childStates);
+            }
+        });
+        incremental.setChildren(children);
+        delegating.setChildren(children);
+
+        for (int i = 0; i < count; i++) {
+            final SimpleProgressReporter child = children.get(i);
+            child.setState(ExecutionState.RUNNING);
+            for (int j = 0; j < i % TOTAL_TICKS; j++) {
+                child.advance();
+            }
+            if (i % 2 == 0) {
+                child.setState(ExecutionState.COMPLETED);
+            }
+
+            AssertJUnit.assertEquals(delegating.getState(), incremental.getState());
+            AssertJUnit.assertEquals(delegating.getProgress(), incremental.getProgress());
+        }
+
+        AssertJUnit.assertEquals(ExecutionState.RUNNING, incremental.getState());
+        // Each child i has advanced by 20% for each of i % 5 ticks
+        AssertJUnit.assertEquals(40, incremental.getProgress());
+
+        for (int i = 1; i < count; i += 2) {
+            children.get(i).setState(ExecutionState.COMPLETED);
+        }
+
+        AssertJUnit.assertEquals(ExecutionState.COMPLETED, incremental.getState());
+        AssertJUnit.assertEquals(FINAL_PROGRESS, incremental.getProgress());
+        AssertJUnit.assertEquals(ExecutionState.COMPLETED, delegating.getState());
+    }
+
+    /**
+     * A {@link SimpleProgressReporter} with a specified weight.
+     */
+    private static final class WeightedProgressReporter extends SimpleProgressReporter implements Weighted {
+        private final long weight;
+
+        WeightedProgressReporter(final long weight) {
+            super(TOTAL_TICKS);
+            this.weight = weight;
+        }
+
+        @Override
+        public long getWeight() {
+            return weight;
+        }
+    }
+
+    /**
+     * Verify that {@link SimpleAggregatingProgressReporter} weights the progress of its children
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testSimpleAggregatingProgressReporterWithWeightedChildren() {
+        final WeightedProgressReporter light = new WeightedProgressReporter(0);
+        final WeightedProgressReporter heavy = new WeightedProgressReporter(3);
+        final SimpleProgressReporter unweighted = new SimpleProgressReporter(TOTAL_TICKS);
+
+        final SimpleAggregatingProgressReporter reporter = new SimpleAggregatingProgressReporter();
+        reporter.setChildren(java.util.Arrays.asList(light, heavy, unweighted));
+        AssertJUnit.assertEquals(4, reporter.getWeight());
+
+        light.setState(ExecutionState.RUNNING);
+        for (int i = 0; i < TOTAL_TICKS; i++) {
+            light.advance();
+        }
+        light.setState(ExecutionState.COMPLETED);
+        AssertJUnit.assertEquals(INITIAL_PROGRESS, reporter.getProgress());
+
+        heavy.setState(ExecutionState.RUNNING);
+        heavy.advance();
+        heavy.advance();
+        // 3 * 40% of 4
+        AssertJUnit.assertEquals(30, reporter.getProgress());
+
+        unweighted.setState(ExecutionState.RUNNING);
+        unweighted.advance();
+        // (3 * 40% + 20%) of 4
+        AssertJUnit.assertEquals(35, reporter.getProgress());
+    }
+
+    /**
+     * Verify that children with no weight contribute equally if no child has any weight
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testSimpleAggregatingProgressReporterWithWeightlessChildren() {
+        final WeightedProgressReporter first = new WeightedProgressReporter(0);
+        final WeightedProgressReporter second = new WeightedProgressReporter(0);
+
+        final SimpleAggregatingProgressReporter reporter = new SimpleAggregatingProgressReporter();
+        reporter.setChildren(java.util.Arrays.asList(first, second));
+
+        first.setState(ExecutionState.RUNNING);
+        first.advance();
+        AssertJUnit.assertEquals(10, reporter.getProgress());
+    }
+
+    /**
+     * Verify that the shared reports are equal to those constructed directly
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testSharedReports() {
+        AssertJUnit.assertSame(ImmutableProgressReport.of(ExecutionState.RUNNING, FIRST_PROGRESS), ImmutableProgressReport.of(ExecutionState.RUNNING, FIRST_PROGRESS));
+        AssertJUnit.assertEquals(INCREMENTED_REPORT, ImmutableProgressReport.of(ExecutionState.RUNNING, FIRST_PROGRESS));
+        AssertJUnit.assertEquals(COMPLETED_REPORT, ImmutableProgressReport.of(ExecutionState.COMPLETED, FINAL_PROGRESS));
+    }
+
+    /**
+     * Verify that the valid state transitions are those of the transition diagram
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testStateTransitions() {
+        for (ExecutionState from : ExecutionState.values()) {
+            for (ExecutionState to : ExecutionState.values()) {
+                final boolean expected;
+                switch (from) {
+                case PENDING:
+                    expected = to == ExecutionState.RUNNING;
+                    break;
+                case RUNNING:
+                    expected = to != ExecutionState.PENDING && to != ExecutionState.RUNNING;
+                    break;
+                case SUSPENDED:
+                    expected = to == ExecutionState.RUNNING || to == ExecutionState.CANCELLED;
+                    break;
+                default:
+                    expected = false;
+                    break;
+                }
+                AssertJUnit.assertEquals(from + " to " + to, expected, from.canTransitionTo(to));
+            }
+        }
+
+        AssertJUnit.assertTrue(ExecutionState.TIMED_OUT.isTerminal());
+        AssertJUnit.assertFalse(ExecutionState.SUSPENDED.isTerminal());
+    }
+
+    /**
+     * Verify that reporting progress through a {@link SimpleAggregatingProgressReporter} with
+     * {@link #MANY} children does not allocate memory for each report
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testReportingDoesNotAllocate() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof ThreadMXBean) || !((ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            throw new SkipException("Allocation cannot be measured on this JVM");
+        }
+        final ThreadMXBean threads = (ThreadMXBean) bean;
+        final long threadId = Thread.currentThread().getId();
+
+        final int ticks = 100;
+        final List<SimpleProgressReporter> children = new ArrayList<SimpleProgressReporter>(MANY);
+        for (int i = 0; i < MANY; i++) {
+            children.add(new SimpleProgressReporter(ticks));
+        }
+        final SimpleAggregatingProgressReporter reporter = new SimpleAggregatingProgressReporter();
+        reporter.setChildren(children);
+
+        final long before = threads.getThreadAllocatedBytes(threadId);
+        for (SimpleProgressReporter child : children) {
+            child.setState(ExecutionState.RUNNING);
+            for (int i = 0; i < ticks; i++) {
+                child.advance();
+            }
+            child.setState(ExecutionState.COMPLETED);
+        }
+        final long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+        AssertJUnit.assertEquals(ExecutionState.COMPLETED, reporter.getState());
+        // Allocating a report for each of the several thousand reports would far exceed this
+        AssertJUnit.assertTrue("Allocated " + allocated + " bytes", allocated < 4096);
+    }
+
     /**
      * Create a strict mock {@link ProgressListener}
      *
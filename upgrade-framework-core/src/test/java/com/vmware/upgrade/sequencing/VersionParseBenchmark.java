@@ -0,0 +1,77 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.sequencing;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A stand-alone benchmark of {@link Version.ComponentFactory#parse(String)} for simple and
+ * composite versions, bypassing the cache used by {@link Version#lookup(String)}.
+ * <p>
+ * For each version, the benchmark reports the mean time per parse after a warm-up period. This is
+ * not part of the test suite; run it with
+ * {@code java com.vmware.upgrade.sequencing.VersionParseBenchmark [iterations]}.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public final class VersionParseBenchmark {
+    private static final String[] VERSIONS = {
+        "1.2.3",
+        "1.0.0,2.0.0",
+        "[ \"1.0.0\", \"2.0.1\", \"3.0.0.transition\" ]",
+        "{ core: \"2.1.0\", sql: [ \"1.0.0\", \"1.4.0\" ], plugins: { a: \"1.0\", b: [ \"2.0\", { c: \"3.0\" } ] } }"
+    };
+
+    private VersionParseBenchmark() {
+    }
+
+    public static void main(final String[] args) {
+        final int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 1000000;
+
+        System.out.println("iterations: " + iterations);
+
+        for (final String version : VERSIONS) {
+            run(version, iterations);
+        }
+    }
+
+    private static void run(final String version, final int iterations) {
+        int hash = 0;
+        for (int i = 0; i < iterations; i++) {
+            hash += Version.ComponentFactory.parse(version).hashCode();
+        }
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            hash += Version.ComponentFactory.parse(version).hashCode();
+        }
+        final long elapsed = System.nanoTime() - start;
+
+        System.out.println(version + ": "
+                + (elapsed / iterations) + "ns per parse, "
+                + TimeUnit.NANOSECONDS.toMillis(elapsed) + "ms total "
+                + "(" + hash + ")");
+    }
+}
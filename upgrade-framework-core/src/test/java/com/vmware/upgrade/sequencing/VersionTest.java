@@ -22,9 +22,15 @@
 
 package com.vmware.upgrade.sequencing;
 
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
 import com.vmware.upgrade.TestGroups;
 
+import com.sun.management.ThreadMXBean;
+
 import org.testng.Assert;
+import org.testng.SkipException;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
@@ -92,6 +98,54 @@ public class VersionTest {
         }
     }
 
+    @DataProvider
+    public Object[][] parsedVersions() {
+        return new Object[][] {
+                new Object[] { "", "\"0.0.0\"" },
+                new Object[] { "\"1.2\"", "\"1.2.0\"" },
+                new Object[] { "1.0, 2.0", "[ \"1.0.0\", \"2.0.0\" ]" },
+                new Object[] { ",1.0", "[ \"0.0.0\", \"1.0.0\" ]" },
+                new Object[] { "[]", "[  ]" },
+                new Object[] { "{}", "{  }" },
+                new Object[] { "[1, 1.50, 1e1, -0]", "[ \"1.0.0\", \"1.5.0\", \"10.0.0\", \"0.0.0\" ]" },
+                new Object[] { "[ \"1.0\\u0030\",\t\"\" ] ", "[ \"1.0.0\", \"0.0.0\" ]" },
+                new Object[] { "[\"1.0.0\",[\"2.0\",[\"3\"]]]", "[ \"1.0.0\", [ \"2.0.0\", [ \"3.0.0\" ] ] ]" },
+                new Object[] { "{a: \"1.0\", \"b\": [1, {c_1: \"2.0.0.transition\"}]}",
+                        "{ \"a\": \"1.0.0\", \"b\": [ \"1.0.0\", { \"c_1\": \"2.0.0.transition\" } ] }" },
+                new Object[] { "{a: 1, b: 2, a: 3}", "{ \"a\": \"3.0.0\", \"b\": \"2.0.0\" }" }
+        };
+    }
+
+    @Test(groups = { TestGroups.UNIT }, dataProvider = "parsedVersions")
+    public void testParse(String value, String expected) {
+        Assert.assertEquals(Version.ComponentFactory.parse(value).toString(), expected);
+        Assert.assertEquals(Version.lookup(value).toString(), expected);
+    }
+
+    @DataProvider
+    public Object[][] unparseableVersions() {
+        return new Object[][] {
+                new Object[] { "1,2,3" },
+                new Object[] { "[1,,2]" },
+                new Object[] { "[1,2,]" },
+                new Object[] { "[1 2]" },
+                new Object[] { "[01]" },
+                new Object[] { "[true]" },
+                new Object[] { "[\"1.0.0\"" },
+                new Object[] { "[\"1.0\\x\"]" },
+                new Object[] { "{\"a\" \"1.0\"}" },
+                new Object[] { "{: \"1.0\"}" },
+                new Object[] { "{ \"a\": \"1.0\" } trailing" },
+                new Object[] { "\"1.0\",\"2.0\"" }
+        };
+    }
+
+    @Test(groups = { TestGroups.UNIT }, dataProvider = "unparseableVersions", expectedExceptions = { IllegalArgumentException.class })
+    public void testUnparseable(String value) {
+        Assert.assertNull(Version.lookup(value));
+        Version.ComponentFactory.parse(value);
+    }
+
     @Test(groups = { TestGroups.UNIT }, dataProvider = "transitions")
     public void testGetTransition(Version source, Version destination, Version expected) {
         Assert.assertEquals(source.getTransition(destination), expected);
@@ -249,4 +303,224 @@ public class VersionTest {
     public void testCompareTo(String a, String b, int rc) throws Exception {
         Assert.assertEquals(Math.signum(Version.lookup(a).compareTo(Version.lookup(b))), Math.signum(rc));
     }
+
+    @Test(groups = { TestGroups.UNIT })
+    public void testLookupIsInterned() {
+        String[] values = {"1.0", "2.0.0.TRANSITION", "1.0.0,2.0.0", "{ \"a\": \"1.0\", \"b\": [\"2.0\", \"3.0\"] }"};
+        for (String s : values) {
+            Assert.assertSame(Version.lookup(s), Version.lookup(new String(s)));
+            Assert.assertEquals(new Version(s), Version.lookup(s));
+        }
+    }
+
+    @Test(groups = { TestGroups.UNIT })
+    public void testReplaceDoesNotModifyInterned() {
+        final Version list = Version.lookup("[ \"1.0.0\", \"2.0.0\" ]");
+        final Version map = Version.lookup("{ \"a\": \"1.0.0\" }");
+
+        list.replace(1, Version.lookup("3.0.0"));
+        list.replace(2, Version.lookup("3.0.0"));
+        map.replace("a", Version.lookup("3.0.0"));
+        map.replace("b", Version.lookup("3.0.0"));
+
+        Assert.assertEquals(Version.lookup("[ \"1.0.0\", \"2.0.0\" ]").toString(), "[ \"1.0.0\", \"2.0.0\" ]");
+        Assert.assertEquals(Version.lookup("{ \"a\": \"1.0.0\" }").toString(), "{ \"a\": \"1.0.0\" }");
+    }
+
+    @Test(groups = { TestGroups.UNIT })
+    public void testInternedIsBounded() {
+        for (int i = 0; i < Version.MAX_INTERNED + 10; i++) {
+            Assert.assertNotNull(Version.lookup("1.0." + i));
+        }
+
+        Assert.assertTrue(Version.internedCount() <= Version.MAX_INTERNED);
+        Assert.assertSame(Version.lookup("1.0.1"), Version.lookup("1.0.1"));
+        Assert.assertSame(Version.lookup("0.0.0"), Version.INITIAL);
+        Assert.assertSame(Version.lookup("0.0"), Version.INITIAL);
+    }
+
+    @Test(groups = { TestGroups.UNIT })
+    public void testReplaceSharesComponents() {
+        final StringBuilder value = new StringBuilder("[ \"1.0.0\"");
+        for (int i = 1; i < 50; i++) {
+            value.append(", { \"c").append(i).append("\": [ \"").append(i).append(".0.0\" ] }");
+        }
+        final Version original = Version.lookup(value.append(" ]").toString());
+        final String originalString = original.toString();
+
+        final Version replaced = original.replace(10, Version.lookup("2.0.0"));
+
+        Assert.assertEquals(original.toString(), originalString);
+        Assert.assertEquals(replaced.get(10), Version.lookup("2.0.0"));
+
+        final List<Version.Component<?>> before = ((Version.ListComponent) original.getRawVersion()).get();
+        final List<Version.Component<?>> after = ((Version.ListComponent) replaced.getRawVersion()).get();
+        Assert.assertEquals(after.size(), before.size());
+        for (int i = 0; i < before.size(); i++) {
+            if (i != 10) {
+                Assert.assertSame(after.get(i), before.get(i));
+            }
+        }
+    }
+
+    @Test(groups = { TestGroups.UNIT })
+    public void testComponentsAreUnmodifiable() {
+        final Version list = Version.lookup("[ \"1.0.0\", \"2.0.0\" ]");
+        final Version map = Version.lookup("{ \"a\": \"1.0.0\" }");
+
+        try {
+            ((Version.ListComponent) list.getRawVersion()).get().clear();
+            Assert.fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+        try {
+            ((Version.MapComponent) map.getRawVersion()).get().clear();
+            Assert.fail("Expected UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        Assert.assertEquals(list.toString(), "[ \"1.0.0\", \"2.0.0\" ]");
+        Assert.assertEquals(map.toString(), "{ \"a\": \"1.0.0\" }");
+    }
+
+    @DataProvider
+    public Object[][] singleVersions() {
+        return new Object[][] {
+                new Object[] { "1.0.0", "1.0.0" },
+                new Object[] { "1.0.0", "1.0.1" },
+                new Object[] { "1.2.0", "1.1.9" },
+                new Object[] { "2.0.0", "1.65535.65535" },
+                new Object[] { "1.0.0.a", "1.0.0.b" },
+                new Object[] { "1.0.0", "1.0.0.transition" },
+                new Object[] { "1.70000.0", "1.65536.0" },
+                new Object[] { "1.0.70000", "1.1.0" },
+                new Object[] { "2147483647.0.0", "2147483646.65535.65535" },
+                new Object[] { "20140101.1.0", "20131231.9.0" }
+        };
+    }
+
+    @Test(groups = { TestGroups.UNIT }, dataProvider = "singleVersions")
+    public void testCompareMatchesOsgi(String a, String b) {
+        final int expected = Integer.signum(org.osgi.framework.Version.parseVersion(a).compareTo(org.osgi.framework.Version.parseVersion(b)));
+
+        Assert.assertEquals(Integer.signum(Version.lookup(a).compareTo(Version.lookup(b))), expected);
+        Assert.assertEquals(Integer.signum(Version.lookup(b).compareTo(Version.lookup(a))), -expected);
+    }
+
+    @Test(groups = { TestGroups.UNIT })
+    public void testHashCode() {
+        String[] values = {"1.0.0", "0.0.0", "1.0.0,2.0.0", "{ \"a\": \"1.0\", \"b\": [\"2.0\", \"3.0\"] }"};
+        for (String s : values) {
+            final Version version = Version.lookup(s);
+            Assert.assertEquals(version.hashCode(), version.getRawVersion().get().hashCode());
+            Assert.assertEquals(version.hashCode(), new Version(s).hashCode());
+        }
+    }
+
+    @Test(groups = { TestGroups.UNIT })
+    public void testInitialIsShared() {
+        Assert.assertSame(Version.lookup("0.0.0"), Version.INITIAL);
+        Assert.assertSame(Version.lookup("0"), Version.INITIAL);
+        Assert.assertSame(Version.lookup("1.0.0").get(1), Version.INITIAL);
+        Assert.assertSame(Version.lookup("[ \"1.0.0\" ]").get(3), Version.INITIAL);
+        Assert.assertSame(Version.lookup("{ \"a\": \"1.0.0\" }").get("b"), Version.INITIAL);
+        Assert.assertSame(Version.lookup("[ \"0.0\" ]").getRawVersion().get(0), Version.INITIAL.getRawVersion());
+    }
+
+    @Test(groups = { TestGroups.UNIT })
+    public void testCompareDoesNotAllocate() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof ThreadMXBean) || !((ThreadMXBean) bean).isThreadAllocatedMemorySupported()) {
+            throw new SkipException("Allocation cannot be measured on this JVM");
+        }
+        final ThreadMXBean threads = (ThreadMXBean) bean;
+        final long threadId = Thread.currentThread().getId();
+
+        final Version[] versions = {
+                Version.lookup("1.0.0"),
+                Version.lookup("1.0.0,1.0.0"),
+                Version.lookup("1.0.0,2.0.0"),
+                Version.lookup("[ \"1.0.0\", \"2.0.0\", \"3.0.0\" ]"),
+                Version.lookup("[ \"2.0.0\", \"2.0.0\", \"3.0.0\" ]")
+        };
+
+        int result = 0;
+        for (int round = 0; round < 2; round++) {
+            final long before = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < 1000; i++) {
+                for (Version a : versions) {
+                    for (Version b : versions) {
+                        result += a.compareTo(b) + a.hashCode();
+                    }
+                }
+            }
+            final long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+
+            if (round > 0) {
+                // Allocating for each of the 25,000 comparisons would far exceed this
+                Assert.assertTrue(allocated < 4096, "Allocated " + allocated + " bytes (" + result + ")");
+            }
+        }
+    }
+
+    @DataProvider
+    public Object[][] encodedVersions() {
+        return new Object[][] {
+                new Object[] { "0.0.0" },
+                new Object[] { "1.2.3" },
+                new Object[] { "2147483647.65536.300" },
+                new Object[] { "1.0.0.transition" },
+                new Object[] { "1.0.0.foo-transition" },
+                new Object[] { "1.0.0,2.0.0" },
+                new Object[] { "[]" },
+                new Object[] { "{}" },
+                new Object[] { "[ \"1.0.0\", [ \"2.0.0\", { \"a\": \"3.0.0.transition\" } ] ]" },
+                new Object[] { "{ \"core\": \"2.1.0\", \"sql\": [ \"1.0.0\", \"1.4.0\" ], \"\u00e9\": \"1.0\" }" }
+        };
+    }
+
+    @Test(groups = { TestGroups.UNIT }, dataProvider = "encodedVersions")
+    public void testBytesRoundTrip(String value) {
+        final Version version = Version.lookup(value);
+        final Version decoded = Version.fromBytes(version.toBytes());
+
+        Assert.assertEquals(decoded, version);
+        Assert.assertEquals(decoded.toString(), version.toString());
+        Assert.assertEquals(decoded.hashCode(), version.hashCode());
+        Assert.assertEquals(decoded.isTransition(), version.isTransition());
+        Assert.assertEquals(Version.lookup(decoded.toString()), version);
+    }
+
+    @Test(groups = { TestGroups.UNIT })
+    public void testBytesAreCompact() {
+        Assert.assertEquals(Version.INITIAL.toBytes(), new byte[] { 1, 0 });
+        Assert.assertEquals(Version.lookup("1.2.3").toBytes(), new byte[] { 1, 1, 1, 2, 3, 0 });
+        Assert.assertEquals(Version.lookup("1.2.3.transition").toBytes(), new byte[] { 1, 1, 1, 2, 3, 1 });
+        Assert.assertEquals(Version.lookup("1.0,2.0").toBytes(), new byte[] { 1, 2, 2, 1, 1, 0, 0, 0, 1, 2, 0, 0, 0 });
+        Assert.assertSame(Version.fromBytes(new byte[] { 1, 0 }), Version.INITIAL);
+    }
+
+    @DataProvider
+    public Object[][] invalidEncodings() {
+        return new Object[][] {
+                new Object[] { new byte[] {} },
+                new Object[] { new byte[] { 2, 0 } },
+                new Object[] { new byte[] { 1, 4 } },
+                new Object[] { new byte[] { 1, 0, 0 } },
+                new Object[] { new byte[] { 1, 1, 1, 2 } },
+                new Object[] { new byte[] { 1, 1, (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff, 0x0f, 0, 0, 0 } },
+                new Object[] { new byte[] { 1, 1, 1, 0, 0, 5, 'a' } },
+                new Object[] { new byte[] { 1, 1, 1, 0, 0, 3, '!' } },
+                new Object[] { new byte[] { 1, 2, 100, 0 } },
+                new Object[] { new byte[] { 1, 3, 2, 1, 'a', 0, 1, 'a', 0 } },
+                new Object[] { null }
+        };
+    }
+
+    @Test(groups = { TestGroups.UNIT }, dataProvider = "invalidEncodings", expectedExceptions = { IllegalArgumentException.class })
+    public void testInvalidBytes(byte[] bytes) {
+        Version.fromBytes(bytes);
+    }
 }
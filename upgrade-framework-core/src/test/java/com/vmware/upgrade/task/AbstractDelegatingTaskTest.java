@@ -22,6 +22,7 @@
 
 package com.vmware.upgrade.task;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import com.vmware.upgrade.Task;
@@ -96,4 +97,20 @@ public class AbstractDelegatingTaskTest {
 
         AssertJUnit.assertTrue(lastReportHolder.get().getProgress() > 0);
     }
+
+    @Test
+    public void testDescriptionIsMemoised() throws Exception {
+        final AtomicInteger descriptions = new AtomicInteger();
+        Task delegate = TaskTestUtil.createMockTask();
+        Task parent = new AbstractDelegatingTask(PARENT_NAME, delegate) {
+            @Override
+            protected String describe() {
+                descriptions.incrementAndGet();
+                return super.describe();
+            }
+        };
+
+        AssertJUnit.assertEquals(parent.toString(), parent.toString());
+        AssertJUnit.assertEquals(1, descriptions.get());
+    }
 }
@@ -0,0 +1,195 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.task;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.vmware.upgrade.DummyUpgradeContext;
+import com.vmware.upgrade.Task;
+import com.vmware.upgrade.TestGroups;
+import com.vmware.upgrade.UpgradeContext;
+import com.vmware.upgrade.journal.ExecutionJournal;
+import com.vmware.upgrade.sequencing.Version;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for {@link Checkpoints}
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class CheckpointsTest {
+    private static final UpgradeContext DUMMY_UPGRADE_CONTEXT = new DummyUpgradeContext();
+
+    /**
+     * An {@link ExecutionJournal} which keeps its checkpoints in memory.
+     */
+    static final class MemoryJournal implements ExecutionJournal {
+        final Set<String> completed = Collections.synchronizedSet(new LinkedHashSet<String>());
+
+        @Override
+        public Record read() {
+            return null;
+        }
+
+        @Override
+        public void begin(final Version source, final Version target) {
+            completed.clear();
+        }
+
+        @Override
+        public void recordCompleted(final String checkpoint) {
+            completed.add(checkpoint);
+        }
+
+        @Override
+        public void end() {
+            completed.clear();
+        }
+    }
+
+    private static Task counting(final String name, final AtomicInteger count, final boolean fail) {
+        return new TrivialTask(name, new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                count.incrementAndGet();
+                if (fail) {
+                    throw new IOException(name);
+                }
+                return null;
+            }
+        });
+    }
+
+    private static void execute(final ExecutionJournal journal, final Set<String> completed, final Task task) throws Exception {
+        Checkpoints.call(DUMMY_UPGRADE_CONTEXT, journal, completed, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                Checkpoints.execute(task, 0);
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Verify that only the tasks which did not complete during an interrupted execution are
+     * repeated when it is resumed
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testResumeSerial() throws Exception {
+        final MemoryJournal journal = new MemoryJournal();
+        final AtomicInteger first = new AtomicInteger();
+        final AtomicInteger second = new AtomicInteger();
+
+        try {
+            execute(journal, Collections.<String>emptySet(), new SerialAggregateTask(DUMMY_UPGRADE_CONTEXT, "Serial", Arrays.asList(
+                    counting("first", first, false), counting("second", second, true))));
+            Assert.fail("Expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+        Assert.assertEquals(journal.completed.size(), 1);
+
+        final Set<String> completed = new HashSet<String>(journal.completed);
+        execute(journal, completed, new SerialAggregateTask(DUMMY_UPGRADE_CONTEXT, "Serial", Arrays.asList(
+                counting("first", first, false), counting("second", second, false))));
+
+        Assert.assertEquals(first.get(), 1);
+        Assert.assertEquals(second.get(), 2);
+        Assert.assertEquals(journal.completed.size(), 2);
+    }
+
+    /**
+     * Verify that tasks executed on other threads by a {@link ParallelAggregateTask} are recorded
+     * and that identically named siblings are distinguished
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testResumeParallel() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final MemoryJournal journal = new MemoryJournal();
+            final AtomicInteger count = new AtomicInteger();
+            final List<Task> children = new ArrayList<Task>();
+            for (int i = 0; i < 3; i++) {
+                children.add(counting("child", count, false));
+            }
+
+            execute(journal, Collections.<String>emptySet(), new ParallelAggregateTask(DUMMY_UPGRADE_CONTEXT, "Parallel", executor, children));
+            Assert.assertEquals(journal.completed.size(), 3);
+
+            children.clear();
+            for (int i = 0; i < 3; i++) {
+                children.add(counting("child", count, false));
+            }
+            execute(journal, new HashSet<String>(journal.completed), new ParallelAggregateTask(DUMMY_UPGRADE_CONTEXT, "Parallel", executor, children));
+            Assert.assertEquals(count.get(), 3);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Verify that checkpoints within an atomic unit are only recorded once it commits
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testAtomicUnit() throws Exception {
+        final MemoryJournal journal = new MemoryJournal();
+        final AtomicInteger count = new AtomicInteger();
+
+        execute(journal, Collections.<String>emptySet(), new AbstractDelegatingTask("Atomic", counting("discarded", count, false)) {
+            @Override
+            protected void doCall() throws Exception {
+                final Checkpoints.AtomicUnit unit = Checkpoints.beginAtomic();
+                super.doCall();
+                Assert.assertTrue(journal.completed.isEmpty());
+                unit.discard();
+            }
+        });
+        Assert.assertTrue(journal.completed.isEmpty());
+
+        execute(journal, Collections.<String>emptySet(), new AbstractDelegatingTask("Atomic", counting("committed", count, false)) {
+            @Override
+            protected void doCall() throws Exception {
+                final Checkpoints.AtomicUnit unit = Checkpoints.beginAtomic();
+                super.doCall();
+                Assert.assertTrue(journal.completed.isEmpty());
+                unit.commit();
+            }
+        });
+        Assert.assertEquals(journal.completed.size(), 1);
+    }
+}
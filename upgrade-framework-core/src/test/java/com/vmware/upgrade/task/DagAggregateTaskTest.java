@@ -0,0 +1,254 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.vmware.upgrade.DummyUpgradeContext;
+import com.vmware.upgrade.Task;
+import com.vmware.upgrade.TestGroups;
+import com.vmware.upgrade.UpgradeContext;
+
+import org.easymock.EasyMock;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for {@link DagAggregateTask}
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class DagAggregateTaskTest {
+    private static final String TEST_TASK_NAME = "Test task";
+
+    private static final UpgradeContext DUMMY_UPGRADE_CONTEXT = new DummyUpgradeContext();
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterClass(alwaysRun = true)
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * A task which records the order in which it executed and the number of recording tasks
+     * executing concurrently with it.
+     */
+    private static Task createRecordingTask(final String name, final List<String> order, final AtomicInteger concurrent, final AtomicInteger maxConcurrent) {
+        return new TrivialTask(name, new Callable<Void>() {
+            @Override
+            public Void call() throws InterruptedException {
+                final int current = concurrent.incrementAndGet();
+                synchronized (maxConcurrent) {
+                    maxConcurrent.set(Math.max(maxConcurrent.get(), current));
+                }
+                Thread.sleep(20);
+                synchronized (order) {
+                    order.add(name);
+                }
+                concurrent.decrementAndGet();
+                return null;
+            }
+        });
+    }
+
+    private static Map<Task, Collection<Task>> dependencies(final Task... pairs) {
+        final Map<Task, Collection<Task>> dependencies = new HashMap<Task, Collection<Task>>();
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (!dependencies.containsKey(pairs[i])) {
+                dependencies.put(pairs[i], new ArrayList<Task>());
+            }
+            dependencies.get(pairs[i]).add(pairs[i + 1]);
+        }
+        return dependencies;
+    }
+
+    /**
+     * Verify that {@link DagAggregateTask} correctly handles an empty list
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testNoTasks() throws Exception {
+        final Map<Task, Collection<Task>> none = Collections.emptyMap();
+        new DagAggregateTask(DUMMY_UPGRADE_CONTEXT, TEST_TASK_NAME, executor, Collections.<Task>emptyList(), none).call();
+    }
+
+    /**
+     * Verify that {@link DagAggregateTask} executes every task when there are no dependencies
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testIndependentTasks() throws Exception {
+        final List<Task> mocks = new ArrayList<Task>();
+        for (int i = 0; i < 10; i++) {
+            mocks.add(TaskTestUtil.createMockTask());
+        }
+
+        final Map<Task, Collection<Task>> none = Collections.emptyMap();
+        new DagAggregateTask(DUMMY_UPGRADE_CONTEXT, TEST_TASK_NAME, executor, mocks, none).call();
+
+        for (Task mock : mocks) {
+            EasyMock.verify(mock);
+        }
+    }
+
+    /**
+     * Verify that {@link DagAggregateTask} only starts a task once its dependencies have completed
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testDependenciesAreRespected() throws Exception {
+        final List<String> order = new ArrayList<String>();
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        final Task schema = createRecordingTask("schema", order, concurrent, maxConcurrent);
+        final Task data = createRecordingTask("data", order, concurrent, maxConcurrent);
+        final Task indexes = createRecordingTask("indexes", order, concurrent, maxConcurrent);
+        final Task unrelated = createRecordingTask("unrelated", order, concurrent, maxConcurrent);
+
+        new DagAggregateTask(DUMMY_UPGRADE_CONTEXT, TEST_TASK_NAME, executor,
+                Arrays.asList(indexes, data, unrelated, schema),
+                dependencies(data, schema, indexes, data, indexes, schema)).call();
+
+        Assert.assertEquals(order.size(), 4);
+        Assert.assertTrue(order.indexOf("schema") < order.indexOf("data"));
+        Assert.assertTrue(order.indexOf("data") < order.indexOf("indexes"));
+    }
+
+    /**
+     * Verify that {@link DagAggregateTask} never executes more than the configured number of
+     * tasks at once
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testConcurrencyIsBounded() throws Exception {
+        final List<String> order = new ArrayList<String>();
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        final List<Task> tasks = new ArrayList<Task>();
+        for (int i = 0; i < 12; i++) {
+            tasks.add(createRecordingTask("task " + i, order, concurrent, maxConcurrent));
+        }
+
+        final Map<Task, Collection<Task>> none = Collections.emptyMap();
+        new DagAggregateTask(DUMMY_UPGRADE_CONTEXT, TEST_TASK_NAME, executor, tasks, none, 2).call();
+
+        Assert.assertEquals(order.size(), 12);
+        Assert.assertTrue(maxConcurrent.get() <= 2);
+    }
+
+    /**
+     * Verify that {@link DagAggregateTask} starts the ready task on the longest dependency chain
+     * first
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testCriticalPathIsPrioritised() throws Exception {
+        final List<String> order = new ArrayList<String>();
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        final Task independent = createRecordingTask("independent", order, concurrent, maxConcurrent);
+        final Task first = createRecordingTask("first", order, concurrent, maxConcurrent);
+        final Task second = createRecordingTask("second", order, concurrent, maxConcurrent);
+        final Task third = createRecordingTask("third", order, concurrent, maxConcurrent);
+
+        new DagAggregateTask(DUMMY_UPGRADE_CONTEXT, TEST_TASK_NAME, executor,
+                Arrays.asList(independent, first, second, third),
+                dependencies(second, first, third, second), 1).call();
+
+        Assert.assertEquals(order, Arrays.asList("first", "second", "independent", "third"));
+    }
+
+    /**
+     * Verify that {@link DagAggregateTask} does not start the dependents of a failed task
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testFailureStopsDependents() throws Exception {
+        final List<String> order = new ArrayList<String>();
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+
+        final Task failing = new TrivialTask("failing", new Callable<Void>() {
+            @Override
+            public Void call() {
+                throw new IllegalStateException("failure");
+            }
+        });
+        final Task dependent = createRecordingTask("dependent", order, concurrent, maxConcurrent);
+
+        try {
+            new DagAggregateTask(DUMMY_UPGRADE_CONTEXT, TEST_TASK_NAME, executor,
+                    Arrays.asList(failing, dependent),
+                    dependencies(dependent, failing)).call();
+            Assert.fail("Expected ExecutionException");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+
+        Assert.assertTrue(order.isEmpty());
+    }
+
+    /**
+     * Verify that {@link DagAggregateTask} rejects cyclic dependencies
+     */
+    @Test(groups = { TestGroups.UNIT }, expectedExceptions = {IllegalArgumentException.class})
+    public void testCycleIsRejected() throws Exception {
+        final Task a = TaskTestUtil.createMockTask();
+        final Task b = TaskTestUtil.createMockTask();
+        final Task c = TaskTestUtil.createMockTask();
+
+        new DagAggregateTask(DUMMY_UPGRADE_CONTEXT, TEST_TASK_NAME, executor, Arrays.asList(a, b, c), dependencies(a, b, b, c, c, a));
+    }
+
+    /**
+     * Verify that {@link DagAggregateTask} rejects dependencies on tasks which are not children
+     */
+    @Test(groups = { TestGroups.UNIT }, expectedExceptions = {IllegalArgumentException.class})
+    public void testUnknownDependencyIsRejected() throws Exception {
+        final Task a = TaskTestUtil.createMockTask();
+        final Task b = TaskTestUtil.createMockTask();
+
+        new DagAggregateTask(DUMMY_UPGRADE_CONTEXT, TEST_TASK_NAME, executor, Arrays.asList(a), dependencies(a, b));
+    }
+
+    /**
+     * Verify that {@link DagAggregateTask} rejects a non-positive concurrency limit
+     */
+    @Test(groups = { TestGroups.UNIT }, expectedExceptions = {IllegalArgumentException.class})
+    public void testInvalidConcurrency() throws Exception {
+        final Map<Task, Collection<Task>> none = Collections.emptyMap();
+        new DagAggregateTask(DUMMY_UPGRADE_CONTEXT, TEST_TASK_NAME, executor, Arrays.asList(TaskTestUtil.createMockTask()), none, 0);
+    }
+}
@@ -0,0 +1,129 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.task;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.vmware.upgrade.Task;
+import com.vmware.upgrade.TestGroups;
+import com.vmware.upgrade.progress.ExecutionState;
+import com.vmware.upgrade.progress.ProgressReport;
+
+import org.easymock.EasyMock;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for {@link DeferredTask}
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class DeferredTaskTest {
+    /**
+     * Verify that the task is created only once the {@link DeferredTask} is executed and that its
+     * progress is reported
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testCreatedOnCall() throws Exception {
+        final AtomicInteger created = new AtomicInteger();
+        final AtomicInteger executed = new AtomicInteger();
+        final Task deferred = new DeferredTask("Deferred", new Callable<Task>() {
+            @Override
+            public Task call() {
+                created.incrementAndGet();
+                return new TrivialTask("Trivial", new Runnable() {
+                    @Override
+                    public void run() {
+                        executed.incrementAndGet();
+                    }
+                });
+            }
+        });
+
+        final AtomicReference<ProgressReport> report = new AtomicReference<ProgressReport>();
+        deferred.addListener(TaskTestUtil.createLastReportTrackingListener(report));
+        deferred.requestProgressReport();
+
+        Assert.assertEquals(created.get(), 0);
+        Assert.assertEquals(report.get().getState(), ExecutionState.PENDING);
+
+        deferred.call();
+
+        Assert.assertEquals(created.get(), 1);
+        Assert.assertEquals(executed.get(), 1);
+        Assert.assertEquals(report.get().getState(), ExecutionState.COMPLETED);
+        Assert.assertEquals(report.get().getProgress(), 100);
+    }
+
+    /**
+     * Verify that a task which does not report its own progress is reported as completed
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testMockTask() throws Exception {
+        final Task mock = TaskTestUtil.createMockTask();
+        final Task deferred = new DeferredTask("Deferred", new Callable<Task>() {
+            @Override
+            public Task call() {
+                return mock;
+            }
+        });
+
+        final AtomicReference<ProgressReport> report = new AtomicReference<ProgressReport>();
+        deferred.addListener(TaskTestUtil.createLastReportTrackingListener(report));
+
+        deferred.call();
+
+        EasyMock.verify(mock);
+        Assert.assertEquals(report.get().getState(), ExecutionState.COMPLETED);
+    }
+
+    /**
+     * Verify that failure to create the task is reported
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testCreationFailure() throws Exception {
+        final Task deferred = new DeferredTask("Deferred", new Callable<Task>() {
+            @Override
+            public Task call() throws IOException {
+                throw new IOException("Missing script");
+            }
+        });
+
+        final AtomicReference<ProgressReport> report = new AtomicReference<ProgressReport>();
+        deferred.addListener(TaskTestUtil.createLastReportTrackingListener(report));
+
+        try {
+            deferred.call();
+            Assert.fail("Expected IOException");
+        } catch (IOException e) {
+            // expected
+        }
+
+        Assert.assertEquals(report.get().getState(), ExecutionState.FAILED);
+    }
+}
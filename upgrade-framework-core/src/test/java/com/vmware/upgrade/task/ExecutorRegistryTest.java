@@ -0,0 +1,274 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+package com.vmware.upgrade.task;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.vmware.upgrade.DummyUpgradeContext;
+import com.vmware.upgrade.Task;
+import com.vmware.upgrade.TestGroups;
+import com.vmware.upgrade.UpgradeContext;
+
+import org.easymock.EasyMock;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for {@link ExecutorRegistry}
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class ExecutorRegistryTest {
+    private static final String POOL_NAME = "test";
+
+    private static final UpgradeContext DUMMY_UPGRADE_CONTEXT = new DummyUpgradeContext();
+
+    /**
+     * Verify that repeated lookups of a pool return the same shared executor
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testPoolIsShared() {
+        final ExecutorRegistry registry = new ExecutorRegistry();
+        try {
+            Assert.assertSame(registry.getExecutor(POOL_NAME), registry.getExecutor(POOL_NAME));
+            Assert.assertSame(registry.getExecutor(null), registry.getExecutor(ExecutorRegistry.DEFAULT_POOL));
+            Assert.assertNotSame(registry.getExecutor(POOL_NAME), registry.getExecutor(ExecutorRegistry.DEFAULT_POOL));
+        } finally {
+            registry.close();
+        }
+    }
+
+    /**
+     * Verify that configured pool sizes are applied
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testConfiguredPoolSize() {
+        final ExecutorRegistry registry = new ExecutorRegistry(3);
+        try {
+            registry.setPoolSize(POOL_NAME, 5);
+            registry.getExecutor(POOL_NAME);
+            registry.getExecutor(null);
+
+            final Map<String, ExecutorRegistry.PoolStatistics> statistics = registry.getStatistics();
+            Assert.assertEquals(statistics.size(), 2);
+            Assert.assertEquals(statistics.get(POOL_NAME).getParallelism(), 5);
+            Assert.assertEquals(statistics.get(ExecutorRegistry.DEFAULT_POOL).getParallelism(), 3);
+        } finally {
+            registry.close();
+        }
+    }
+
+    /**
+     * Verify that the size of a pool cannot be changed once it has been created
+     */
+    @Test(groups = { TestGroups.UNIT }, expectedExceptions = { IllegalStateException.class })
+    public void testPoolSizeAfterCreation() {
+        final ExecutorRegistry registry = new ExecutorRegistry();
+        try {
+            registry.getExecutor(POOL_NAME);
+            registry.setPoolSize(POOL_NAME, 5);
+        } finally {
+            registry.close();
+        }
+    }
+
+    /**
+     * Verify that pool threads do not prevent the JVM from exiting
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testPoolThreadsAreDaemons() throws Exception {
+        final ExecutorRegistry registry = new ExecutorRegistry();
+        try {
+            final Boolean daemon = registry.getExecutor(POOL_NAME).submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return Thread.currentThread().isDaemon();
+                }
+            }).get();
+
+            Assert.assertTrue(daemon);
+        } finally {
+            registry.close();
+        }
+    }
+
+    /**
+     * Verify that pools are shut down and no new pools are created once the registry is closed
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testClose() {
+        final ExecutorRegistry registry = new ExecutorRegistry();
+        final ExecutorService executor = registry.getExecutor(POOL_NAME);
+
+        registry.close();
+
+        Assert.assertTrue(executor.isShutdown());
+        try {
+            registry.getExecutor("other");
+            Assert.fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Verify that a virtual thread executor is available exactly when the runtime supports it
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testVirtualThreadExecutor() throws Exception {
+        final ExecutorRegistry registry = new ExecutorRegistry();
+        try {
+            if (!ExecutorRegistry.isVirtualThreadSupported()) {
+                try {
+                    registry.getVirtualThreadExecutor();
+                    Assert.fail("Expected UnsupportedOperationException");
+                } catch (UnsupportedOperationException e) {
+                    // expected
+                }
+                return;
+            }
+
+            final ExecutorService executor = registry.getVirtualThreadExecutor();
+            Assert.assertSame(registry.getVirtualThreadExecutor(), executor);
+
+            final List<Task> children = new ArrayList<Task>();
+            for (int i = 0; i < 4; i++) {
+                children.add(TaskTestUtil.createMockTask());
+            }
+            new ParallelAggregateTask(DUMMY_UPGRADE_CONTEXT, "Parallel", executor, children).call();
+            for (Task mock : children) {
+                EasyMock.verify(mock);
+            }
+
+            registry.close();
+            Assert.assertTrue(executor.isShutdown());
+        } finally {
+            registry.close();
+        }
+    }
+
+    /**
+     * Verify that many {@link ParallelAggregateTask}s can share a single small pool
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testSharedPoolExecution() throws Exception {
+        final ExecutorRegistry registry = new ExecutorRegistry(2);
+        try {
+            final List<Task> mocks = new ArrayList<Task>();
+            final List<Task> aggregates = new ArrayList<Task>();
+            for (int i = 0; i < 5; i++) {
+                final List<Task> children = new ArrayList<Task>();
+                for (int j = 0; j < 4; j++) {
+                    children.add(TaskTestUtil.createMockTask());
+                }
+                mocks.addAll(children);
+                aggregates.add(new ParallelAggregateTask(DUMMY_UPGRADE_CONTEXT, "Parallel " + i, registry.getExecutor(POOL_NAME), children));
+            }
+
+            new SerialAggregateTask(DUMMY_UPGRADE_CONTEXT, "Serial", aggregates).call();
+
+            for (Task mock : mocks) {
+                EasyMock.verify(mock);
+            }
+        } finally {
+            registry.close();
+        }
+    }
+
+    /**
+     * Verify that deeply nested {@link ParallelAggregateTask}s sharing a single-threaded pool
+     * complete rather than deadlocking
+     */
+    @Test(groups = { TestGroups.UNIT }, timeOut = 30000)
+    public void testNestedExecutionInSharedPool() throws Exception {
+        final ExecutorRegistry registry = new ExecutorRegistry(1);
+        try {
+            final ExecutorService executor = registry.getExecutor(POOL_NAME);
+            final List<Task> mocks = new ArrayList<Task>();
+            final Task root = createNestedTask(executor, 4, mocks);
+
+            executor.submit(root).get();
+
+            for (Task mock : mocks) {
+                EasyMock.verify(mock);
+            }
+        } finally {
+            registry.close();
+        }
+    }
+
+    /**
+     * Verify that nesting which needs more spare threads than a pool may start fails clearly
+     * rather than deadlocking
+     */
+    @Test(groups = { TestGroups.UNIT }, timeOut = 30000)
+    public void testNestingBeyondSpareThreadsFails() throws Exception {
+        final ExecutorRegistry registry = new ExecutorRegistry(1);
+        try {
+            final ExecutorService executor = registry.getExecutor(POOL_NAME);
+            Task task = new TrivialTask("Leaf", new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            for (int i = 0; i < ExecutorRegistry.MAX_SPARE_THREADS + 2; i++) {
+                task = new ParallelAggregateTask(DUMMY_UPGRADE_CONTEXT, "Depth " + i, executor, Collections.singletonList(task));
+            }
+
+            try {
+                executor.submit(task).get();
+                Assert.fail("Expected ExecutionException");
+            } catch (ExecutionException e) {
+                Throwable cause = e;
+                while (cause != null && !(cause instanceof RejectedExecutionException)) {
+                    cause = cause.getCause();
+                }
+                Assert.assertNotNull(cause);
+            }
+        } finally {
+            registry.close();
+        }
+    }
+
+    private static Task createNestedTask(final ExecutorService executor, final int depth, final List<Task> mocks) throws Exception {
+        if (depth == 0) {
+            final Task mock = TaskTestUtil.createMockTask();
+            mocks.add(mock);
+            return mock;
+        }
+
+        final List<Task> children = new ArrayList<Task>();
+        for (int i = 0; i < 3; i++) {
+            children.add(createNestedTask(executor, depth - 1, mocks));
+        }
+        return new ParallelAggregateTask(DUMMY_UPGRADE_CONTEXT, "Depth " + depth, executor, children);
+    }
+}
@@ -0,0 +1,109 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.task;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.vmware.upgrade.DummyUpgradeContext;
+import com.vmware.upgrade.Task;
+import com.vmware.upgrade.UpgradeContext;
+
+/**
+ * A stand-alone benchmark comparing a {@link ParallelAggregateTask} executed using a fixed pool
+ * of platform threads against one executed using virtual threads.
+ * <p>
+ * Each child simulates an I/O-bound task (such as a JDBC statement) by sleeping. For each mode the
+ * benchmark reports the wall-clock time, the peak number of live threads and the heap in use
+ * after execution. This is not part of the test suite; run it with
+ * {@code java com.vmware.upgrade.task.ParallelAggregateTaskBenchmark [children] [poolSize] [millis]}.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public final class ParallelAggregateTaskBenchmark {
+    private static final UpgradeContext CONTEXT = new DummyUpgradeContext();
+
+    private ParallelAggregateTaskBenchmark() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int children = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        final int poolSize = (args.length > 1) ? Integer.parseInt(args[1]) : ExecutorRegistry.DEFAULT_POOL_SIZE;
+        final long millis = (args.length > 2) ? Long.parseLong(args[2]) : 50;
+
+        System.out.println("children: " + children + ", pool size: " + poolSize + ", task duration: " + millis + "ms");
+
+        final ExecutorRegistry registry = new ExecutorRegistry(poolSize);
+        try {
+            run("platform (fixed pool)", registry.getExecutor(ExecutorRegistry.DEFAULT_POOL), children, millis);
+
+            if (ExecutorRegistry.isVirtualThreadSupported()) {
+                run("virtual", registry.getVirtualThreadExecutor(), children, millis);
+            } else {
+                System.out.println("virtual: not supported by this runtime (requires Java 21 or later)");
+            }
+        } finally {
+            registry.close();
+        }
+    }
+
+    private static void run(final String mode, final ExecutorService executor, final int children, final long millis) throws Exception {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        final List<Task> tasks = new ArrayList<Task>(children);
+        for (int i = 0; i < children; i++) {
+            tasks.add(new TrivialTask("Child " + i, new Callable<Void>() {
+                @Override
+                public Void call() throws InterruptedException {
+                    Thread.sleep(millis);
+                    return null;
+                }
+            }));
+        }
+        final ParallelAggregateTask task = new ParallelAggregateTask(CONTEXT, mode, executor, tasks);
+
+        System.gc();
+        threads.resetPeakThreadCount();
+        final long heapBefore = memory.getHeapMemoryUsage().getUsed();
+        final long start = System.nanoTime();
+
+        task.call();
+
+        final long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        final long heapAfter = memory.getHeapMemoryUsage().getUsed();
+
+        System.out.println(mode + ": "
+                + elapsed + "ms, "
+                + "peak platform threads: " + threads.getPeakThreadCount() + ", "
+                + "heap growth: " + ((heapAfter - heapBefore) / 1024) + "KiB");
+    }
+}
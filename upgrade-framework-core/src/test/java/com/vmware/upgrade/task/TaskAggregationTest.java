@@ -26,15 +26,25 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.vmware.upgrade.DummyUpgradeContext;
 import com.vmware.upgrade.Task;
 import com.vmware.upgrade.TestGroups;
 import com.vmware.upgrade.UpgradeContext;
+import com.vmware.upgrade.progress.ExecutionState;
+import com.vmware.upgrade.progress.ProgressReport;
 
 import org.easymock.EasyMock;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
 /**
@@ -200,4 +210,107 @@ public class TaskAggregationTest {
             EasyMock.verify(mock);
         }
     }
+
+    /**
+     * Verify that {@link ParallelAggregateTask} fails as soon as any child fails, cancelling the
+     * children which are still running
+     */
+    @Test(groups = { TestGroups.UNIT }, timeOut = 10000)
+    public void testParallelAggregationFailsFast() throws Exception {
+        final CountDownLatch blockingStarted = new CountDownLatch(1);
+        final AtomicBoolean blockingInterrupted = new AtomicBoolean();
+
+        final Task blocking = new TrivialTask("Blocking", new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                blockingStarted.countDown();
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(10));
+                } catch (InterruptedException e) {
+                    blockingInterrupted.set(true);
+                    throw e;
+                }
+                return null;
+            }
+        });
+        final Task failing = new TrivialTask("Failing", new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                blockingStarted.await();
+                throw new IllegalStateException("failure");
+            }
+        });
+
+        final AtomicReference<ProgressReport> lastReport = new AtomicReference<ProgressReport>();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Task aggregateTask = new ParallelAggregateTask(DUMMY_UPGRADE_CONTEXT, TEST_TASK_NAME, executor, Arrays.asList(blocking, failing));
+            aggregateTask.addListener(TaskTestUtil.createLastReportTrackingListener(lastReport));
+
+            try {
+                aggregateTask.call();
+                Assert.fail("Expected ExecutionException");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+
+            executor.shutdown();
+            Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            Assert.assertTrue(blockingInterrupted.get());
+            Assert.assertEquals(lastReport.get().getState(), ExecutionState.FAILED);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Verify that interrupting a {@link ParallelAggregateTask} cancels its children and reports
+     * the task as {@link ExecutionState#CANCELLED}
+     */
+    @Test(groups = { TestGroups.UNIT }, timeOut = 10000)
+    public void testParallelAggregationCancelledByInterrupt() throws Exception {
+        final CountDownLatch blockingStarted = new CountDownLatch(1);
+        final AtomicBoolean blockingInterrupted = new AtomicBoolean();
+
+        final Task blocking = new TrivialTask("Blocking", new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                blockingStarted.countDown();
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(10));
+                } catch (InterruptedException e) {
+                    blockingInterrupted.set(true);
+                    throw e;
+                }
+                return null;
+            }
+        });
+
+        final AtomicReference<ProgressReport> lastReport = new AtomicReference<ProgressReport>();
+        final ExecutorService executor = Executors.newFixedThreadPool(1);
+        final ExecutorService caller = Executors.newSingleThreadExecutor();
+        try {
+            final Task aggregateTask = new ParallelAggregateTask(DUMMY_UPGRADE_CONTEXT, TEST_TASK_NAME, executor, Arrays.asList(blocking));
+            aggregateTask.addListener(TaskTestUtil.createLastReportTrackingListener(lastReport));
+
+            final Future<Void> future = caller.submit(aggregateTask);
+            blockingStarted.await();
+            caller.shutdownNow();
+
+            try {
+                future.get();
+                Assert.fail("Expected ExecutionException");
+            } catch (ExecutionException e) {
+                Assert.assertTrue(e.getCause() instanceof InterruptedException);
+            }
+
+            executor.shutdown();
+            Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            Assert.assertTrue(blockingInterrupted.get());
+            Assert.assertEquals(lastReport.get().getState(), ExecutionState.CANCELLED);
+        } finally {
+            executor.shutdownNow();
+            caller.shutdownNow();
+        }
+    }
 }
@@ -0,0 +1,298 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.task;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.vmware.upgrade.DummyUpgradeContext;
+import com.vmware.upgrade.Task;
+import com.vmware.upgrade.TestGroups;
+import com.vmware.upgrade.UpgradeContext;
+import com.vmware.upgrade.progress.ExecutionState;
+import com.vmware.upgrade.progress.ProgressReport;
+
+import org.easymock.EasyMock;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for {@link TimeoutTask} and {@link Deadline}
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class TimeoutTaskTest {
+    private static final String TEST_TASK_NAME = "Test Task";
+
+    private static final UpgradeContext DUMMY_UPGRADE_CONTEXT = new DummyUpgradeContext();
+
+    private static final long SHORT_TIMEOUT_MILLIS = 200;
+
+    private static Task createSleepingTask(final String name, final AtomicBoolean interrupted) {
+        return new TrivialTask(name, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                try {
+                    Thread.sleep(TimeUnit.MINUTES.toMillis(10));
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                    throw e;
+                }
+                return null;
+            }
+        });
+    }
+
+    /**
+     * Verify that a task which completes within its timeout completes normally
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testCompletesWithinTimeout() throws Exception {
+        final Task mock = TaskTestUtil.createMockTask();
+
+        new TimeoutTask(DUMMY_UPGRADE_CONTEXT, TEST_TASK_NAME, mock, 1, TimeUnit.MINUTES).call();
+
+        EasyMock.verify(mock);
+        Assert.assertNull(Deadline.current());
+    }
+
+    /**
+     * Verify that a task which does not complete within its timeout is interrupted and reported
+     * as {@link ExecutionState#TIMED_OUT}
+     */
+    @Test(groups = { TestGroups.UNIT }, timeOut = 10000)
+    public void testTimeoutInterruptsDelegate() throws Exception {
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final AtomicReference<ProgressReport> lastReport = new AtomicReference<ProgressReport>();
+
+        final Task task = new TimeoutTask(DUMMY_UPGRADE_CONTEXT, TEST_TASK_NAME, createSleepingTask("Sleeping", interrupted), SHORT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        task.addListener(TaskTestUtil.createLastReportTrackingListener(lastReport));
+
+        try {
+            task.call();
+            Assert.fail("Expected TimeoutException");
+        } catch (TimeoutException e) {
+            Assert.assertTrue(e.getCause() instanceof InterruptedException);
+        }
+
+        Assert.assertTrue(interrupted.get());
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+        Assert.assertEquals(lastReport.get().getState(), ExecutionState.TIMED_OUT);
+        Assert.assertNull(Deadline.current());
+    }
+
+    /**
+     * Verify that a deadline propagates to the children of a {@link ParallelAggregateTask}, which
+     * are cancelled once it passes
+     */
+    @Test(groups = { TestGroups.UNIT }, timeOut = 10000)
+    public void testTimeoutPropagatesToParallelChildren() throws Exception {
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final AtomicBoolean deadlineVisible = new AtomicBoolean();
+        final Task observing = new TrivialTask("Observing", new Callable<Void>() {
+            @Override
+            public Void call() {
+                deadlineVisible.set(Deadline.current() != null);
+                return null;
+            }
+        });
+
+        final AtomicReference<ProgressReport> aggregateReport = new AtomicReference<ProgressReport>();
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Task aggregate = new ParallelAggregateTask(DUMMY_UPGRADE_CONTEXT, "Parallel", executor, Arrays.asList(createSleepingTask("Sleeping", interrupted), observing));
+            aggregate.addListener(TaskTestUtil.createLastReportTrackingListener(aggregateReport));
+
+            try {
+                new TimeoutTask(DUMMY_UPGRADE_CONTEXT, TEST_TASK_NAME, aggregate, SHORT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).call();
+                Assert.fail("Expected TimeoutException");
+            } catch (TimeoutException e) {
+                // expected
+            }
+
+            executor.shutdown();
+            Assert.assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+            Assert.assertTrue(deadlineVisible.get());
+            Assert.assertTrue(interrupted.get());
+            Assert.assertEquals(aggregateReport.get().getState(), ExecutionState.TIMED_OUT);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Verify that a nested timeout cannot extend the deadline within which it executes
+     */
+    @Test(groups = { TestGroups.UNIT }, timeOut = 10000)
+    public void testNestedTimeoutCannotExtendDeadline() throws Exception {
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        final Task inner = new TimeoutTask(DUMMY_UPGRADE_CONTEXT, "Inner", createSleepingTask("Sleeping", interrupted), 10, TimeUnit.MINUTES);
+        final Task outer = new TimeoutTask(DUMMY_UPGRADE_CONTEXT, "Outer", inner, SHORT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+
+        final long start = System.nanoTime();
+        try {
+            outer.call();
+            Assert.fail("Expected TimeoutException");
+        } catch (TimeoutException e) {
+            // expected
+        }
+
+        Assert.assertTrue(interrupted.get());
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMinutes(System.nanoTime() - start) < 1);
+    }
+
+    /**
+     * Verify that expiry actions registered with the current deadline are run once it passes
+     * (e.g. to cancel an operation which cannot be interrupted)
+     */
+    @Test(groups = { TestGroups.UNIT }, timeOut = 10000)
+    public void testExpiryActionRunsOnTimeout() throws Exception {
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final Task uninterruptible = new TrivialTask("Uninterruptible", new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                final Runnable cancel = new Runnable() {
+                    @Override
+                    public void run() {
+                        cancelled.countDown();
+                    }
+                };
+                Assert.assertTrue(Deadline.current().addExpiryAction(cancel));
+
+                // Simulate an operation which only stops once cancelled
+                boolean done = false;
+                while (!done) {
+                    try {
+                        cancelled.await();
+                        done = true;
+                    } catch (InterruptedException e) {
+                        // ignored
+                    }
+                }
+                throw new IllegalStateException("cancelled");
+            }
+        });
+
+        try {
+            new TimeoutTask(DUMMY_UPGRADE_CONTEXT, TEST_TASK_NAME, uninterruptible, SHORT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).call();
+            Assert.fail("Expected TimeoutException");
+        } catch (TimeoutException e) {
+            Assert.assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        Assert.assertFalse(Thread.currentThread().isInterrupted());
+    }
+
+    /**
+     * Verify that expiry actions run without blocking queries of the deadline, and that a failing
+     * action does not prevent the remaining actions from running
+     */
+    @Test(groups = { TestGroups.UNIT }, timeOut = 10000)
+    public void testExpiryActionsRunOutsideLock() throws Exception {
+        final CountDownLatch slowStarted = new CountDownLatch(1);
+        final CountDownLatch slowReleased = new CountDownLatch(1);
+        final CountDownLatch lastRun = new CountDownLatch(1);
+
+        final Deadline deadline = Deadline.start(SHORT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS, DUMMY_UPGRADE_CONTEXT.getLogger(getClass()));
+        try {
+            Assert.assertTrue(deadline.addExpiryAction(new Runnable() {
+                @Override
+                public void run() {
+                    throw new IllegalStateException("failed");
+                }
+            }));
+            Assert.assertTrue(deadline.addExpiryAction(new Runnable() {
+                @Override
+                public void run() {
+                    slowStarted.countDown();
+                    try {
+                        slowReleased.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }));
+            final Runnable last = new Runnable() {
+                @Override
+                public void run() {
+                    lastRun.countDown();
+                }
+            };
+            Assert.assertTrue(deadline.addExpiryAction(last));
+
+            slowStarted.await();
+            Assert.assertTrue(deadline.isExpired());
+            Assert.assertEquals(deadline.remaining(TimeUnit.MILLISECONDS), 0);
+            Assert.assertFalse(deadline.addExpiryAction(last));
+
+            slowReleased.countDown();
+            lastRun.await();
+        } finally {
+            slowReleased.countDown();
+            deadline.close();
+        }
+    }
+
+    /**
+     * Verify that a failure before the deadline passes is reported as a failure rather than a
+     * timeout
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testFailureWithinTimeout() throws Exception {
+        final AtomicReference<ProgressReport> lastReport = new AtomicReference<ProgressReport>();
+        final Task failing = new TrivialTask("Failing", new Runnable() {
+            @Override
+            public void run() {
+                throw new IllegalStateException("failure");
+            }
+        });
+
+        final Task task = new TimeoutTask(DUMMY_UPGRADE_CONTEXT, TEST_TASK_NAME, failing, 1, TimeUnit.MINUTES);
+        task.addListener(TaskTestUtil.createLastReportTrackingListener(lastReport));
+
+        try {
+            task.call();
+            Assert.fail("Expected IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        Assert.assertEquals(lastReport.get().getState(), ExecutionState.FAILED);
+    }
+
+    /**
+     * Verify that a timeout must be positive
+     */
+    @Test(groups = { TestGroups.UNIT }, expectedExceptions = { IllegalArgumentException.class })
+    public void testInvalidTimeout() throws Exception {
+        new TimeoutTask(DUMMY_UPGRADE_CONTEXT, TEST_TASK_NAME, TaskTestUtil.createMockTask(), 0, TimeUnit.SECONDS);
+    }
+}
@@ -38,6 +38,10 @@ import com.vmware.upgrade.dsl.TaskResolver
 class UpgradeDefinitionModel {
     String name
     String position
+    /**
+     * The relative amount of work represented by this upgrade, or {@code null} if not declared.
+     */
+    Long weight
     TaskResolver taskResolver
 
     /**
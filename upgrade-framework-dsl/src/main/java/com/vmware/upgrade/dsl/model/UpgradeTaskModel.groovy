@@ -24,6 +24,7 @@ package com.vmware.upgrade.dsl.model;
 
 import com.vmware.upgrade.Task
 import com.vmware.upgrade.UpgradeContext
+import com.vmware.upgrade.progress.Weighted
 import com.vmware.upgrade.sequencing.Graph
 import com.vmware.upgrade.sequencing.Version
 
@@ -34,12 +35,15 @@ import com.vmware.upgrade.sequencing.Version
  * This class represents the association between a concrete {@link UpgradeDefinitionModel} and the
  * version information related to that process (the required source version and the resulting
  * version assuming successful execution).
+ * <p>
+ * The {@link Weighted weight} of an edge is that declared by its {@link UpgradeDefinitionModel},
+ * or one if none is declared.
  *
  * @author Zach Shepherd shepherdz@vmware.com
  * @version 1.0
  * @since 1.0
  */
-class UpgradeTaskModel implements Graph.Edge {
+class UpgradeTaskModel implements Graph.Edge, Weighted {
     Version source
     Version target
     UpgradeDefinitionModel definition
@@ -49,6 +53,11 @@ class UpgradeTaskModel implements Graph.Edge {
         return definition.createTask(context);
     }
 
+    @Override
+    public long getWeight() {
+        return definition.weight != null ? definition.weight : 1L
+    }
+
     @Override
     public Version getSource() {
         return source;
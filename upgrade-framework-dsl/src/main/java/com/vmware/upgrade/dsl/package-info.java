@@ -145,6 +145,75 @@
  *     java "com.example.upgrade.Last"
  * }
  * </code></pre>
+ * <h3>Controlling the threads used by a parallel block</h3>
+ * By default, every {@code parallel} block executes its children using a shared, bounded pool
+ * of platform threads managed by the {@link com.vmware.upgrade.task.ExecutorRegistry} of the
+ * {@link com.vmware.upgrade.dsl.util.BasicTaskResolver}. A block may instead select a named pool
+ * or, on Java 21 or later, run each child on a virtual thread.
+ * <pre><code>
+ * bar = upgrade {
+ *     name "Run tasks on dedicated threads"
+ *
+ *     parallel "Reporting", pool: "reporting", {
+ *         java "com.example.upgrade.Reports"
+ *         java "com.example.upgrade.Dashboards"
+ *     }
+ *     parallel "Many small statements", threads: "virtual", {
+ *         java "com.example.upgrade.Statement1"
+ *         java "com.example.upgrade.Statement2"
+ *     }
+ * }
+ * </code></pre>
+ * <h3>An upgrade definition with dependencies between tasks</h3>
+ * This example demonstrates a {@code dag} block, whose children execute in parallel except where
+ * a child has been declared to depend upon others (by name) using {@code dependsOn}.
+ * <pre><code>
+ * baz = upgrade {
+ *     name "Run mostly independent tasks"
+ *
+ *     dag "Schema changes", maxConcurrency: 4, {
+ *         serial "Create tables", {
+ *             java "com.example.upgrade.CreateTables"
+ *         }
+ *         java "com.example.upgrade.LoadData"
+ *         java "com.example.upgrade.CreateIndexes"
+ *         java "com.example.upgrade.Unrelated"
+ *
+ *         dependsOn "com.example.upgrade.LoadData": "Create tables",
+ *                   "com.example.upgrade.CreateIndexes": ["Create tables", "com.example.upgrade.LoadData"]
+ *     }
+ * }
+ * </code></pre>
+ * <h3>Bounding the time taken by tasks</h3>
+ * A {@code timeout} block fails, and is reported as
+ * {@link com.vmware.upgrade.progress.ExecutionState#TIMED_OUT}, if the tasks it encloses do not
+ * complete within the specified number of seconds. The {@code serial}, {@code parallel} and
+ * {@code dag} blocks accept an equivalent {@code timeout} option. A deadline applies to every
+ * task nested within it; running statements are cancelled once it passes.
+ * <pre><code>
+ * qux = upgrade {
+ *     name "Do not wait forever"
+ *
+ *     timeout "Acquire lock", 30, {
+ *         java "com.example.upgrade.LockTables"
+ *     }
+ *     parallel "Rebuild indexes", timeout: 600, {
+ *         java "com.example.upgrade.RebuildIndex1"
+ *         java "com.example.upgrade.RebuildIndex2"
+ *     }
+ * }
+ * </code></pre>
+ * <h3>Weighting progress</h3>
+ * By default, each upgrade in a manifest contributes equally to the overall progress. An upgrade
+ * which takes much longer than others may declare a relative {@code weight}.
+ * <pre><code>
+ * migrate = upgrade {
+ *     name "Migrate historical data"
+ *     weight 30
+ *
+ *     java "com.example.upgrade.MigrateHistory"
+ * }
+ * </code></pre>
  *
  * @since 1.0
  */
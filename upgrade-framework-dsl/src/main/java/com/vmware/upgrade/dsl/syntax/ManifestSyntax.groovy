@@ -60,8 +60,10 @@ class ManifestSyntax {
         [call: { upgrade ->
             final Version toVersion =  new Version("${version}")
 
-            for (int i = 0; new Version("${i}") < toVersion; i++) {
-                addUpgrade(new Version("${i}"), toVersion, upgrade)
+            Version source = new Version("0")
+            for (int i = 1; source < toVersion; i++) {
+                addUpgrade(source, toVersion, upgrade)
+                source = new Version(Integer.toString(i))
             }
         }]
     }
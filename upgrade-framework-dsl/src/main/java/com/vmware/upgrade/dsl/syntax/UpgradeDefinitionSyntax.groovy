@@ -24,12 +24,15 @@ package com.vmware.upgrade.dsl.syntax
 
 import java.util.ArrayDeque
 import java.util.Deque
+import java.util.concurrent.TimeUnit
 
 import com.vmware.upgrade.dsl.Processor
 import com.vmware.upgrade.dsl.TaskResolver
 import com.vmware.upgrade.dsl.model.UpgradeDefinitionModel
+import com.vmware.upgrade.task.DagAggregateTask
 import com.vmware.upgrade.task.ParallelAggregateTask
 import com.vmware.upgrade.task.SerialAggregateTask
+import com.vmware.upgrade.task.TimeoutTask
 
 /**
  * Syntax to parse an upgrade object defining a {@link UpgradeDefinitionModel}.
@@ -43,6 +46,11 @@ class UpgradeDefinitionSyntax {
     UpgradeDefinitionModel upgrade
     TaskResolver taskResolver
     Processor processor
+    /**
+     * The dependencies declared using {@code dependsOn}, keyed by dependent task name, or
+     * {@code null} if this syntax is not parsing the body of a {@code dag}.
+     */
+    Map<String, List<String>> dependencies
     private final Deque<String> queue = new ArrayDeque<>()
 
     private UpgradeDefinitionSyntax() {
@@ -103,6 +111,26 @@ class UpgradeDefinitionSyntax {
         upgrade.addTask name, taskClass, args
     }
 
+    /**
+     * Declare the relative amount of work represented by this upgrade, which determines its share
+     * of the overall progress.
+     * <p>
+     * Usage: {@code weight 30}
+     */
+    def weight(weight) {
+        if (!metadataAllowed) {
+            throw new UpgradeCompilationException("Attempted to set 'weight' when metadata not allowed")
+        }
+        if (upgrade.weight != null) {
+            throw new IllegalArgumentException("Attempted to set 'weight' more than once. Current value is '${upgrade.weight}'")
+        }
+        if (!(weight instanceof Number) || weight < 0 || weight != Math.floor(weight)) {
+            throw new UpgradeCompilationException("Expected a non-negative integer for 'weight', but found '${weight}'")
+        }
+
+        upgrade.weight = weight as Long
+    }
+
     /**
      * Add an arbitrary Java class that implements Task to this upgrade
      * @return
@@ -122,14 +150,15 @@ class UpgradeDefinitionSyntax {
         addTask className, classObject
     }
 
-    private List<UpgradeDefinitionModel.TaskDescriptor> aggregateTasksFrom(Closure cl, Processor processor = processor) {
+    private List<UpgradeDefinitionModel.TaskDescriptor> aggregateTasksFrom(Closure cl, Processor processor = processor, Map<String, List<String>> dependencies = null) {
         // Recursively handle closure to get sub tasks
         UpgradeDefinitionModel subModel = new UpgradeDefinitionModel(taskResolver)
         UpgradeDefinitionSyntax subBuilder = new UpgradeDefinitionSyntax(
                 upgrade: subModel,
                 metadataAllowed: false,
                 taskResolver: taskResolver,
-                processor: processor
+                processor: processor,
+                dependencies: dependencies
         )
         subBuilder.with(cl)
         subModel.tasks
@@ -142,6 +171,97 @@ class UpgradeDefinitionSyntax {
         addTask name, ParallelAggregateTask, aggregateTasksFrom(cl)
     }
 
+    /**
+     * Add a parallel sub-task to this upgrade, executed using the named pool or on virtual threads,
+     * optionally within a timeout in seconds.
+     * <p>
+     * Usage: {@code parallel "name", pool: "poolName", timeout: 600, { ... }} or
+     * {@code parallel "name", threads: "virtual", { ... }}
+     */
+    def parallel(Map options, String name, Closure cl) {
+        def unknown = options.keySet() - ['pool', 'threads', 'timeout']
+        if (!unknown.isEmpty()) {
+            throw new UpgradeCompilationException("Unknown option(s) ${unknown} for 'parallel'")
+        }
+
+        def threads = options.threads as String
+        if (threads != null && !(threads in ['platform', 'virtual'])) {
+            throw new UpgradeCompilationException("Unknown thread mode '${threads}' for 'parallel'; expected 'platform' or 'virtual'")
+        }
+        if (threads == 'virtual' && options.pool != null) {
+            throw new UpgradeCompilationException("A 'parallel' block using virtual threads cannot specify a pool")
+        }
+
+        addTimedTask options, name, ParallelAggregateTask, aggregateTasksFrom(cl), options.pool as String, threads
+    }
+
+    /**
+     * Add a sub-task to this upgrade whose children execute in parallel, subject to the
+     * dependencies declared between them using {@code dependsOn}.
+     */
+    def dag(String name, Closure cl) {
+        dag([:], name, cl)
+    }
+
+    /**
+     * Add a sub-task to this upgrade whose children execute in parallel, subject to the
+     * dependencies declared between them using {@code dependsOn}, with at most
+     * {@code maxConcurrency} children executing at once using the named pool, optionally within a
+     * timeout in seconds.
+     * <p>
+     * Usage: {@code dag "name", maxConcurrency: 4, pool: "poolName", timeout: 600, { ... }}
+     */
+    def dag(Map options, String name, Closure cl) {
+        def unknown = options.keySet() - ['pool', 'maxConcurrency', 'timeout']
+        if (!unknown.isEmpty()) {
+            throw new UpgradeCompilationException("Unknown option(s) ${unknown} for 'dag'")
+        }
+
+        def maxConcurrency = options.containsKey('maxConcurrency') ? options.maxConcurrency : Integer.MAX_VALUE
+        if (!(maxConcurrency instanceof Integer) || maxConcurrency <= 0) {
+            throw new UpgradeCompilationException("Expected a positive integer for 'maxConcurrency' of 'dag' ${name}, but found '${options.maxConcurrency}'")
+        }
+
+        Map<String, List<String>> declared = [:]
+        def tasks = aggregateTasksFrom(cl, processor, declared)
+
+        def indexOf = { String taskName ->
+            def matches = tasks.findIndexValues { it.name == taskName }
+            if (matches.isEmpty()) {
+                throw new UpgradeCompilationException("'dependsOn' within 'dag' ${name} refers to unknown task '${taskName}'")
+            }
+            if (matches.size() > 1) {
+                throw new UpgradeCompilationException("'dependsOn' within 'dag' ${name} refers to ambiguous task '${taskName}'")
+            }
+            matches[0] as Integer
+        }
+
+        // Dependencies are passed by task index, as the tasks themselves do not exist until resolved
+        Map<Integer, List<Integer>> edges = [:]
+        declared.each { dependent, prerequisites ->
+            edges[indexOf(dependent)] = prerequisites.collect { indexOf(it) }
+        }
+
+        addTimedTask options, name, DagAggregateTask, tasks, edges, maxConcurrency, options.pool as String
+    }
+
+    /**
+     * Declare that tasks within the enclosing {@code dag} may only begin once the named tasks
+     * within the same {@code dag} have completed.
+     * <p>
+     * Usage: {@code dependsOn "Load data": "Create tables", "Create indexes": ["Create tables", "Load data"]}
+     */
+    def dependsOn(Map<String, ?> declarations) {
+        if (dependencies == null) {
+            throw new UpgradeCompilationException("'dependsOn' may only be used within a 'dag'")
+        }
+
+        declarations.each { task, prerequisites ->
+            def names = (prerequisites instanceof Collection) ? prerequisites : [prerequisites]
+            dependencies.get(task as String, []).addAll(names.collect { it as String })
+        }
+    }
+
     /**
      * Add a serial sub-task to this upgrade.
      */
@@ -149,6 +269,55 @@ class UpgradeDefinitionSyntax {
         addTask name, SerialAggregateTask, aggregateTasksFrom(cl)
     }
 
+    /**
+     * Add a serial sub-task to this upgrade, optionally within a timeout in seconds.
+     * <p>
+     * Usage: {@code serial "name", timeout: 600, { ... }}
+     */
+    def serial(Map options, String name, Closure cl) {
+        def unknown = options.keySet() - ['timeout']
+        if (!unknown.isEmpty()) {
+            throw new UpgradeCompilationException("Unknown option(s) ${unknown} for 'serial'")
+        }
+
+        addTimedTask options, name, SerialAggregateTask, aggregateTasksFrom(cl)
+    }
+
+    /**
+     * Add a sub-task to this upgrade which executes the enclosed tasks in series and fails if
+     * they do not complete within the specified number of seconds. Any deadline applies to every
+     * task nested within the enclosed tasks; nested timeouts cannot extend an enclosing one.
+     * <p>
+     * Usage: {@code timeout "name", 30, { sql "..." }}
+     */
+    def timeout(String name, Number seconds, Closure cl) {
+        def tasks = aggregateTasksFrom(cl)
+        addTask name, TimeoutTask, tasks, toTimeoutMillis(name, seconds)
+    }
+
+    /**
+     * Add a task to this upgrade, wrapping it in a {@link TimeoutTask} if {@code options} specify
+     * a {@code timeout}.
+     */
+    private def addTimedTask(Map options, name, taskClass, Object... args) {
+        if (options.timeout == null) {
+            addTask name, taskClass, args
+            return
+        }
+
+        UpgradeDefinitionModel timed = new UpgradeDefinitionModel(taskResolver)
+        timed.addTask name, taskClass, args
+        addTask name, TimeoutTask, timed.tasks, toTimeoutMillis(name, options.timeout)
+    }
+
+    private static long toTimeoutMillis(name, seconds) {
+        if (!(seconds instanceof Number) || seconds <= 0) {
+            throw new UpgradeCompilationException("Expected a positive number of seconds for 'timeout' of ${name}, but found '${seconds}'")
+        }
+
+        return Math.max(1L, (long) Math.ceil(((Number) seconds).doubleValue() * TimeUnit.SECONDS.toMillis(1)))
+    }
+
     /**
      * Looks backwards through the stacktrace to find the first {@code doCall} method being called,
      * which should correspond to the call site of the innermost DSL keyword.
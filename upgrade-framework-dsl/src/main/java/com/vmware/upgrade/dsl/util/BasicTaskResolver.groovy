@@ -22,15 +22,89 @@
 
 package com.vmware.upgrade.dsl.util
 
-import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
 
 import com.vmware.upgrade.Task
 import com.vmware.upgrade.UpgradeContext
 import com.vmware.upgrade.dsl.TaskResolver
+import com.vmware.upgrade.task.DagAggregateTask
+import com.vmware.upgrade.task.ExecutorRegistry
 import com.vmware.upgrade.task.ParallelAggregateTask
 import com.vmware.upgrade.task.SerialAggregateTask
+import com.vmware.upgrade.task.TimeoutTask
+
+/**
+ * A {@link TaskResolver} which resolves the aggregate tasks defined by the core DSL and
+ * reflectively constructs any other {@link Task}.
+ * <p>
+ * All {@link ParallelAggregateTask}s and {@link DagAggregateTask}s resolved by an instance share the pools of its
+ * {@link ExecutorRegistry}. A {@code parallel} block may select a pool by name; nested
+ * {@code parallel} blocks may safely share a pool with their parent. Alternatively, a {@code parallel}
+ * block may run each of its children on a virtual thread; this is the default for every block
+ * if {@link #setVirtualThreads(boolean) virtualThreads} is enabled.
+ *
+ * @see ExecutorRegistry#getExecutor(String)
+ */
+class BasicTaskResolver implements TaskResolver, Closeable {
+    private final ExecutorRegistry executorRegistry
+
+    /**
+     * Whether {@code parallel} blocks which do not specify a thread mode use virtual threads.
+     */
+    private boolean virtualThreads = false
+
+    BasicTaskResolver() {
+        this(new ExecutorRegistry())
+    }
+
+    BasicTaskResolver(ExecutorRegistry executorRegistry) {
+        if (executorRegistry == null) {
+            throw new IllegalArgumentException("executorRegistry")
+        }
+
+        this.executorRegistry = executorRegistry
+    }
+
+    /**
+     * @return the {@link ExecutorRegistry} providing the pools used by {@code parallel} blocks
+     */
+    ExecutorRegistry getExecutorRegistry() {
+        return executorRegistry
+    }
+
+    /**
+     * @return {@code true} if {@code parallel} blocks run their children on virtual threads by default
+     */
+    boolean isVirtualThreads() {
+        return virtualThreads
+    }
+
+    /**
+     * Select whether {@code parallel} blocks which do not specify a thread mode run their children
+     * on virtual threads rather than in a pool of platform threads.
+     *
+     * @param virtualThreads
+     *          {@code true} to use virtual threads by default
+     * @throws UnsupportedOperationException
+     *          if virtual threads are requested but are not supported by the runtime
+     */
+    void setVirtualThreads(boolean virtualThreads) {
+        if (virtualThreads && !ExecutorRegistry.isVirtualThreadSupported()) {
+            throw new UnsupportedOperationException("Virtual threads require Java 21 or later")
+        }
+
+        this.virtualThreads = virtualThreads
+    }
+
+    /**
+     * Shut down the pools used by {@code parallel} blocks once the tasks resolved by this
+     * instance are no longer needed.
+     */
+    @Override
+    void close() {
+        executorRegistry.close()
+    }
 
-class BasicTaskResolver implements TaskResolver {
     @Override
     public Task resolve(UpgradeContext context, Class<?> taskClass, String name, List<?> args) {
         // Find the first constructor that has a signature we can fulfill
@@ -40,10 +114,18 @@ class BasicTaskResolver implements TaskResolver {
                 t = new SerialAggregateTask(context, name, args[0].collect { resolve(context, it.taskClass, it.name, it.args) })
                 break
             case ParallelAggregateTask:
-                def executor = Executors.newFixedThreadPool(10)
-                // XXX Manage the lifecycle of this executor
+                final String pool = args.size() > 1 ? args[1] : null
+                final String threads = args.size() > 2 ? args[2] : null
+                final boolean virtual = (threads == null) ? (virtualThreads && pool == null) : threads == 'virtual'
+                def executor = virtual ? executorRegistry.virtualThreadExecutor : executorRegistry.getExecutor(pool)
                 t = new ParallelAggregateTask(context, name, executor, args[0].collect { resolve(context, it.taskClass, it.name, it.args) })
                 break
+            case DagAggregateTask:
+                t = resolveDag(context, name, args)
+                break
+            case TimeoutTask:
+                t = resolveTimeout(context, name, args)
+                break
             default:
                 t = attemptTaskConstruction(context, taskClass, args)
                 break
@@ -51,6 +133,25 @@ class BasicTaskResolver implements TaskResolver {
         return t
     }
 
+    private Task resolveDag(UpgradeContext context, String name, List<?> args) {
+        final List<Task> children = args[0].collect { resolve(context, it.taskClass, it.name, it.args) }
+        final Map<Task, List<Task>> dependencies = args[1].collectEntries { dependent, prerequisites ->
+            [(children[dependent]): prerequisites.collect { children[it] }]
+        }
+        final int maxConcurrency = args[2]
+        final String pool = args.size() > 3 ? args[3] : null
+
+        return new DagAggregateTask(context, name, executorRegistry.getExecutor(pool), children, dependencies, maxConcurrency)
+    }
+
+    private Task resolveTimeout(UpgradeContext context, String name, List<?> args) {
+        final List<Task> children = args[0].collect { resolve(context, it.taskClass, it.name, it.args) }
+        final Task delegate = (children.size() == 1) ? children[0] : new SerialAggregateTask(context, name, children)
+        final long timeoutMillis = args[1]
+
+        return new TimeoutTask(context, name, delegate, timeoutMillis, TimeUnit.MILLISECONDS)
+    }
+
     @Override
     public Task combine(UpgradeContext context, List<Task> tasks, String name) {
         return new SerialAggregateTask(context, name, tasks);
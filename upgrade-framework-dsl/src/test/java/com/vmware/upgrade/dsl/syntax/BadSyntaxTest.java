@@ -145,6 +145,65 @@ public class BadSyntaxTest {
         Assert.assertEquals(((UnknownKeywordException) e).getName(), "baz");
     }
 
+    @Test(groups = { TestGroups.UNIT })
+    public void dependsOnOutsideDagTest() {
+        UpgradeCompilationException e = checkManifestError(
+                "upgrade {\n" +
+                "   java \"com.vmware.upgrade.task.TrivialTask\"\n" +
+                "   dependsOn \"a\": \"b\"\n" +
+                "}\n"
+        );
+        Assert.assertTrue(e.getMessage().contains("'dependsOn' may only be used within a 'dag'"));
+    }
+
+    @Test(groups = { TestGroups.UNIT })
+    public void dependsOnUnknownTaskTest() {
+        UpgradeCompilationException e = checkManifestError(
+                "upgrade {\n" +
+                "   dag \"d\", {\n" +
+                "       java \"com.vmware.upgrade.task.TrivialTask\"\n" +
+                "       dependsOn \"com.vmware.upgrade.task.TrivialTask\": \"missing\"\n" +
+                "   }\n" +
+                "}\n"
+        );
+        Assert.assertTrue(e.getMessage().contains("refers to unknown task 'missing'"));
+    }
+
+    @Test(groups = { TestGroups.UNIT })
+    public void invalidDagConcurrencyTest() {
+        UpgradeCompilationException e = checkManifestError(
+                "upgrade {\n" +
+                "   dag \"d\", maxConcurrency: 0, {\n" +
+                "       java \"com.vmware.upgrade.task.TrivialTask\"\n" +
+                "   }\n" +
+                "}\n"
+        );
+        Assert.assertTrue(e.getMessage().contains("Expected a positive integer for 'maxConcurrency'"));
+    }
+
+    @Test(groups = { TestGroups.UNIT })
+    public void invalidTimeoutTest() {
+        UpgradeCompilationException e = checkManifestError(
+                "upgrade {\n" +
+                "   parallel \"p\", timeout: 0, {\n" +
+                "       java \"com.vmware.upgrade.task.TrivialTask\"\n" +
+                "   }\n" +
+                "}\n"
+        );
+        Assert.assertTrue(e.getMessage().contains("Expected a positive number of seconds for 'timeout'"));
+    }
+
+    @Test(groups = { TestGroups.UNIT })
+    public void invalidWeightTest() {
+        UpgradeCompilationException e = checkManifestError(
+                "upgrade {\n" +
+                "   weight 1.5\n" +
+                "   java \"com.vmware.upgrade.task.TrivialTask\"\n" +
+                "}\n"
+        );
+        Assert.assertTrue(e.getMessage().contains("Expected a non-negative integer for 'weight'"));
+    }
+
     @DataProvider
     public Object[][] invalidSyntaxStatements() {
         return new Object[][] {
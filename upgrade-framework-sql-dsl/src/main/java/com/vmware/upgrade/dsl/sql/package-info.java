@@ -137,6 +137,15 @@
  *
  * Graph graph = load("upgrade.groovy")
  * </code></pre>
+ * <h3>Executing DDL concurrently</h3>
+ * Substituting com.vmware.upgrade.dsl.sql.util.ParallelSqlTaskResolver for
+ * com.vmware.upgrade.dsl.sql.util.SqlTaskResolver in the example above executes the statements
+ * on {@code table1} and those on unrelated tables concurrently, using one connection per lane.
+ * The {@code reference} keeps the statements on {@code table1} and {@code organizations} in
+ * order on the same lane.
+ * <pre><code>
+ * new ParallelSqlTaskResolver(["lane1", "lane2", "lane3"])
+ * </code></pre>
  *
  * @since 1.0
  */
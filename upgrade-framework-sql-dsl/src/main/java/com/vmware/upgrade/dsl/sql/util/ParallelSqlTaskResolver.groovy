@@ -0,0 +1,339 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.dsl.sql.util
+
+import com.vmware.upgrade.PersistenceContext
+import com.vmware.upgrade.Task
+import com.vmware.upgrade.UpgradeContext
+import com.vmware.upgrade.dsl.sql.model.TransformingModel
+import com.vmware.upgrade.logging.UpgradeLogger
+import com.vmware.upgrade.sequencing.Version
+import com.vmware.upgrade.sql.DatabasePersistenceContext
+import com.vmware.upgrade.sql.task.RawSQLTask
+import com.vmware.upgrade.sql.task.TransactionTask
+import com.vmware.upgrade.task.ExecutorRegistry
+import com.vmware.upgrade.task.ParallelAggregateTask
+import com.vmware.upgrade.task.SerialAggregateTask
+import com.vmware.upgrade.transformation.ReferenceTransformation
+import com.vmware.upgrade.transformation.Transformation
+
+/**
+ * A {@link SqlTaskResolver} which uses the {@link Transformation} of each {@link TransformingModel}
+ * statement in an upgrade to execute statements affecting different tables concurrently.
+ * <p>
+ * The statements of an upgrade are split into segments at every task whose tables are not known
+ * (e.g. raw SQL, scripts, Java tasks or {@code serial}/{@code parallel} blocks). Within a segment,
+ * statements which (transitively) share a table form a group which keeps its declared order.
+ * The groups of a segment are distributed across a set of <i>lanes</i>, each of which executes
+ * its statements serially, in a transaction, using its own {@link DatabasePersistenceContext}.
+ * Each statement is {@link #rebind rebound} to the context of its lane; statements which a
+ * subclass resolves to a task other than a {@link RawSQLTask} are treated as though their tables
+ * were not known.
+ * The lanes of a segment execute concurrently; segments and the tasks between them execute in
+ * their declared order using the unqualified {@link DatabasePersistenceContext}.
+ * <p>
+ * Each lane is identified by a qualifier for which
+ * {@link UpgradeContext#getPersistenceContext(Class, String)} must return a
+ * {@link DatabasePersistenceContext} with a connection of its own. As statements execute in
+ * several transactions, an upgrade is no longer atomic as a whole; on databases where DDL is not
+ * transactional this is no different from {@link SqlTaskResolver}. If fewer than two lanes are
+ * configured, upgrades are combined exactly as by {@link SqlTaskResolver}.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+class ParallelSqlTaskResolver extends SqlTaskResolver {
+    private final List<String> lanes
+
+    private final String pool
+
+    /**
+     * The {@link TransformingModel} of each {@link RawSQLTask} resolved on the current thread
+     * since the last call to {@link #combine}, or to {@link #resolve} which failed.
+     */
+    private final ThreadLocal<Map<Task, TransformingModel>> models = ThreadLocal.withInitial { new IdentityHashMap<Task, TransformingModel>() }
+
+    /**
+     * Constructs a resolver which distributes statements across the {@link DatabasePersistenceContext}s
+     * with the supplied qualifiers.
+     *
+     * @param lanes
+     *          the qualifiers of the {@link DatabasePersistenceContext}s to use
+     */
+    ParallelSqlTaskResolver(List<String> lanes) {
+        this(new ExecutorRegistry(), lanes, null)
+    }
+
+    /**
+     * Constructs a resolver which distributes statements across the {@link DatabasePersistenceContext}s
+     * with the supplied qualifiers, executing the lanes using the named pool of the supplied
+     * {@link ExecutorRegistry}.
+     *
+     * @param executorRegistry
+     *          the {@link ExecutorRegistry} providing pools for concurrent execution
+     * @param lanes
+     *          the qualifiers of the {@link DatabasePersistenceContext}s to use
+     * @param pool
+     *          the name of the pool used to execute lanes, or {@code null} for the default pool
+     */
+    ParallelSqlTaskResolver(ExecutorRegistry executorRegistry, List<String> lanes, String pool) {
+        super(executorRegistry)
+
+        if (lanes == null || lanes.contains(null)) {
+            throw new IllegalArgumentException("lanes")
+        }
+
+        this.lanes = new ArrayList<String>(lanes)
+        this.pool = pool
+    }
+
+    @Override
+    public Task resolve(UpgradeContext context, Class<?> taskClass, String name, List<?> args) {
+        Task t
+        try {
+            t = super.resolve(context, taskClass, name, args)
+        } catch (Exception e) {
+            // The upgrade will not be combined, so forget the statements resolved for it
+            models.remove()
+            throw e
+        }
+
+        if (t instanceof RawSQLTask && args[0] instanceof TransformingModel) {
+            models.get().put(t, (TransformingModel) args[0])
+        }
+
+        return t
+    }
+
+    @Override
+    public Task combine(UpgradeContext context, List<Task> tasks, String name) {
+        final Map<Task, TransformingModel> resolved = models.get()
+        models.remove()
+
+        if (lanes.size() < 2) {
+            return super.combine(context, tasks, name)
+        }
+
+        final List<Task> steps = []
+        final List<Task> serial = []
+        final List<Task> segment = []
+        for (final Task task : tasks) {
+            if (tablesOf(resolved.get(task)).isEmpty()) {
+                flushSegment(context, name, steps, serial, segment, resolved)
+                serial << task
+            } else {
+                segment << task
+            }
+        }
+        flushSegment(context, name, steps, serial, segment, resolved)
+        flushSerial(context, name, steps, serial)
+
+        return new SerialAggregateTask(context, name, steps)
+    }
+
+    /**
+     * Add a step executing the statements of a segment, or add them to the statements executed
+     * serially if they do not affect at least two independent groups of tables.
+     */
+    private void flushSegment(UpgradeContext context, String name, List<Task> steps, List<Task> serial, List<Task> segment, Map<Task, TransformingModel> resolved) {
+        if (segment.isEmpty()) {
+            return
+        }
+
+        final List<List<Task>> groups = group(segment, resolved)
+        if (groups.size() < 2) {
+            serial.addAll(segment)
+        } else {
+            flushSerial(context, name, steps, serial)
+            steps << createSegmentTask(context, name + " [segment " + steps.size() + "]", groups)
+        }
+        segment.clear()
+    }
+
+    /**
+     * Add a step executing the statements accumulated so far serially, in a transaction.
+     */
+    private static void flushSerial(UpgradeContext context, String name, List<Task> steps, List<Task> serial) {
+        if (!serial.isEmpty()) {
+            steps << new TransactionTask("Transaction boundary for " + name, new SerialAggregateTask(context, name, new ArrayList<Task>(serial)), context)
+            serial.clear()
+        }
+    }
+
+    /**
+     * Partition the statements of a segment into groups such that statements sharing a table are
+     * in the same group, preserving the declared order within each group.
+     */
+    private static List<List<Task>> group(List<Task> segment, Map<Task, TransformingModel> resolved) {
+        // Union-find over statement indices, joining statements which share a table
+        final int[] parent = new int[segment.size()]
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i
+        }
+        final Closure<Integer> find = { int i ->
+            while (parent[i] != i) {
+                parent[i] = parent[parent[i]]
+                i = parent[i]
+            }
+            return i
+        }
+
+        final Map<String, Integer> firstByTable = [:]
+        segment.eachWithIndex { Task task, int i ->
+            for (final String table : tablesOf(resolved.get(task))) {
+                final Integer first = firstByTable.putIfAbsent(table, i)
+                if (first != null) {
+                    parent[find(i)] = find(first)
+                }
+            }
+        }
+
+        final Map<Integer, List<Task>> groups = new LinkedHashMap<Integer, List<Task>>()
+        segment.eachWithIndex { Task task, int i ->
+            groups.computeIfAbsent(find(i)) { [] } << task
+        }
+
+        return new ArrayList<List<Task>>(groups.values())
+    }
+
+    /**
+     * Create a task executing the supplied groups concurrently, assigning each group to the least
+     * loaded lane (largest groups first) and rebinding its statements to the lane's context.
+     */
+    private Task createSegmentTask(UpgradeContext context, String name, List<List<Task>> groups) {
+        final int laneCount = Math.min(lanes.size(), groups.size())
+        final List<List<Task>> assignments = (0..<laneCount).collect { [] }
+
+        // Groups are independent of each other, so only the order within a group matters
+        for (final List<Task> group : groups.sort(false) { -it.size() }) {
+            assignments.min { it.size() }.addAll(group)
+        }
+
+        // Closures are avoided here, as they cannot see private members when this class is extended
+        final List<Task> laneTasks = []
+        for (int i = 0; i < laneCount; i++) {
+            final UpgradeContext laneContext = new LaneUpgradeContext(context, lanes[i])
+            final List<Task> statements = []
+            for (final Task statement : assignments[i]) {
+                statements << rebind((RawSQLTask) statement, laneContext)
+            }
+            final String laneName = name + " [" + lanes[i] + "]"
+            laneTasks << new TransactionTask("Transaction boundary for " + laneName, new SerialAggregateTask(laneContext, laneName, statements), laneContext)
+        }
+
+        return new ParallelAggregateTask(context, name, getExecutorRegistry().getExecutor(pool), laneTasks)
+    }
+
+    /**
+     * Create the task which executes a statement in a lane, i.e. using the
+     * {@link DatabasePersistenceContext} provided by {@code laneContext}.
+     * <p>
+     * The lanes connect to the same database as the unqualified {@link DatabasePersistenceContext},
+     * so by default the SQL already rendered for the statement is executed by a new
+     * {@link RawSQLTask} of the same name.
+     *
+     * @param task
+     *          the task resolved for the statement
+     * @param laneContext
+     *          the {@link UpgradeContext} of the lane
+     * @return the task to execute in the lane
+     */
+    protected Task rebind(RawSQLTask task, UpgradeContext laneContext) {
+        return new RawSQLTask(task.getName(), laneContext, task.getSQL())
+    }
+
+    /**
+     * Determine the normalized names of the tables affected by a statement.
+     *
+     * @return the table names, or an empty set if they are not known
+     */
+    private static Set<String> tablesOf(TransformingModel model) {
+        if (model == null) {
+            return Collections.emptySet()
+        }
+
+        final Transformation transformation = model.getTransformation()
+        if (transformation?.getTableName() == null) {
+            return Collections.emptySet()
+        }
+
+        final Set<String> tables = [normalize(transformation.getTableName())] as LinkedHashSet
+        if (transformation instanceof ReferenceTransformation) {
+            final String referenced = ((ReferenceTransformation) transformation).getReferencedTableName()
+            if (referenced == null) {
+                return Collections.emptySet()
+            }
+            tables << normalize(referenced)
+        }
+
+        return tables
+    }
+
+    private static String normalize(String tableName) {
+        return tableName.replaceAll(/["`\[\]]/, "").toLowerCase(Locale.ROOT)
+    }
+
+    /**
+     * An {@link UpgradeContext} which provides the {@link DatabasePersistenceContext} of a lane in
+     * place of the unqualified {@link DatabasePersistenceContext}.
+     */
+    private static class LaneUpgradeContext implements UpgradeContext {
+        private final UpgradeContext delegate
+        private final String lane
+
+        LaneUpgradeContext(UpgradeContext delegate, String lane) {
+            this.delegate = delegate
+            this.lane = lane
+        }
+
+        @Override
+        UpgradeLogger getLogger(Class<?> clazz) {
+            return delegate.getLogger(clazz)
+        }
+
+        @Override
+        Version getVersion() {
+            return delegate.getVersion()
+        }
+
+        @Override
+        void setVersion(Version version) {
+            delegate.setVersion(version)
+        }
+
+        @Override
+        def <T extends PersistenceContext> T getPersistenceContext(Class<T> type) {
+            if (type == DatabasePersistenceContext) {
+                return delegate.getPersistenceContext(type, lane)
+            }
+
+            return delegate.getPersistenceContext(type)
+        }
+
+        @Override
+        def <T extends PersistenceContext> T getPersistenceContext(Class<T> type, String qualifier) {
+            return delegate.getPersistenceContext(type, qualifier)
+        }
+    }
+}
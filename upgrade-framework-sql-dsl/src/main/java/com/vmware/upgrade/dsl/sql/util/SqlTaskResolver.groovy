@@ -28,8 +28,17 @@ import com.vmware.upgrade.dsl.util.BasicTaskResolver
 import com.vmware.upgrade.sql.task.RawSQLTask
 import com.vmware.upgrade.sql.task.ScriptTask
 import com.vmware.upgrade.sql.task.TransactionTask
+import com.vmware.upgrade.task.ExecutorRegistry
 
 class SqlTaskResolver extends BasicTaskResolver {
+    SqlTaskResolver() {
+        super()
+    }
+
+    SqlTaskResolver(ExecutorRegistry executorRegistry) {
+        super(executorRegistry)
+    }
+
     @Override
     public Task resolve(UpgradeContext context, Class<?> taskClass, String name, List<?> args) {
         final Task t
@@ -0,0 +1,387 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.dsl.sql.util;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import com.vmware.upgrade.PersistenceContext;
+import com.vmware.upgrade.Task;
+import com.vmware.upgrade.TestGroups;
+import com.vmware.upgrade.UpgradeContext;
+import com.vmware.upgrade.dsl.sql.model.TransformingModel;
+import com.vmware.upgrade.logging.UpgradeLogger;
+import com.vmware.upgrade.logging.UpgradeLoggerHelper;
+import com.vmware.upgrade.sequencing.Version;
+import com.vmware.upgrade.sql.DatabasePersistenceContext;
+import com.vmware.upgrade.sql.DatabaseType;
+import com.vmware.upgrade.sql.script.SQLParsedDataAggregator;
+import com.vmware.upgrade.sql.task.RawSQLTask;
+import com.vmware.upgrade.sql.task.TransactionTask;
+import com.vmware.upgrade.transformation.ReferenceTransformation;
+import com.vmware.upgrade.transformation.Transformation;
+import com.vmware.upgrade.transformation.Transformation.TransformationType;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Test cases for {@link ParallelSqlTaskResolver}
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+public class ParallelSqlTaskResolverTest {
+    private static final String MAIN = "main";
+    private static final List<String> LANES = Arrays.asList("lane1", "lane2");
+
+    private static enum TestDatabaseType implements DatabaseType {
+        TEST;
+
+        @Override
+        public String load(String scriptName) throws IOException {
+            return "";
+        }
+    }
+
+    /**
+     * A {@link TransformingModel} for a statement on a single table, or a foreign key between two.
+     */
+    private static class Statement implements TransformingModel {
+        private final String sql;
+        private final Transformation transformation;
+
+        Statement(String sql, String table) {
+            this.sql = sql;
+            this.transformation = new Transformation(table, TransformationType.ADD_COLUMN_NULL);
+        }
+
+        Statement(String sql, String table, String referencedTable) {
+            this.sql = sql;
+            this.transformation = new ReferenceTransformation(table, referencedTable, false, TransformationType.ADD_FOREIGN_KEY);
+        }
+
+        @Override
+        public String get(DatabaseType databaseType) {
+            return sql;
+        }
+
+        @Override
+        public Transformation getTransformation() {
+            return transformation;
+        }
+    }
+
+    /**
+     * A {@link DatabasePersistenceContext} whose connection records the SQL it executes, both
+     * per-context and in a log shared by all contexts.
+     */
+    private static class RecordingDatabaseContext implements DatabasePersistenceContext {
+        private final List<String> executed = Collections.synchronizedList(new ArrayList<String>());
+        private final List<String> log;
+        private final Connection connection;
+
+        RecordingDatabaseContext(List<String> log) {
+            this.log = log;
+            this.connection = (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class }, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("createStatement")) {
+                        return createStatement();
+                    }
+                    return defaultValue(method);
+                }
+            });
+        }
+
+        private java.sql.Statement createStatement() {
+            return (java.sql.Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { java.sql.Statement.class }, new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("execute")) {
+                        executed.add((String) args[0]);
+                        log.add((String) args[0]);
+                    }
+                    return defaultValue(method);
+                }
+            });
+        }
+
+        private static Object defaultValue(Method method) {
+            return (method.getReturnType() == boolean.class) ? Boolean.FALSE : null;
+        }
+
+        List<String> getExecuted() {
+            return executed;
+        }
+
+        @Override
+        public Connection getConnection() {
+            return connection;
+        }
+
+        @Override
+        public DatabaseType getDatabaseType() {
+            return TestDatabaseType.TEST;
+        }
+
+        @Override
+        public <T> T parseWithAggregator(String script, SQLParsedDataAggregator<T> aggregator) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isConnected() {
+            return true;
+        }
+    }
+
+    /**
+     * An {@link UpgradeContext} providing a {@link RecordingDatabaseContext} for the unqualified
+     * context and for each lane.
+     */
+    private static class TestUpgradeContext implements UpgradeContext {
+        private final List<String> log = Collections.synchronizedList(new ArrayList<String>());
+        private final Map<String, RecordingDatabaseContext> contexts = new HashMap<String, RecordingDatabaseContext>();
+
+        TestUpgradeContext() {
+            contexts.put(MAIN, new RecordingDatabaseContext(log));
+            for (String lane : LANES) {
+                contexts.put(lane, new RecordingDatabaseContext(log));
+            }
+        }
+
+        List<String> executed(String qualifier) {
+            return contexts.get(qualifier).getExecuted();
+        }
+
+        List<String> getLog() {
+            return log;
+        }
+
+        @Override
+        public UpgradeLogger getLogger(Class<?> clazz) {
+            return UpgradeLoggerHelper.NO_OP_LOGGER;
+        }
+
+        @Override
+        public Version getVersion() {
+            return Version.INITIAL;
+        }
+
+        @Override
+        public void setVersion(Version version) {
+        }
+
+        @Override
+        public <T extends PersistenceContext> T getPersistenceContext(Class<T> type) {
+            return getPersistenceContext(type, MAIN);
+        }
+
+        @Override
+        public <T extends PersistenceContext> T getPersistenceContext(Class<T> type, String qualifier) {
+            if (type != DatabasePersistenceContext.class || !contexts.containsKey(qualifier)) {
+                throw new NoSuchElementException();
+            }
+            return type.cast(contexts.get(qualifier));
+        }
+    }
+
+    private static Task combine(ParallelSqlTaskResolver resolver, UpgradeContext context, Object... statements) {
+        final List<Task> tasks = new ArrayList<Task>();
+        for (Object statement : statements) {
+            tasks.add(resolver.resolve(context, RawSQLTask.class, statement.toString(), Arrays.asList(statement)));
+        }
+        return resolver.combine(context, tasks, "upgrade");
+    }
+
+    /**
+     * Verify that statements on different tables are distributed across lanes while statements
+     * on the same table stay in order on a single lane
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testIndependentTablesAreDistributed() throws Exception {
+        final TestUpgradeContext context = new TestUpgradeContext();
+        final ParallelSqlTaskResolver resolver = new ParallelSqlTaskResolver(LANES);
+        try {
+            combine(resolver, context,
+                    new Statement("a1", "A"),
+                    new Statement("b1", "B"),
+                    new Statement("a2", "\"a\""),
+                    new Statement("c1", "C")).call();
+        } finally {
+            resolver.close();
+        }
+
+        Assert.assertTrue(context.executed(MAIN).isEmpty());
+        Assert.assertEquals(context.getLog().size(), 4);
+        Assert.assertFalse(context.executed("lane1").isEmpty());
+        Assert.assertFalse(context.executed("lane2").isEmpty());
+
+        final List<String> laneWithA = context.executed("lane1").contains("a1") ? context.executed("lane1") : context.executed("lane2");
+        Assert.assertTrue(laneWithA.indexOf("a1") < laneWithA.indexOf("a2"));
+    }
+
+    /**
+     * Verify that statements whose tables are unknown execute on the unqualified context and
+     * separate the statements before them from those after them
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testUnknownStatementsAreBarriers() throws Exception {
+        final TestUpgradeContext context = new TestUpgradeContext();
+        final ParallelSqlTaskResolver resolver = new ParallelSqlTaskResolver(LANES);
+        try {
+            combine(resolver, context,
+                    new Statement("a1", "A"),
+                    new Statement("b1", "B"),
+                    "barrier",
+                    new Statement("a2", "A"),
+                    new Statement("b2", "B")).call();
+        } finally {
+            resolver.close();
+        }
+
+        final List<String> log = context.getLog();
+        Assert.assertEquals(context.executed(MAIN), Arrays.asList("barrier"));
+        Assert.assertTrue(log.indexOf("a1") < log.indexOf("barrier"));
+        Assert.assertTrue(log.indexOf("b1") < log.indexOf("barrier"));
+        Assert.assertTrue(log.indexOf("barrier") < log.indexOf("a2"));
+        Assert.assertTrue(log.indexOf("barrier") < log.indexOf("b2"));
+    }
+
+    /**
+     * Verify that a foreign key joins the statements on both of its tables into one lane
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testReferencesJoinTables() throws Exception {
+        final TestUpgradeContext context = new TestUpgradeContext();
+        final ParallelSqlTaskResolver resolver = new ParallelSqlTaskResolver(LANES);
+        try {
+            combine(resolver, context,
+                    new Statement("a1", "A"),
+                    new Statement("b1", "B"),
+                    new Statement("c1", "C"),
+                    new Statement("fk", "B", "A")).call();
+        } finally {
+            resolver.close();
+        }
+
+        Assert.assertTrue(context.executed(MAIN).isEmpty());
+        final List<String> lane = context.executed("lane1").contains("a1") ? context.executed("lane1") : context.executed("lane2");
+        Assert.assertEquals(lane, Arrays.asList("a1", "b1", "fk"));
+    }
+
+    /**
+     * Verify that an upgrade is combined into a single transaction if fewer than two lanes are
+     * configured
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testSingleLaneIsNotParallelised() throws Exception {
+        final TestUpgradeContext context = new TestUpgradeContext();
+        final ParallelSqlTaskResolver resolver = new ParallelSqlTaskResolver(Arrays.asList("lane1"));
+        try {
+            final Task task = combine(resolver, context,
+                    new Statement("a1", "A"),
+                    new Statement("b1", "B"));
+            Assert.assertTrue(task instanceof TransactionTask);
+            task.call();
+        } finally {
+            resolver.close();
+        }
+
+        Assert.assertEquals(context.executed(MAIN), Arrays.asList("a1", "b1"));
+    }
+
+    /**
+     * Verify that the statements resolved for an upgrade whose resolution fails are forgotten,
+     * rather than retained until the next upgrade is combined
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testFailedResolutionIsForgotten() throws Exception {
+        final TestUpgradeContext context = new TestUpgradeContext();
+        final ParallelSqlTaskResolver resolver = new ParallelSqlTaskResolver(LANES);
+        try {
+            final List<Task> tasks = new ArrayList<Task>();
+            for (Statement statement : Arrays.asList(new Statement("a1", "A"), new Statement("b1", "B"))) {
+                tasks.add(resolver.resolve(context, RawSQLTask.class, statement.sql, Arrays.asList(statement)));
+            }
+            try {
+                resolver.resolve(context, RawSQLTask.class, "invalid", Arrays.asList(new Statement("c1", "C") {
+                    @Override
+                    public String get(DatabaseType databaseType) {
+                        throw new IllegalArgumentException(databaseType.toString());
+                    }
+                }));
+                Assert.fail("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+
+            // The statements are no longer known to the resolver, so execute as barriers
+            resolver.combine(context, tasks, "upgrade").call();
+        } finally {
+            resolver.close();
+        }
+
+        Assert.assertEquals(context.executed(MAIN), Arrays.asList("a1", "b1"));
+    }
+
+    /**
+     * Verify that statements are rebound to their lanes through {@link ParallelSqlTaskResolver#rebind}
+     */
+    @Test(groups = { TestGroups.UNIT })
+    public void testRebind() throws Exception {
+        final TestUpgradeContext context = new TestUpgradeContext();
+        final List<String> rebound = Collections.synchronizedList(new ArrayList<String>());
+        final ParallelSqlTaskResolver resolver = new ParallelSqlTaskResolver(LANES) {
+            @Override
+            protected Task rebind(RawSQLTask task, UpgradeContext laneContext) {
+                rebound.add(task.getSQL());
+                return super.rebind(task, laneContext);
+            }
+        };
+        try {
+            combine(resolver, context,
+                    new Statement("a1", "A"),
+                    new Statement("b1", "B")).call();
+        } finally {
+            resolver.close();
+        }
+
+        Assert.assertEquals(new HashSet<String>(rebound), new HashSet<String>(Arrays.asList("a1", "b1")));
+        Assert.assertTrue(context.executed(MAIN).isEmpty());
+    }
+}
@@ -23,6 +23,7 @@
 package com.vmware.upgrade.sql.task;
 
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
 import java.sql.Statement;
 
 import com.vmware.upgrade.PersistenceContext;
@@ -32,18 +33,23 @@ import com.vmware.upgrade.progress.ExecutionState;
 import com.vmware.upgrade.sql.DatabasePersistenceContext;
 import com.vmware.upgrade.sql.SQLStatement;
 import com.vmware.upgrade.task.AbstractSimpleTask;
+import com.vmware.upgrade.task.Deadline;
+import com.vmware.upgrade.task.Fingerprinted;
 
 import org.apache.commons.lang3.StringUtils;
 
 /**
  * Task that encapsulates a raw statement {@link String} or {@link SQLStatement} to be executed at
  * runtime against an {@link UpgradeContext} containing a {@link DatabasePersistenceContext}.
+ * <p>
+ * If the task executes within a {@link Deadline}, the statement is cancelled using
+ * {@link Statement#cancel()} once the deadline passes.
  *
  * @author Zach Shepherd shepherdz@vmware.com
  * @version 1.0
  * @since 1.0
  */
-public final class RawSQLTask extends AbstractSimpleTask {
+public final class RawSQLTask extends AbstractSimpleTask implements Fingerprinted {
     private final UpgradeLogger logger;
 
     private static final int MAX_PROGRESS = 1;
@@ -102,6 +108,9 @@ public final class RawSQLTask extends AbstractSimpleTask {
     /**
      * Executes the supplied SQL statement. No response is captured.
      *
+     * @throws SQLTimeoutException
+     *             if the {@link Deadline} within which the task is executing passes before the
+     *             statement completes
      * @throws SQLException
      *             if an {@code SQLException} is encountered while executing the procedure
      * @throws IllegalStateException
@@ -116,11 +125,20 @@ public final class RawSQLTask extends AbstractSimpleTask {
             throw new IllegalStateException("Database not connected");
         }
 
+        final Deadline deadline = Deadline.current();
+        Runnable cancel = null;
         Statement stmt = null;
         try {
             if (!StringUtils.isEmpty(sql)) {
                 stmt = databaseContext.getConnection().createStatement();
 
+                if (deadline != null) {
+                    cancel = createCancelAction(stmt);
+                    if (!deadline.addExpiryAction(cancel)) {
+                        throw new SQLTimeoutException("Deadline passed before executing sql '" + sql + "'");
+                    }
+                }
+
                 logger.debug("Executing sql ''{0}''", sql);
                 stmt.execute(sql);
             }
@@ -128,9 +146,16 @@ public final class RawSQLTask extends AbstractSimpleTask {
             incrementProgress();
             setState(ExecutionState.COMPLETED);
         } catch (SQLException sqle) {
+            if (deadline != null && deadline.isExpired()) {
+                setState(ExecutionState.TIMED_OUT);
+                throw (sqle instanceof SQLTimeoutException) ? sqle : new SQLTimeoutException("Deadline passed while executing sql '" + sql + "'", sqle);
+            }
             setState(ExecutionState.FAILED);
             throw sqle;
         } finally {
+            if (cancel != null) {
+                deadline.removeExpiryAction(cancel);
+            }
             if (stmt != null) {
                 try {
                     stmt.close();
@@ -143,10 +168,32 @@ public final class RawSQLTask extends AbstractSimpleTask {
         return null;
     }
 
+    private Runnable createCancelAction(final Statement stmt) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                logger.warn("Cancelling sql ''{0}'' as deadline has passed", sql);
+                try {
+                    stmt.cancel();
+                } catch (SQLException e) {
+                    logger.warn(e, "Exception encountered when cancelling a statement.");
+                }
+            }
+        };
+    }
+
     public String getSQL() {
         return sql;
     }
 
+    /**
+     * @return the SQL to be executed
+     */
+    @Override
+    public String getFingerprint() {
+        return sql;
+    }
+
     @Override
     public String toString() {
         return "RawSQLTask [" + sql + "]";
@@ -24,12 +24,14 @@ package com.vmware.upgrade.sql.task;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.function.Supplier;
 
 import com.vmware.upgrade.Task;
 import com.vmware.upgrade.UpgradeContext;
 import com.vmware.upgrade.logging.UpgradeLogger;
 import com.vmware.upgrade.sql.DatabasePersistenceContext;
 import com.vmware.upgrade.task.AbstractDelegatingTask;
+import com.vmware.upgrade.task.Checkpoints;
 
 /**
  * Task that runs the provided task within a database transaction.
@@ -44,6 +46,23 @@ public final class TransactionTask extends AbstractDelegatingTask {
 
     private final DatabasePersistenceContext databaseContext;
 
+    /**
+     * Debug messages, which describe the delegate task only if they are logged.
+     */
+    private final Supplier<String> rollbackMessage = new Supplier<String>() {
+        @Override
+        public String get() {
+            return "Transaction for task '" + getDelegateTask() + "' will rollback";
+        }
+    };
+
+    private final Supplier<String> commitMessage = new Supplier<String>() {
+        @Override
+        public String get() {
+            return "Transaction bound task '" + getDelegateTask() + "' completed. Committing transaction";
+        }
+    };
+
     /**
      * Constructor
      *
@@ -90,11 +109,14 @@ public final class TransactionTask extends AbstractDelegatingTask {
 
         advance();
 
+        // Checkpoints are only recorded once the work they represent has been committed
+        final Checkpoints.AtomicUnit checkpoints = Checkpoints.beginAtomic();
         try {
             try {
                 super.doCall();
             } catch (Exception e) {
-                logger.debug(e, "Transaction for task ''{0}'' will rollback", getDelegateTask());
+                checkpoints.discard();
+                logger.debug(e, rollbackMessage);
 
                 try {
                     // handle transaction rollback
@@ -105,10 +127,16 @@ public final class TransactionTask extends AbstractDelegatingTask {
                 throw e;
             }
 
-            logger.debug("Transaction bound task ''{0}'' completed. Committing transaction", getDelegateTask());
+            logger.debug(commitMessage);
 
             // handle transaction committing
-            connection.commit();
+            try {
+                connection.commit();
+            } catch (SQLException se) {
+                checkpoints.discard();
+                throw se;
+            }
+            checkpoints.commit();
         } finally {
             try {
                 connection.setAutoCommit(autoCommitStatus);
@@ -121,7 +149,7 @@ public final class TransactionTask extends AbstractDelegatingTask {
     }
 
     @Override
-    public String toString() {
+    protected String describe() {
         return "TransactionTask wrapper around task: " + getDelegateTask();
     }
 }
@@ -0,0 +1,155 @@
+/* ****************************************************************************
+ * Copyright (c) 2011-2014 VMware, Inc. All Rights Reserved.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to
+ * deal in the Software without restriction, including without limitation the
+ * rights to use, copy, modify, merge, publish, distribute, sublicense, and/or
+ * sell copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ * ****************************************************************************/
+
+
+package com.vmware.upgrade.sql.task;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import com.vmware.upgrade.TestGroups;
+import com.vmware.upgrade.UpgradeContext;
+import com.vmware.upgrade.logging.UpgradeLoggerHelper;
+import com.vmware.upgrade.progress.ExecutionState;
+import com.vmware.upgrade.progress.ProgressReport;
+import com.vmware.upgrade.progress.ProgressReporter;
+import com.vmware.upgrade.sql.DatabasePersistenceContext;
+import com.vmware.upgrade.task.TimeoutTask;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.easymock.IMocksControl;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * A test class to verify the behavior of {@link RawSQLTask}.
+ *
+ * @version 1.0
+ * @since 1.0
+ */
+@Test(groups = {TestGroups.UNIT})
+public class RawSQLTaskTest {
+    private static final String SQL = "UPDATE config SET name = 'value'";
+
+    private final IMocksControl control = EasyMock.createControl();
+    private UpgradeContext context;
+    private DatabasePersistenceContext databaseContext;
+    private Connection connection;
+    private Statement statement;
+
+    @BeforeClass
+    public void createMocks() {
+        context = control.createMock(UpgradeContext.class);
+        databaseContext = control.createMock(DatabasePersistenceContext.class);
+        connection = control.createMock(Connection.class);
+        statement = control.createMock(Statement.class);
+    }
+
+    @BeforeMethod
+    public void wireMocks() throws SQLException {
+        // Statement#cancel() is invoked from another thread while Statement#execute(String) is in progress
+        EasyMock.makeThreadSafe(statement, false);
+
+        EasyMock.expect(context.getPersistenceContext(DatabasePersistenceContext.class)).andReturn(databaseContext).anyTimes();
+        EasyMock.expect(context.getLogger(EasyMock.<Class<?>>anyObject())).andReturn(UpgradeLoggerHelper.NO_OP_LOGGER).anyTimes();
+        EasyMock.expect(databaseContext.isConnected()).andReturn(true).anyTimes();
+        EasyMock.expect(databaseContext.getConnection()).andReturn(connection).anyTimes();
+        EasyMock.expect(connection.createStatement()).andReturn(statement);
+        statement.close(); EasyMock.expectLastCall();
+    }
+
+    @AfterMethod
+    public void resetMocks() {
+        control.reset();
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        EasyMock.expect(statement.execute(SQL)).andReturn(false);
+
+        control.replay();
+
+        new RawSQLTask("test sql", context, SQL).call();
+
+        control.verify();
+    }
+
+    @Test(timeOut = 10000)
+    public void testStatementCancelledOnTimeout() throws Exception {
+        final CountDownLatch cancelled = new CountDownLatch(1);
+
+        // The statement blocks until it is cancelled, at which point the driver reports an error
+        EasyMock.expect(statement.execute(SQL)).andAnswer(new IAnswer<Boolean>() {
+            @Override
+            public Boolean answer() throws Throwable {
+                boolean done = false;
+                while (!done) {
+                    try {
+                        cancelled.await();
+                        done = true;
+                    } catch (InterruptedException e) {
+                        // JDBC drivers do not generally respond to interruption
+                    }
+                }
+                throw new SQLException("Statement cancelled");
+            }
+        });
+        statement.cancel(); EasyMock.expectLastCall().andAnswer(new IAnswer<Void>() {
+            @Override
+            public Void answer() {
+                cancelled.countDown();
+                return null;
+            }
+        });
+
+        control.replay();
+
+        final RawSQLTask sqlTask = new RawSQLTask("test sql", context, SQL);
+        final AtomicReference<ProgressReport> lastReport = new AtomicReference<ProgressReport>();
+        sqlTask.addListener(new ProgressReporter.ProgressListener() {
+            @Override
+            public void reportProgress(final ProgressReport progressReport) {
+                lastReport.set(progressReport);
+            }
+        });
+
+        try {
+            new TimeoutTask(context, "test timeout", sqlTask, 200, TimeUnit.MILLISECONDS).call();
+            Assert.fail("Expected TimeoutException");
+        } catch (TimeoutException e) {
+            Assert.assertTrue(e.getCause() instanceof SQLTimeoutException);
+        }
+
+        Assert.assertEquals(lastReport.get().getState(), ExecutionState.TIMED_OUT);
+        control.verify();
+    }
+}